@@ -23,7 +23,40 @@ public class Main {
             return;
         }
         
-        String filePath = args[0];
+        String filePath = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") || args[i].equals("-t")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Missing value for " + args[i]);
+                    System.exit(1);
+                }
+                try {
+                    StackPhyParser.setThreadCount(Integer.parseInt(args[++i]));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid thread count: " + args[i]);
+                    System.exit(1);
+                }
+            } else if (args[i].equals("--seed") || args[i].equals("-s")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Missing value for " + args[i]);
+                    System.exit(1);
+                }
+                try {
+                    StackPhyParser.setSeed(Long.parseLong(args[++i]));
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid seed: " + args[i]);
+                    System.exit(1);
+                }
+            } else {
+                filePath = args[i];
+            }
+        }
+        
+        if (filePath == null) {
+            printUsage();
+            return;
+        }
+        
         File file = new File(filePath);
         
         if (!file.exists()) {
@@ -97,10 +130,14 @@ public class Main {
      * Prints usage information.
      */
     private static void printUsage() {
-        System.out.println("Usage: stackphy <file.sp>");
+        System.out.println("Usage: stackphy [options] <file.sp>");
         System.out.println();
         System.out.println("Arguments:");
-        System.out.println("  <file.sp>    StackPhy model file to parse");
+        System.out.println("  <file.sp>          StackPhy model file to parse");
+        System.out.println();
+        System.out.println("Options:");
+        System.out.println("  -t, --threads <n>  Number of threads for likelihood calculations (default 1)");
+        System.out.println("  -s, --seed <n>     Seed for random sampling (default: random)");
     }
     
     /**
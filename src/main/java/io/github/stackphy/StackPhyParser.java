@@ -1,5 +1,6 @@
 package io.github.stackphy;
 
+import io.github.stackphy.likelihood.TreeLikelihood;
 import io.github.stackphy.model.*;
 import io.github.stackphy.parser.*;
 import io.github.stackphy.runtime.*;
@@ -136,6 +137,34 @@ public class StackPhyParser {
         interpreter.clear();
     }
     
+    /**
+     * Sets the number of threads used by likelihood calculations.
+     * This is a process-wide setting and applies to likelihoods created afterwards.
+     * 
+     * @param threadCount The thread count (1 for single-threaded evaluation)
+     */
+    public static void setThreadCount(int threadCount) {
+        TreeLikelihood.setDefaultThreadCount(threadCount);
+    }
+    
+    /**
+     * Seeds the process-wide random number generator used for sampling.
+     * 
+     * @param seed The seed
+     */
+    public static void setSeed(long seed) {
+        RandomContext.setSeed(seed);
+    }
+    
+    /**
+     * Gets the number of threads used by likelihood calculations.
+     * 
+     * @return The thread count
+     */
+    public static int getThreadCount() {
+        return TreeLikelihood.getDefaultThreadCount();
+    }
+    
     // Static convenience methods from PhyloSpecAdapter
     
     /**
@@ -2,6 +2,9 @@ package io.github.stackphy.distribution;
 
 import io.github.stackphy.model.Distribution;
 import io.github.stackphy.model.Parameter;
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.TreeDensity;
+import io.github.stackphy.tree.Tree;
 
 /**
  * Implementation of a birth-death process for tree priors.
@@ -102,4 +105,53 @@ public class BirthDeath implements Distribution {
         }
         return getDeathRateValue() / birth;
     }
+
+    /**
+     * Computes the log density of an ultrametric tree conditioned on its
+     * number of tips, in one pass over the node heights.
+     *
+     * @param tree The tree
+     * @return The log density
+     * @see BirthDeathDensity
+     */
+    @Override
+    public double logDensity(Tree tree) {
+        return createTreeDensity(tree).getLogDensity();
+    }
+    
+    @Override
+    public TreeDensity createTreeDensity(Tree tree) {
+        return new BirthDeathDensity(tree, birthRate, deathRate);
+    }
+
+    /**
+     * Simulates a reconstructed tree with the given tips from the current rates.
+     *
+     * @param random The random context
+     * @param taxa The tip names
+     * @return The tree
+     * @throws IllegalArgumentException if the death rate exceeds the birth rate
+     * @see BirthDeathSimulator
+     */
+    @Override
+    public Tree simulate(RandomContext random, String[] taxa) {
+        return new BirthDeathSimulator(getBirthRateValue(), getDeathRateValue()).simulate(random, taxa);
+    }
+
+    /**
+     * Simulates replicate trees on several threads, reproducibly for any
+     * thread count.
+     *
+     * @param random The random context
+     * @param taxa The tip names
+     * @param replicates The number of trees
+     * @param threads The number of threads
+     * @return The trees
+     * @throws IllegalArgumentException if the death rate exceeds the birth rate
+     * @see BirthDeathSimulator
+     */
+    public Tree[] simulate(RandomContext random, String[] taxa, int replicates, int threads) {
+        return new BirthDeathSimulator(getBirthRateValue(), getDeathRateValue())
+                .simulate(random, taxa, replicates, threads);
+    }
 }
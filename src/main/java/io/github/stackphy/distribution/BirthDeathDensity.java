@@ -0,0 +1,118 @@
+package io.github.stackphy.distribution;
+
+import io.github.stackphy.model.Parameter;
+import io.github.stackphy.model.TreeDensity;
+import io.github.stackphy.tree.Tree;
+
+/**
+ * Log density of an ultrametric tree (tips at height zero) under a
+ * constant-rate birth-death process conditioned on the number of tips, with
+ * a uniform prior on the time of origin (Gernhard, 2008).
+ * <p>
+ * Under this conditioning the n - 1 internal node heights are independent
+ * with density f(h) = λr²e^(-rh) / (λ - μe^(-rh))², r = λ - μ, and the
+ * labelled history is uniform, so
+ * log p = (n-1)·log 2 - log n! + Σ log f(h_i). The sum is kept as the sum of
+ * heights plus, when μ &gt; 0, one cached term per node, so a height change
+ * costs O(1) and a change in λ alone costs O(1) for a Yule process.
+ */
+final class BirthDeathDensity implements TreeDensity {
+    private final Tree tree;
+    private final Parameter birthRate;
+    private final Parameter deathRate; // null for a Yule process
+    private final double constant;
+    private final double[] heights; // Node heights the cached sums were computed from
+    private final double[] nodeTerms; // -2·log(λ - μe^(-rh)) or -2·log(1 + λh) per internal node
+    private double heightSum;
+    private double termSum;
+    private double lastBirth = Double.NaN;
+    private double lastDeath = Double.NaN;
+
+    BirthDeathDensity(Tree tree, Parameter birthRate, Parameter deathRate) {
+        this.tree = tree;
+        this.birthRate = birthRate;
+        this.deathRate = deathRate;
+        int n = tree.getTipCount();
+        this.constant = (n - 1) * Math.log(2.0) - SpecialFunctions.lnGamma(n + 1.0);
+        this.heights = new double[tree.getNodeCount()];
+        this.nodeTerms = new double[tree.getNodeCount()];
+        recompute();
+    }
+
+    @Override
+    public double getLogDensity() {
+        double birth = birthRate.getDoubleValue();
+        double death = deathRate == null ? 0.0 : deathRate.getDoubleValue();
+        if (!(birth > 0.0) || !(death >= 0.0 && death <= birth)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        refreshTerms(birth, death);
+
+        int internalCount = tree.getTipCount() - 1;
+        double r = birth - death;
+        if (death == 0.0) {
+            return constant + internalCount * Math.log(birth) - birth * heightSum;
+        }
+        if (r == 0.0) {
+            return constant + internalCount * Math.log(birth) + termSum;
+        }
+        return constant + internalCount * (Math.log(birth) + 2.0 * Math.log(r)) - r * heightSum + termSum;
+    }
+
+    @Override
+    public double update(int node) {
+        if (tree.isTip(node)) {
+            return 0.0;
+        }
+        double before = getLogDensity();
+        double height = tree.getHeight(node);
+        heightSum += height - heights[node];
+        if (lastDeath > 0.0) {
+            double term = nodeTerm(height, lastBirth, lastDeath);
+            termSum += term - nodeTerms[node];
+            nodeTerms[node] = term;
+        }
+        heights[node] = height;
+        return getLogDensity() - before;
+    }
+
+    @Override
+    public void recompute() {
+        double sum = 0.0;
+        for (int node = tree.getTipCount(); node < tree.getNodeCount(); node++) {
+            double height = tree.getHeight(node);
+            heights[node] = height;
+            sum += height;
+        }
+        heightSum = sum;
+        lastBirth = Double.NaN;
+        lastDeath = Double.NaN;
+    }
+
+    /**
+     * Recomputes the per-node terms if the rates have changed since they were cached.
+     */
+    private void refreshTerms(double birth, double death) {
+        if (birth == lastBirth && death == lastDeath) {
+            return;
+        }
+        lastBirth = birth;
+        lastDeath = death;
+        double sum = 0.0;
+        if (death > 0.0) {
+            for (int node = tree.getTipCount(); node < tree.getNodeCount(); node++) {
+                nodeTerms[node] = nodeTerm(heights[node], birth, death);
+                sum += nodeTerms[node];
+            }
+        }
+        termSum = sum;
+    }
+
+    private static double nodeTerm(double height, double birth, double death) {
+        double r = birth - death;
+        if (r == 0.0) {
+            return -2.0 * Math.log1p(birth * height);
+        }
+        return -2.0 * Math.log(birth - death * Math.exp(-r * height));
+    }
+}
@@ -0,0 +1,177 @@
+package io.github.stackphy.distribution;
+
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.tree.Tree;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Simulates reconstructed trees of a constant-rate birth-death process
+ * conditioned on the number of tips, with a uniform prior on the time of
+ * origin (Gernhard, 2008).
+ * <p>
+ * Under that conditioning the n - 1 node depths are independent and
+ * identically distributed, and the tree is a coalescent point process: with
+ * the tips in a random order, the node between tips i and i + 1 has depth H_i
+ * and is the parent of the deepest subtrees on either side. The tree is built
+ * from the depths with a single stack pass, so a simulation takes linear time
+ * and allocates only the flat arrays of the {@link Tree}.
+ */
+public final class BirthDeathSimulator {
+    private final double birthRate;
+    private final double deathRate;
+
+    /**
+     * Creates a new simulator.
+     *
+     * @param birthRate The birth rate λ (positive)
+     * @param deathRate The death rate μ, with 0 &lt;= μ &lt;= λ
+     * @throws IllegalArgumentException if the rates are out of range
+     */
+    public BirthDeathSimulator(double birthRate, double deathRate) {
+        if (!(birthRate > 0.0)) {
+            throw new IllegalArgumentException("Birth rate must be positive");
+        }
+        if (!(deathRate >= 0.0 && deathRate <= birthRate)) {
+            throw new IllegalArgumentException("Death rate must be between zero and the birth rate");
+        }
+        this.birthRate = birthRate;
+        this.deathRate = deathRate;
+    }
+
+    /**
+     * Simulates one tree.
+     *
+     * @param random The random context
+     * @param taxa The tip names; the array is not modified
+     * @return The tree
+     * @throws IllegalArgumentException if there are fewer than two taxa
+     */
+    public Tree simulate(RandomContext random, String[] taxa) {
+        int tipCount = taxa.length;
+        if (tipCount < 2) {
+            throw new IllegalArgumentException("A tree needs at least two taxa");
+        }
+        int nodeCount = 2 * tipCount - 1;
+        int[] parent = new int[nodeCount];
+        int[] leftChild = new int[nodeCount];
+        int[] rightChild = new int[nodeCount];
+        double[] heights = new double[nodeCount];
+
+        for (int tip = 0; tip < tipCount; tip++) {
+            leftChild[tip] = Tree.NONE;
+            rightChild[tip] = Tree.NONE;
+        }
+        for (int node = tipCount; node < nodeCount; node++) {
+            heights[node] = nextDepth(random);
+        }
+
+        // Build the max-Cartesian tree of the depths. The stack holds nodes still
+        // waiting for a right child, deepest at the bottom
+        int[] stack = new int[tipCount];
+        int top = 0;
+        for (int i = 0; i < tipCount - 1; i++) {
+            int node = tipCount + i;
+            int child = i;
+            while (top > 0 && heights[stack[top - 1]] < heights[node]) {
+                int closed = stack[--top];
+                rightChild[closed] = child;
+                parent[child] = closed;
+                child = closed;
+            }
+            leftChild[node] = child;
+            parent[child] = node;
+            stack[top++] = node;
+        }
+        int child = tipCount - 1;
+        while (top > 0) {
+            int closed = stack[--top];
+            rightChild[closed] = child;
+            parent[child] = closed;
+            child = closed;
+        }
+        parent[child] = Tree.NONE;
+
+        return new Tree(shuffle(random, taxa), parent, leftChild, rightChild, heights);
+    }
+
+    /**
+     * Simulates replicate trees on several threads.
+     * One child context is split per replicate, in order, before any work
+     * starts, so the result depends only on the context and not on the
+     * number of threads.
+     *
+     * @param random The random context
+     * @param taxa The tip names, shared by all replicates
+     * @param replicates The number of trees
+     * @param threads The number of threads
+     * @return The trees
+     */
+    public Tree[] simulate(RandomContext random, String[] taxa, int replicates, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        RandomContext[] streams = new RandomContext[replicates];
+        for (int r = 0; r < replicates; r++) {
+            streams[r] = random.split();
+        }
+
+        Tree[] trees = new Tree[replicates];
+        if (threads == 1) {
+            for (int r = 0; r < replicates; r++) {
+                trees[r] = simulate(streams[r], taxa);
+            }
+            return trees;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> IntStream.range(0, replicates).parallel()
+                    .forEach(r -> trees[r] = simulate(streams[r], taxa))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tree simulation was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tree simulation failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return trees;
+    }
+
+    /**
+     * Draws one node depth by inversion. The depth H has survival function
+     * P(H &gt; t) = r·e^(-rt) / (λ - μ·e^(-rt)) with r = λ - μ, which is
+     * e^(-λt) for a Yule process and 1 / (1 + λt) for a critical process.
+     *
+     * @param random The random context
+     * @return The depth
+     */
+    private double nextDepth(RandomContext random) {
+        double u = random.nextOpenDouble();
+        double r = birthRate - deathRate;
+        if (r == 0.0) {
+            return (1.0 / u - 1.0) / birthRate;
+        }
+        if (deathRate == 0.0) {
+            return -Math.log(u) / birthRate;
+        }
+        return -Math.log(u * birthRate / (r + u * deathRate)) / r;
+    }
+
+    /**
+     * Returns a uniformly shuffled copy of the taxa (Fisher-Yates).
+     */
+    private static String[] shuffle(RandomContext random, String[] taxa) {
+        String[] shuffled = taxa.clone();
+        for (int i = shuffled.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String tmp = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = tmp;
+        }
+        return shuffled;
+    }
+}
@@ -2,6 +2,9 @@ package io.github.stackphy.distribution;
 
 import io.github.stackphy.model.Distribution;
 import io.github.stackphy.model.Parameter;
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.TreeDensity;
+import io.github.stackphy.tree.Tree;
 
 /**
  * Implementation of a coalescent process for tree priors.
@@ -52,4 +55,114 @@ public class Coalescent implements Distribution {
     public double getPopulationSizeValue() {
         return populationSize.getDoubleValue();
     }
+
+    /**
+     * Computes the log density of a tree from the current population size.
+     * For repeated evaluation while node heights change, use
+     * {@link #createTreeDensity(Tree)} instead.
+     *
+     * @param tree The tree
+     * @return The log density
+     */
+    @Override
+    public double logDensity(Tree tree) {
+        return new CoalescentIntervals(tree).logDensity(getPopulationSizeValue());
+    }
+    
+    @Override
+    public TreeDensity createTreeDensity(Tree tree) {
+        return new CoalescentDensity(tree, populationSize);
+    }
+
+    /**
+     * Simulates a genealogy of tips sampled at height zero.
+     *
+     * @param random The random context
+     * @param taxa The tip names
+     * @return The tree
+     */
+    @Override
+    public Tree simulate(RandomContext random, String[] taxa) {
+        return simulate(random, taxa, new double[taxa.length]);
+    }
+
+    /**
+     * Simulates a genealogy of tips sampled at the given heights.
+     * Tips are added as the process passes their sampling heights, and within
+     * each interval the waiting time to the next coalescence is exponential
+     * with rate k(k-1)/2 / N. Coalescing lineages are picked from a flat array
+     * with swap-removal, so apart from sorting the tips the simulation is linear.
+     *
+     * @param random The random context
+     * @param taxa The tip names
+     * @param tipHeights The sampling height of each tip
+     * @return The tree
+     * @throws IllegalArgumentException if there are fewer than two taxa
+     */
+    public Tree simulate(RandomContext random, String[] taxa, double[] tipHeights) {
+        int tipCount = taxa.length;
+        if (tipCount < 2) {
+            throw new IllegalArgumentException("A tree needs at least two taxa");
+        }
+        if (tipHeights.length != tipCount) {
+            throw new IllegalArgumentException("Expected " + tipCount + " tip heights");
+        }
+        double populationSize = getPopulationSizeValue();
+        int nodeCount = 2 * tipCount - 1;
+        int[] parent = new int[nodeCount];
+        int[] leftChild = new int[nodeCount];
+        int[] rightChild = new int[nodeCount];
+        double[] heights = new double[nodeCount];
+        
+        int[] samples = new int[tipCount];
+        for (int tip = 0; tip < tipCount; tip++) {
+            samples[tip] = tip;
+            leftChild[tip] = Tree.NONE;
+            rightChild[tip] = Tree.NONE;
+            heights[tip] = tipHeights[tip];
+        }
+        CoalescentIntervals.sortByHeight(samples, tipCount, heights, tipCount);
+        
+        int[] active = new int[tipCount];
+        int activeCount = 0;
+        int nextSample = 0;
+        int nextNode = tipCount;
+        double time = heights[samples[0]];
+        while (nextNode < nodeCount) {
+            while (nextSample < tipCount && heights[samples[nextSample]] <= time) {
+                active[activeCount++] = samples[nextSample++];
+            }
+            double nextSampleTime = nextSample < tipCount
+                    ? heights[samples[nextSample]] : Double.POSITIVE_INFINITY;
+            if (activeCount < 2) {
+                time = nextSampleTime;
+                continue;
+            }
+            double rate = 0.5 * activeCount * (activeCount - 1) / populationSize;
+            double wait = random.nextExponential() / rate;
+            if (time + wait >= nextSampleTime) {
+                // The waiting time is memoryless, so restart at the next sample
+                time = nextSampleTime;
+                continue;
+            }
+            time += wait;
+            
+            int i = random.nextInt(activeCount);
+            int left = active[i];
+            active[i] = active[--activeCount];
+            int j = random.nextInt(activeCount);
+            int right = active[j];
+            
+            int node = nextNode++;
+            leftChild[node] = left;
+            rightChild[node] = right;
+            parent[left] = node;
+            parent[right] = node;
+            heights[node] = time;
+            active[j] = node;
+        }
+        parent[nodeCount - 1] = Tree.NONE;
+        
+        return new Tree(taxa.clone(), parent, leftChild, rightChild, heights);
+    }
 }
@@ -0,0 +1,36 @@
+package io.github.stackphy.distribution;
+
+import io.github.stackphy.model.Parameter;
+import io.github.stackphy.model.TreeDensity;
+import io.github.stackphy.tree.Tree;
+
+/**
+ * Log density of a tree under a constant-size coalescent, kept over
+ * {@link CoalescentIntervals}. A change in population size costs O(1).
+ */
+final class CoalescentDensity implements TreeDensity {
+    private final CoalescentIntervals intervals;
+    private final Parameter populationSize;
+
+    CoalescentDensity(Tree tree, Parameter populationSize) {
+        this.intervals = new CoalescentIntervals(tree);
+        this.populationSize = populationSize;
+    }
+
+    @Override
+    public double getLogDensity() {
+        return intervals.logDensity(populationSize.getDoubleValue());
+    }
+
+    @Override
+    public double update(int node) {
+        double before = getLogDensity();
+        intervals.update(node);
+        return getLogDensity() - before;
+    }
+
+    @Override
+    public void recompute() {
+        intervals.recompute();
+    }
+}
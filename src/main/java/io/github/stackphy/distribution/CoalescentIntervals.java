@@ -0,0 +1,251 @@
+package io.github.stackphy.distribution;
+
+import io.github.stackphy.tree.Tree;
+
+/**
+ * The nodes of a tree sorted by height, with the number of lineages in each
+ * interval between consecutive nodes.
+ * Each tip adds a lineage and each internal node (a coalescence) removes one,
+ * so the tips may be sampled at different heights. The structure keeps the
+ * integral of k(k-1)/2 over time, where k is the number of lineages; together
+ * with the number of coalescences this is all a constant-size coalescent
+ * density needs.
+ * <p>
+ * Building the structure sorts the nodes in O(n log n). When one node height
+ * changes, {@link #update(int)} moves that node to its new place and adjusts
+ * the integral over the intervals it passes, in time proportional to the
+ * number of nodes it passes.
+ */
+public final class CoalescentIntervals {
+    private final Tree tree;
+    private final int tipCount;
+    private final int nodeCount;
+    private final int[] order; // Nodes sorted by height, tips before coalescences on ties
+    private final int[] position; // Index of each node in order
+    private final double[] times; // Height of each node in order
+    private final int[] lineages; // Lineages just above each node in order
+    private double pairTime; // Integral of k(k-1)/2 over time
+
+    /**
+     * Creates the intervals of a tree.
+     *
+     * @param tree The tree; later height changes must be reported through {@link #update(int)}
+     */
+    public CoalescentIntervals(Tree tree) {
+        this.tree = tree;
+        this.tipCount = tree.getTipCount();
+        this.nodeCount = tree.getNodeCount();
+        this.order = new int[nodeCount];
+        this.position = new int[nodeCount];
+        this.times = new double[nodeCount];
+        this.lineages = new int[nodeCount];
+        recompute();
+    }
+
+    /**
+     * Rebuilds the sorted intervals from the tree's current heights.
+     */
+    public void recompute() {
+        double[] heights = new double[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            order[node] = node;
+            heights[node] = tree.getHeight(node);
+        }
+        sortByHeight(order, nodeCount, heights, tipCount);
+
+        int k = 0;
+        double sum = 0.0;
+        for (int p = 0; p < nodeCount; p++) {
+            int node = order[p];
+            position[node] = p;
+            times[p] = heights[node];
+            if (p > 0) {
+                sum += pairs(k) * (times[p] - times[p - 1]);
+            }
+            k += lineageChange(node);
+            lineages[p] = k;
+        }
+        pairTime = sum;
+    }
+
+    /**
+     * Updates the intervals after the height of one node has changed in the tree.
+     * The node moves past its neighbours in the sorted order one at a time, so a
+     * small height change costs O(1).
+     *
+     * @param node The node whose height changed
+     */
+    public void update(int node) {
+        int p = position[node];
+        double from = times[p];
+        double to = tree.getHeight(node);
+        int change = lineageChange(node);
+        double delta = 0.0;
+
+        if (to > from) {
+            // The node's lineage change now happens later, so the count between
+            // from and to moves by -change
+            int shift = -change;
+            int k = lineages[p];
+            double previous = from;
+            int q = p + 1;
+            while (q < nodeCount && before(order[q], times[q], node, to)) {
+                delta += pairChange(k, shift) * (times[q] - previous);
+                previous = times[q];
+                k = lineages[q];
+                moveEntry(q, q - 1, shift);
+                q++;
+            }
+            delta += pairChange(k, shift) * (to - previous);
+            place(node, q - 1, to, change);
+        } else if (to < from) {
+            // The lineage change now happens earlier
+            int shift = change;
+            double previous = from;
+            int q = p - 1;
+            while (q >= 0 && before(node, to, order[q], times[q])) {
+                delta += pairChange(lineages[q], shift) * (previous - times[q]);
+                previous = times[q];
+                moveEntry(q, q + 1, shift);
+                q--;
+            }
+            delta += pairChange(q >= 0 ? lineages[q] : 0, shift) * (previous - to);
+            place(node, q + 1, to, change);
+        }
+        pairTime += delta;
+    }
+
+    /**
+     * Gets the integral over time of k(k-1)/2, the number of lineage pairs
+     * that could coalesce.
+     *
+     * @return The integral
+     */
+    public double getPairTime() {
+        return pairTime;
+    }
+
+    /**
+     * Gets the number of coalescences (internal nodes).
+     *
+     * @return The coalescence count
+     */
+    public int getCoalescentCount() {
+        return tipCount - 1;
+    }
+
+    /**
+     * Gets the number of lineages just above the node at a position in the sorted order.
+     *
+     * @param index The position, from 0 (lowest node) to node count - 1 (root)
+     * @return The lineage count
+     */
+    public int getLineageCount(int index) {
+        return lineages[index];
+    }
+
+    /**
+     * Gets the node at a position in the sorted order.
+     *
+     * @param index The position, from 0 (lowest node) to node count - 1 (root)
+     * @return The node index
+     */
+    public int getNode(int index) {
+        return order[index];
+    }
+
+    /**
+     * Computes the log density of the tree under a constant-size coalescent,
+     * where each pair of lineages coalesces at rate 1 / N.
+     *
+     * @param populationSize The population size N
+     * @return The log density
+     */
+    public double logDensity(double populationSize) {
+        if (!(populationSize > 0.0)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return -pairTime / populationSize - getCoalescentCount() * Math.log(populationSize);
+    }
+
+    private void moveEntry(int from, int to, int shift) {
+        int other = order[from];
+        order[to] = other;
+        times[to] = times[from];
+        lineages[to] = lineages[from] + shift;
+        position[other] = to;
+    }
+
+    private void place(int node, int index, double height, int change) {
+        order[index] = node;
+        times[index] = height;
+        lineages[index] = (index > 0 ? lineages[index - 1] : 0) + change;
+        position[node] = index;
+    }
+
+    private int lineageChange(int node) {
+        return node < tipCount ? 1 : -1;
+    }
+
+    private boolean before(int a, double ha, int b, double hb) {
+        return precedes(a, ha, b, hb, tipCount);
+    }
+
+    private static double pairs(int k) {
+        return 0.5 * k * (k - 1);
+    }
+
+    /**
+     * Change in k(k-1)/2 when k changes by shift (+1 or -1).
+     */
+    private static double pairChange(int k, int shift) {
+        return shift > 0 ? k : -(k - 1);
+    }
+
+    /**
+     * Sorts nodes by height with a bottom-up merge sort, tips before internal
+     * nodes of equal height and then by index, so ties sort the same way every time.
+     *
+     * @param nodes The nodes to sort, in place
+     * @param count The number of nodes in use
+     * @param heights The height of each node, indexed by node
+     * @param tipCount The number of tips in the tree
+     */
+    static void sortByHeight(int[] nodes, int count, double[] heights, int tipCount) {
+        int[] source = nodes;
+        int[] target = new int[count];
+        for (int width = 1; width < count; width *= 2) {
+            for (int lo = 0; lo < count; lo += 2 * width) {
+                int mid = Math.min(lo + width, count);
+                int hi = Math.min(lo + 2 * width, count);
+                int i = lo;
+                int j = mid;
+                for (int k = lo; k < hi; k++) {
+                    if (j >= hi || (i < mid && !precedes(source[j], heights[source[j]], source[i], heights[source[i]], tipCount))) {
+                        target[k] = source[i++];
+                    } else {
+                        target[k] = source[j++];
+                    }
+                }
+            }
+            int[] tmp = source;
+            source = target;
+            target = tmp;
+        }
+        if (source != nodes) {
+            System.arraycopy(source, 0, nodes, 0, count);
+        }
+    }
+
+    /**
+     * Returns whether node a at height ha sorts before node b at height hb.
+     */
+    private static boolean precedes(int a, double ha, int b, double hb, int tipCount) {
+        if (ha != hb) {
+            return ha < hb;
+        }
+        boolean tipA = a < tipCount;
+        boolean tipB = b < tipCount;
+        return tipA != tipB ? tipA : a < b;
+    }
+}
@@ -3,11 +3,15 @@ package io.github.stackphy.distribution;
 import io.github.stackphy.model.Distribution;
 import io.github.stackphy.model.Parameter;
 import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.RandomContext;
 
 /**
  * Implementation of a Dirichlet distribution.
  */
 public class Dirichlet implements Distribution {
+    // Allowed rounding error in the sum of a simplex vector
+    private static final double SIMPLEX_TOLERANCE = 1e-8;
+    
     private final Parameter concentrationParams;
     
     /**
@@ -46,39 +50,170 @@ public class Dirichlet implements Distribution {
     }
     
     @Override
-    public Primitive generateValue() {
-        // Get concentration parameters
-        Object[] alphas = concentrationParams.getArrayValue();
-        double[] concentrations = new double[alphas.length];
+    public Primitive generateValue(RandomContext random) {
+        double[] sample = new double[getDimension()];
+        sample(random, sample, 1);
         
-        for (int i = 0; i < alphas.length; i++) {
-            concentrations[i] = ((Number) alphas[i]).doubleValue();
+        // Convert to Double[] for storage in Primitive
+        Double[] result = new Double[sample.length];
+        for (int i = 0; i < sample.length; i++) {
+            result[i] = sample[i];
         }
         
-        // Generate Dirichlet sample (simplified algorithm)
-        double[] sample = new double[concentrations.length];
-        double sum = 0.0;
-        
-        // Generate gamma samples and normalize
-        for (int i = 0; i < concentrations.length; i++) {
-            // In actual implementation, use proper gamma sampling
-            double gammaValue = Math.random() * concentrations[i]; 
-            sample[i] = gammaValue;
-            sum += gammaValue;
+        return new Primitive(result);
+    }
+    
+    /**
+     * Draws n simplex vectors into one flat array, row-major: vector j takes
+     * out[j·k .. j·k + k). Each vector is a set of independent Gamma(α_i, 1)
+     * draws divided by their sum. When some α_i is below one the draws are
+     * made in log space, so small concentrations cannot underflow to an all-zero row.
+     * 
+     * @param random The random context
+     * @param out Output array of at least n·k values
+     * @param n The number of vectors
+     */
+    @Override
+    public void sample(RandomContext random, double[] out, int n) {
+        double[] alphas = getConcentrationParameterValues();
+        int k = alphas.length;
+        boolean logSpace = false;
+        for (double alpha : alphas) {
+            logSpace |= alpha < 1.0;
         }
         
-        // Normalize to get Dirichlet sample
-        for (int i = 0; i < sample.length; i++) {
-            sample[i] /= sum;
+        for (int j = 0, offset = 0; j < n; j++, offset += k) {
+            if (logSpace) {
+                double max = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < k; i++) {
+                    out[offset + i] = Gamma.nextLogGamma(random, alphas[i]);
+                    max = Math.max(max, out[offset + i]);
+                }
+                for (int i = 0; i < k; i++) {
+                    out[offset + i] = Math.exp(out[offset + i] - max);
+                }
+            } else {
+                for (int i = 0; i < k; i++) {
+                    out[offset + i] = Gamma.nextGamma(random, alphas[i]);
+                }
+            }
+            
+            double sum = 0.0;
+            for (int i = 0; i < k; i++) {
+                sum += out[offset + i];
+            }
+            double scale = 1.0 / sum;
+            for (int i = 0; i < k; i++) {
+                out[offset + i] *= scale;
+            }
+        }
+    }
+    
+    /**
+     * A Dirichlet has no density for a single value.
+     * 
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public double logDensity(double x) {
+        throw new UnsupportedOperationException("Dirichlet is multivariate; use logDensity(double[], double[])");
+    }
+    
+    /**
+     * Computes the log density of many simplex vectors at once.
+     * The vectors are packed row-major in xs, each taking getDimension()
+     * values, so xs.length must be out.length·k. Vectors with a negative
+     * entry or not summing to one score negative infinity.
+     * 
+     * @param xs The packed vectors
+     * @param out Output array receiving one log density per vector
+     * @throws IllegalArgumentException if the array lengths do not match
+     */
+    @Override
+    public void logDensity(double[] xs, double[] out) {
+        double[] alphas = getConcentrationParameterValues();
+        int k = alphas.length;
+        if (xs.length != out.length * k) {
+            throw new IllegalArgumentException("Expected " + out.length * k + " values for "
+                    + out.length + " vectors of dimension " + k);
         }
         
-        // Convert to Double[] for storage in Primitive
-        Double[] result = new Double[sample.length];
-        for (int i = 0; i < sample.length; i++) {
-            result[i] = sample[i];
+        double constant = 0.0;
+        double alphaSum = 0.0;
+        for (double alpha : alphas) {
+            constant -= SpecialFunctions.lnGamma(alpha);
+            alphaSum += alpha;
         }
+        constant += SpecialFunctions.lnGamma(alphaSum);
         
-        return new Primitive(result);
+        for (int n = 0, offset = 0; n < out.length; n++, offset += k) {
+            double logDensity = constant;
+            double sum = 0.0;
+            boolean negative = false;
+            for (int i = 0; i < k; i++) {
+                double x = xs[offset + i];
+                negative |= x < 0.0;
+                sum += x;
+                logDensity += (alphas[i] - 1.0) * Math.log(x);
+            }
+            out[n] = negative || Math.abs(sum - 1.0) > SIMPLEX_TOLERANCE ? Double.NEGATIVE_INFINITY : logDensity;
+        }
+    }
+    
+    /**
+     * Computes the partial derivatives of the log density with respect to
+     * each entry of many packed vectors, treating the entries as free.
+     * Samplers that move on the simplex project or transform this themselves.
+     * 
+     * @param xs The packed vectors, k values each
+     * @param out Output array of the same length, receiving (α_i - 1) / x_i
+     * @throws IllegalArgumentException if the array lengths do not match
+     */
+    @Override
+    public void logDensityGradient(double[] xs, double[] out) {
+        double[] alphas = getConcentrationParameterValues();
+        int k = alphas.length;
+        if (xs.length % k != 0 || out.length != xs.length) {
+            throw new IllegalArgumentException("Expected packed vectors of dimension " + k);
+        }
+        for (int offset = 0; offset < xs.length; offset += k) {
+            for (int i = 0; i < k; i++) {
+                double x = xs[offset + i];
+                out[offset + i] = x < 0.0 ? Double.NaN : (alphas[i] - 1.0) / x;
+            }
+        }
+    }
+    
+    /**
+     * Computes the gradient of the summed log density of many packed vectors
+     * with respect to the concentrations: ψ(Σα) - ψ(α_i) + Σ ln x_i per entry.
+     * 
+     * @param xs The packed vectors, k values each
+     * @param out Output array receiving one entry per concentration
+     * @throws IllegalArgumentException if the array lengths do not match
+     */
+    @Override
+    public void logDensityParameterGradient(double[] xs, double[] out) {
+        double[] alphas = getConcentrationParameterValues();
+        int k = alphas.length;
+        if (xs.length % k != 0 || out.length != k) {
+            throw new IllegalArgumentException("Expected packed vectors of dimension " + k);
+        }
+        int n = xs.length / k;
+        double alphaSum = 0.0;
+        for (double alpha : alphas) {
+            alphaSum += alpha;
+        }
+        double digammaSum = SpecialFunctions.digamma(alphaSum);
+        for (int i = 0; i < k; i++) {
+            out[i] = n * (digammaSum - SpecialFunctions.digamma(alphas[i]));
+        }
+        for (int offset = 0; offset < xs.length; offset += k) {
+            for (int i = 0; i < k; i++) {
+                double x = xs[offset + i];
+                out[i] += x < 0.0 ? Double.NaN : Math.log(x);
+            }
+        }
     }
     
     /**
@@ -3,18 +3,32 @@ package io.github.stackphy.distribution;
 import io.github.stackphy.model.Distribution;
 import io.github.stackphy.model.Parameter;
 import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.RandomContext;
 import io.github.stackphy.model.StackItemType;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Implementation of a discrete gamma distribution that produces a vector of rates.
  * Used for modeling rate heterogeneity across sites with a finite number of rate categories.
  * Can be used both as a regular DiscreteGamma distribution and as a DiscreteGammaVector.
+ * <p>
+ * Category rates follow Yang (1994): the Gamma(shape, shape) distribution is cut
+ * into equal-probability categories at its quantiles, and each category is
+ * represented by its mean (default) or its median rescaled to mean 1. Rate
+ * tables are memoized in a process-wide cache keyed by (shape, categories), so
+ * revisiting a shape value costs one hash lookup.
  */
 public class DiscreteGamma implements Distribution {
+    // Tables are small; the bound only guards against unbounded growth over a long run
+    private static final int MAX_CACHED_TABLES = 4096;
+    private static final ConcurrentHashMap<RateKey, double[]> RATE_CACHE = new ConcurrentHashMap<>();
+    
     private final Parameter shape;
     private final Parameter categories;
     private Parameter dimension;  // Optional dimension parameter (number of sites)
-    private Parameter[] rateCategories; // Calculated rate categories
+    private final boolean useMedian;
+    private volatile RateCategories rateCategories; // Last rate table and its parameters
     
     /**
      * Creates a new discrete gamma distribution.
@@ -34,9 +48,22 @@ public class DiscreteGamma implements Distribution {
      * @param dimension The dimension (number of sites)
      */
     public DiscreteGamma(Parameter shape, Parameter categories, Parameter dimension) {
+        this(shape, categories, dimension, false);
+    }
+    
+    /**
+     * Creates a new discrete gamma distribution.
+     * 
+     * @param shape The shape parameter
+     * @param categories The number of rate categories
+     * @param dimension The dimension (number of sites), or null
+     * @param useMedian Whether categories are represented by their medians instead of their means
+     */
+    public DiscreteGamma(Parameter shape, Parameter categories, Parameter dimension, boolean useMedian) {
         this.shape = shape;
         this.categories = categories;
         this.dimension = dimension;
+        this.useMedian = useMedian;
         
         // Validate parameters
         if (shape.isNumeric() && shape.getDoubleValue() <= 0) {
@@ -56,9 +83,6 @@ public class DiscreteGamma implements Distribution {
                 throw new IllegalArgumentException("Dimension must be positive");
             }
         }
-        
-        // Rate categories will be calculated when needed
-        this.rateCategories = null;
     }
     
     @Override
@@ -129,17 +153,75 @@ public class DiscreteGamma implements Distribution {
         return dimension != null ? (int) dimension.getDoubleValue() : 0;
     }
     
+    /**
+     * Returns whether categories are represented by their medians.
+     * 
+     * @return true for medians, false for means
+     */
+    public boolean isUseMedian() {
+        return useMedian;
+    }
+    
     /**
      * Gets the rate categories.
-     * The rates are calculated to have a mean of 1.0 across all categories.
+     * The rates are calculated to have a mean of 1.0 across all categories,
+     * and are refreshed when the shape or number of categories changes.
      * 
      * @return The rate categories
      */
     public Parameter[] getRateCategories() {
-        if (rateCategories == null) {
-            calculateRateCategories();
+        double[] rates = getCachedRates(getShapeValue(), getCategoriesValue(), useMedian);
+        RateCategories cached = rateCategories;
+        if (cached != null && cached.rates == rates) {
+            return cached.parameters;
+        }
+        Parameter[] parameters = new Parameter[rates.length];
+        for (int i = 0; i < rates.length; i++) {
+            parameters[i] = new Primitive(rates[i]);
+        }
+        rateCategories = new RateCategories(rates, parameters);
+        return parameters;
+    }
+    
+    /**
+     * Gets the rate of each category for the current shape.
+     * 
+     * @return A new array of category rates
+     */
+    public double[] getRateValues() {
+        return getCachedRates(getShapeValue(), getCategoriesValue(), useMedian).clone();
+    }
+    
+    /**
+     * Computes discrete gamma category rates, using the process-wide cache.
+     * 
+     * @param shape The gamma shape
+     * @param categories The number of categories
+     * @param useMedian Whether to use category medians instead of means
+     * @return A new array of category rates with mean 1
+     */
+    public static double[] getRates(double shape, int categories, boolean useMedian) {
+        return getCachedRates(shape, categories, useMedian).clone();
+    }
+    
+    /**
+     * Looks up a rate table in the cache, computing it on a miss.
+     * The returned array is shared and must not be modified.
+     */
+    private static double[] getCachedRates(double shape, int categories, boolean useMedian) {
+        RateKey key = new RateKey(shape, categories, useMedian);
+        double[] rates = RATE_CACHE.get(key);
+        if (rates == null) {
+            rates = calculateRates(shape, categories, useMedian);
+            if (RATE_CACHE.size() >= MAX_CACHED_TABLES) {
+                RATE_CACHE.clear();
+            }
+            double[] existing = RATE_CACHE.putIfAbsent(key, rates);
+            if (existing != null) {
+                rates = existing;
+            }
         }
-        return rateCategories;
+        return rates;
     }
     
     /**
@@ -150,13 +232,23 @@ public class DiscreteGamma implements Distribution {
      * @return A parameter representing the sample
      */
     public Parameter drawSample() {
-        if (rateCategories == null) {
-            calculateRateCategories();
-        }
+        return drawSample(RandomContext.current());
+    }
+    
+    /**
+     * Draws a sample from the distribution using the given random context.
+     * If dimension is specified, returns a vector of rates of that dimension.
+     * Otherwise, returns a single rate category.
+     * 
+     * @param random The random context
+     * @return A parameter representing the sample
+     */
+    public Parameter drawSample(RandomContext random) {
+        Parameter[] rateCategories = getRateCategories();
         
         if (dimension == null) {
             // For DiscreteGamma, return a single rate
-            int categoryIndex = (int) (Math.random() * rateCategories.length);
+            int categoryIndex = random.nextInt(rateCategories.length);
             return rateCategories[categoryIndex];
         } else {
             // For DiscreteGammaVector, return a vector of rates
@@ -166,7 +258,7 @@ public class DiscreteGamma implements Distribution {
             
             // Randomly assign categories to sites
             for (int i = 0; i < dim; i++) {
-                int categoryIndex = (int) (Math.random() * numCategories);
+                int categoryIndex = random.nextInt(numCategories);
                 rateVector[i] = rateCategories[categoryIndex];
             }
             
@@ -176,45 +268,116 @@ public class DiscreteGamma implements Distribution {
     }
     
     /**
-     * Calculates the rate categories based on shape and number of categories.
-     * This is a simplified implementation that approximates the discrete gamma distribution.
+     * Draws a rate, or a vector of rates, through {@link #drawSample(RandomContext)}.
+     * 
+     * @param random The random context
+     * @return The rate, or an array of rates if a dimension is specified
      */
-    private void calculateRateCategories() {
-        int numCategories = getCategoriesValue();
-        double alpha = getShapeValue();
-        rateCategories = new Parameter[numCategories];
+    @Override
+    public Primitive generateValue(RandomContext random) {
+        Parameter sample = drawSample(random);
+        if (dimension == null) {
+            return new Primitive(sample.getDoubleValue());
+        }
+        Object[] rates = sample.getArrayValue();
+        Object[] values = new Object[rates.length];
+        for (int i = 0; i < rates.length; i++) {
+            values[i] = ((Parameter) rates[i]).getDoubleValue();
+        }
+        return new Primitive(values);
+    }
+    
+    /**
+     * Calculates the category rates of a discrete gamma distribution with mean 1.
+     * With Gamma(α, α) cut at quantiles b_i = F⁻¹(i/k), the mean of category i is
+     * k·[P(α+1, α·b_{i+1}) - P(α+1, α·b_i)], where P is the regularized lower
+     * incomplete gamma function.
+     * 
+     * @param shape The gamma shape α
+     * @param categories The number of categories k
+     * @param useMedian Whether to use category medians instead of means
+     * @return The category rates
+     */
+    private static double[] calculateRates(double shape, int categories, boolean useMedian) {
+        if (!(shape > 0.0)) {
+            throw new IllegalArgumentException("Shape parameter must be positive");
+        }
+        if (categories <= 0) {
+            throw new IllegalArgumentException("Number of categories must be positive");
+        }
         
-        // For simplicity, use equal probabilities for each category
-        // In a real implementation, we would use the cumulative distribution function
-        // to find the mean value for each quantile
+        double[] rates = new double[categories];
+        if (categories == 1) {
+            rates[0] = 1.0;
+            return rates;
+        }
         
-        // This is a very simplified calculation
-        // A real implementation would use mean values for each category
-        // based on proper numerical integration
-        for (int i = 0; i < numCategories; i++) {
-            // Simple approximation using midpoint of each category
-            double lowerQuantile = (double) i / numCategories;
-            double upperQuantile = (double) (i + 1) / numCategories;
-            double midQuantile = (lowerQuantile + upperQuantile) / 2;
-            
-            // Approximate the rate
-            // In practice, this should be calculated using proper gamma quantile functions
-            // This is just a placeholder formula
-            double rate = alpha * (1.0 + (midQuantile - 0.5) * 2.0 / Math.sqrt(alpha));
-            
-            rateCategories[i] = new Primitive(rate);
+        if (useMedian) {
+            double sum = 0.0;
+            for (int i = 0; i < categories; i++) {
+                double p = (2.0 * i + 1.0) / (2.0 * categories);
+                rates[i] = SpecialFunctions.inverseRegularizedGammaP(shape, p) / shape;
+                sum += rates[i];
+            }
+            double mean = sum / categories;
+            for (int i = 0; i < categories; i++) {
+                rates[i] /= mean;
+            }
+        } else {
+            // Work in Gamma(α, 1) units: a cut at α·b has P(α, α·b) = i/k
+            double previous = 0.0;
+            for (int i = 0; i < categories; i++) {
+                double upper = i == categories - 1 ? 1.0
+                        : SpecialFunctions.regularizedGammaP(shape + 1.0,
+                                SpecialFunctions.inverseRegularizedGammaP(shape, (i + 1.0) / categories));
+                rates[i] = (upper - previous) * categories;
+                previous = upper;
+            }
+        }
+        return rates;
+    }
+    
+    /**
+     * A rate table together with the parameters built from it. Published
+     * through a single volatile field so readers never see parameters paired
+     * with the wrong table.
+     */
+    private static final class RateCategories {
+        private final double[] rates;
+        private final Parameter[] parameters;
+        
+        private RateCategories(double[] rates, Parameter[] parameters) {
+            this.rates = rates;
+            this.parameters = parameters;
+        }
+    }
+    
+    /**
+     * Cache key comparing the shape by its exact bit pattern.
+     */
+    private static final class RateKey {
+        private final long shape;
+        private final int categories;
+        private final boolean useMedian;
+        
+        private RateKey(double shape, int categories, boolean useMedian) {
+            this.shape = Double.doubleToLongBits(shape);
+            this.categories = categories;
+            this.useMedian = useMedian;
         }
         
-        // Normalize to ensure mean rate is 1.0
-        double sum = 0.0;
-        for (Parameter p : rateCategories) {
-            sum += p.getDoubleValue();
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RateKey)) return false;
+            RateKey that = (RateKey) o;
+            return shape == that.shape && categories == that.categories && useMedian == that.useMedian;
         }
-        double meanRate = sum / numCategories;
         
-        for (int i = 0; i < numCategories; i++) {
-            double normalizedRate = rateCategories[i].getDoubleValue() / meanRate;
-            rateCategories[i] = new Primitive(normalizedRate);
+        @Override
+        public int hashCode() {
+            int h = (int) (shape ^ (shape >>> 32));
+            return (h * 31 + categories) * 2 + (useMedian ? 1 : 0);
         }
     }
     
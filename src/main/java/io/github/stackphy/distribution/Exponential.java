@@ -3,6 +3,7 @@ package io.github.stackphy.distribution;
 import io.github.stackphy.model.Distribution;
 import io.github.stackphy.model.Parameter;
 import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.RandomContext;
 
 /**
  * Implementation of an exponential distribution.
@@ -35,13 +36,61 @@ public class Exponential implements Distribution {
     }
     
     @Override
-    public Primitive generateValue() {
+    public Primitive generateValue(RandomContext random) {
         double rate = getRateValue();
-        // Simple exponential generation: -ln(U)/λ
-        double value = -Math.log(Math.random()) / rate;
+        // Inversion: -ln(U)/λ
+        double value = random.nextExponential() / rate;
         return new Primitive(value);
     }
-
+    
+    @Override
+    public void sample(RandomContext random, double[] out, int n) {
+        double scale = 1.0 / getRateValue();
+        for (int i = 0; i < n; i++) {
+            out[i] = random.nextExponential() * scale;
+        }
+    }
+    
+    @Override
+    public double logDensity(double x) {
+        if (x < 0.0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double rate = getRateValue();
+        return Math.log(rate) - rate * x;
+    }
+    
+    @Override
+    public void logDensity(double[] xs, double[] out) {
+        double rate = getRateValue();
+        double logRate = Math.log(rate);
+        for (int i = 0; i < xs.length; i++) {
+            double x = xs[i];
+            out[i] = x < 0.0 ? Double.NEGATIVE_INFINITY : logRate - rate * x;
+        }
+    }
+    
+    @Override
+    public void logDensityGradient(double[] xs, double[] out) {
+        double rate = getRateValue();
+        for (int i = 0; i < xs.length; i++) {
+            out[i] = xs[i] < 0.0 ? Double.NaN : -rate;
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * The single entry is the derivative by the rate.
+     */
+    @Override
+    public void logDensityParameterGradient(double[] xs, double[] out) {
+        double rate = getRateValue();
+        double sum = 0.0;
+        for (double x : xs) {
+            sum += x < 0.0 ? Double.NaN : x;
+        }
+        out[0] = xs.length / rate - sum;
+    }
     
     /**
      * Gets the rate parameter.
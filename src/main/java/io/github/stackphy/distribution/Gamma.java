@@ -2,6 +2,8 @@ package io.github.stackphy.distribution;
 
 import io.github.stackphy.model.Distribution;
 import io.github.stackphy.model.Parameter;
+import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.RandomContext;
 
 /**
  * Implementation of a gamma distribution.
@@ -41,6 +43,135 @@ public class Gamma implements Distribution {
         return new Parameter[] { shape, rate };
     }
     
+    @Override
+    public Primitive generateValue(RandomContext random) {
+        return new Primitive(nextGamma(random, getShapeValue()) / getRateValue());
+    }
+    
+    @Override
+    public void sample(RandomContext random, double[] out, int n) {
+        double shape = getShapeValue();
+        double scale = 1.0 / getRateValue();
+        for (int i = 0; i < n; i++) {
+            out[i] = nextGamma(random, shape) * scale;
+        }
+    }
+    
+    /**
+     * Draws a Gamma(shape, 1) value by the Marsaglia-Tsang method.
+     * Shapes below one are boosted to shape + 1 and scaled by U^(1/shape).
+     * 
+     * @param random The random context
+     * @param shape The shape (positive)
+     * @return The value
+     */
+    public static double nextGamma(RandomContext random, double shape) {
+        if (shape < 1.0) {
+            return nextGamma(random, shape + 1.0) * Math.pow(random.nextOpenDouble(), 1.0 / shape);
+        }
+        double d = shape - 1.0 / 3.0;
+        double c = 1.0 / Math.sqrt(9.0 * d);
+        while (true) {
+            double x;
+            double v;
+            do {
+                x = random.nextGaussian();
+                v = 1.0 + c * x;
+            } while (v <= 0.0);
+            v = v * v * v;
+            double u = random.nextOpenDouble();
+            double x2 = x * x;
+            // Cheap squeeze first, then the exact log test
+            if (u < 1.0 - 0.0331 * x2 * x2 || Math.log(u) < 0.5 * x2 + d * (1.0 - v + Math.log(v))) {
+                return d * v;
+            }
+        }
+    }
+    
+    /**
+     * Draws the logarithm of a Gamma(shape, 1) value. For shapes below one
+     * the boost factor is applied in log space, so tiny shapes do not underflow.
+     * 
+     * @param random The random context
+     * @param shape The shape (positive)
+     * @return The log of the value
+     */
+    public static double nextLogGamma(RandomContext random, double shape) {
+        if (shape < 1.0) {
+            return Math.log(nextGamma(random, shape + 1.0)) + Math.log(random.nextOpenDouble()) / shape;
+        }
+        return Math.log(nextGamma(random, shape));
+    }
+    
+    @Override
+    public double logDensity(double x) {
+        double shape = getShapeValue();
+        double rate = getRateValue();
+        return logDensity(x, shape, rate, shape * Math.log(rate) - SpecialFunctions.lnGamma(shape));
+    }
+    
+    @Override
+    public void logDensity(double[] xs, double[] out) {
+        double shape = getShapeValue();
+        double rate = getRateValue();
+        double constant = shape * Math.log(rate) - SpecialFunctions.lnGamma(shape);
+        for (int i = 0; i < xs.length; i++) {
+            out[i] = logDensity(xs[i], shape, rate, constant);
+        }
+    }
+    
+    @Override
+    public void logDensityGradient(double[] xs, double[] out) {
+        double shapeMinusOne = getShapeValue() - 1.0;
+        double rate = getRateValue();
+        for (int i = 0; i < xs.length; i++) {
+            double x = xs[i];
+            out[i] = x < 0.0 ? Double.NaN : shapeMinusOne / x - rate;
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * The entries are the derivatives by the shape and by the rate.
+     */
+    @Override
+    public void logDensityParameterGradient(double[] xs, double[] out) {
+        double shape = getShapeValue();
+        double rate = getRateValue();
+        double sum = 0.0;
+        double logSum = 0.0;
+        for (double x : xs) {
+            sum += x;
+            logSum += x < 0.0 ? Double.NaN : Math.log(x);
+        }
+        int n = xs.length;
+        out[0] = n * (Math.log(rate) - SpecialFunctions.digamma(shape)) + logSum;
+        out[1] = n * shape / rate - sum;
+    }
+    
+    /**
+     * Computes the log density given precomputed parameter terms.
+     * 
+     * @param x The value
+     * @param shape The shape α
+     * @param rate The rate β
+     * @param constant α·ln(β) - ln Γ(α)
+     * @return The log density
+     */
+    private static double logDensity(double x, double shape, double rate, double constant) {
+        if (x < 0.0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (x == 0.0) {
+            // The density at zero diverges for α < 1 and vanishes for α > 1
+            if (shape == 1.0) {
+                return constant;
+            }
+            return shape < 1.0 ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        }
+        return constant + (shape - 1.0) * Math.log(x) - rate * x;
+    }
+    
     /**
      * Gets the shape parameter.
      * 
@@ -3,6 +3,7 @@ package io.github.stackphy.distribution;
 import io.github.stackphy.model.Distribution;
 import io.github.stackphy.model.Parameter;
 import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.RandomContext;
 
 
 /**
@@ -39,18 +40,87 @@ public class LogNormal implements Distribution {
     }
     
     @Override
-    public Primitive generateValue() {
+    public Primitive generateValue(RandomContext random) {
         double mean = getMeanValue();
         double sd = getStandardDeviationValue();
         
         // Generate standard normal
-        double z = Math.random(); // Simplified - should use Box-Muller or similar
+        double z = random.nextGaussian();
         // Convert to log-normal
         double value = Math.exp(mean + sd * z);
         
         return new Primitive(value);
     }
     
+    @Override
+    public void sample(RandomContext random, double[] out, int n) {
+        double mean = getMeanValue();
+        double sd = getStandardDeviationValue();
+        for (int i = 0; i < n; i++) {
+            out[i] = Math.exp(mean + sd * random.nextGaussian());
+        }
+    }
+    
+    @Override
+    public double logDensity(double x) {
+        if (x <= 0.0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double sd = getStandardDeviationValue();
+        double logX = Math.log(x);
+        double z = (logX - getMeanValue()) / sd;
+        return -SpecialFunctions.HALF_LOG_2PI - Math.log(sd) - logX - 0.5 * z * z;
+    }
+    
+    @Override
+    public void logDensity(double[] xs, double[] out) {
+        double mean = getMeanValue();
+        double sd = getStandardDeviationValue();
+        double precision = 1.0 / sd;
+        double constant = -SpecialFunctions.HALF_LOG_2PI - Math.log(sd);
+        for (int i = 0; i < xs.length; i++) {
+            double x = xs[i];
+            if (x <= 0.0) {
+                out[i] = Double.NEGATIVE_INFINITY;
+            } else {
+                double logX = Math.log(x);
+                double z = (logX - mean) * precision;
+                out[i] = constant - logX - 0.5 * z * z;
+            }
+        }
+    }
+    
+    @Override
+    public void logDensityGradient(double[] xs, double[] out) {
+        double mean = getMeanValue();
+        double sd = getStandardDeviationValue();
+        double precision = 1.0 / (sd * sd);
+        for (int i = 0; i < xs.length; i++) {
+            double x = xs[i];
+            out[i] = x <= 0.0 ? Double.NaN : -(1.0 + (Math.log(x) - mean) * precision) / x;
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * The entries are the derivatives by the log-scale mean and standard deviation.
+     */
+    @Override
+    public void logDensityParameterGradient(double[] xs, double[] out) {
+        double mean = getMeanValue();
+        double sd = getStandardDeviationValue();
+        double sum = 0.0;
+        double squares = 0.0;
+        for (double x : xs) {
+            double d = (x <= 0.0 ? Double.NaN : Math.log(x)) - mean;
+            sum += d;
+            squares += d * d;
+        }
+        double variance = sd * sd;
+        out[0] = sum / variance;
+        out[1] = squares / (variance * sd) - xs.length / sd;
+    }
+    
     /**
      * Gets the mean parameter (on log scale).
      * 
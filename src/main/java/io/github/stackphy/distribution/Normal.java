@@ -3,6 +3,7 @@ package io.github.stackphy.distribution;
 import io.github.stackphy.model.Distribution;
 import io.github.stackphy.model.Parameter;
 import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.RandomContext;
 
 /**
  * Implementation of a normal (Gaussian) distribution.
@@ -38,21 +39,74 @@ public class Normal implements Distribution {
     }
     
     @Override
-    public Primitive generateValue() {
+    public Primitive generateValue(RandomContext random) {
         // Get mean and standard deviation
         double mean = getMeanValue();
         double sd = getStandardDeviationValue();
         
-        // Generate a normal random value (simplified)
-        // In a real implementation, you'd use a proper random number generator
-        double u1 = Math.random();
-        double u2 = Math.random();
-        double z = Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2.0 * Math.PI * u2);
-        double value = mean + sd * z;
+        double value = mean + sd * random.nextGaussian();
         
         return new Primitive(value);
     }
     
+    @Override
+    public void sample(RandomContext random, double[] out, int n) {
+        double mean = getMeanValue();
+        double sd = getStandardDeviationValue();
+        for (int i = 0; i < n; i++) {
+            out[i] = mean + sd * random.nextGaussian();
+        }
+    }
+    
+    @Override
+    public double logDensity(double x) {
+        double sd = getStandardDeviationValue();
+        double z = (x - getMeanValue()) / sd;
+        return -SpecialFunctions.HALF_LOG_2PI - Math.log(sd) - 0.5 * z * z;
+    }
+    
+    @Override
+    public void logDensity(double[] xs, double[] out) {
+        double mean = getMeanValue();
+        double sd = getStandardDeviationValue();
+        double precision = 1.0 / sd;
+        double constant = -SpecialFunctions.HALF_LOG_2PI - Math.log(sd);
+        for (int i = 0; i < xs.length; i++) {
+            double z = (xs[i] - mean) * precision;
+            out[i] = constant - 0.5 * z * z;
+        }
+    }
+    
+    @Override
+    public void logDensityGradient(double[] xs, double[] out) {
+        double mean = getMeanValue();
+        double sd = getStandardDeviationValue();
+        double precision = 1.0 / (sd * sd);
+        for (int i = 0; i < xs.length; i++) {
+            out[i] = (mean - xs[i]) * precision;
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * The entries are the derivatives by the mean and by the standard deviation.
+     */
+    @Override
+    public void logDensityParameterGradient(double[] xs, double[] out) {
+        double mean = getMeanValue();
+        double sd = getStandardDeviationValue();
+        double sum = 0.0;
+        double squares = 0.0;
+        for (double x : xs) {
+            double d = x - mean;
+            sum += d;
+            squares += d * d;
+        }
+        double variance = sd * sd;
+        out[0] = sum / variance;
+        out[1] = squares / (variance * sd) - xs.length / sd;
+    }
+    
     /**
      * Gets the mean parameter.
      * 
@@ -1,11 +1,19 @@
 package io.github.stackphy.distribution;
 
+import io.github.stackphy.likelihood.SitePatterns;
+import io.github.stackphy.likelihood.TreeLikelihood;
 import io.github.stackphy.model.Distribution;
-import io.github.stackphy.model.Model;
 import io.github.stackphy.model.Parameter;
+import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.Sequence;
 import io.github.stackphy.model.StackItem;
 import io.github.stackphy.model.StackItemType;
 import io.github.stackphy.model.Variable;
+import io.github.stackphy.substitution.SubstitutionModel;
+import io.github.stackphy.tree.Tree;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Implementation of a Phylogenetic Continuous-Time Markov Chain.
@@ -17,6 +25,7 @@ public class PhyloCTMC implements Distribution {
     private final Parameter substitutionModel;
     private Parameter siteRates; // Optional gamma-distributed site rates
     private Parameter clockRate; // Optional clock rate
+    private SitePatterns observedPatterns; // Compressed observed alignment, if any
     
     /**
      * Creates a new PhyloCTMC model.
@@ -146,6 +155,156 @@ public class PhyloCTMC implements Distribution {
         this.clockRate = clockRate;
     }
     
+    /**
+     * Gets the current tree.
+     * The tree parameter must hold a Tree value, either as observed data or as
+     * its current value.
+     * 
+     * @return The tree
+     * @throws IllegalStateException if the tree parameter does not hold a tree
+     */
+    public Tree getTreeValue() {
+        Object value;
+        try {
+            value = tree.getValue();
+        } catch (UnsupportedOperationException e) {
+            throw new IllegalStateException("Tree parameter has no tree value", e);
+        }
+        if (!(value instanceof Tree)) {
+            throw new IllegalStateException("Tree parameter has no tree value");
+        }
+        return (Tree) value;
+    }
+    
+    /**
+     * Gets the substitution model, resolving a variable to the model it holds.
+     * 
+     * @return The substitution model
+     * @throws UnsupportedOperationException if the model cannot produce transition probabilities
+     */
+    public SubstitutionModel getSubstitutionModelValue() {
+        StackItem value = substitutionModel;
+        if (value instanceof Variable) {
+            value = ((Variable) value).getUnderlyingValue();
+        }
+        if (!(value instanceof SubstitutionModel)) {
+            throw new UnsupportedOperationException("Substitution model does not provide transition probabilities");
+        }
+        return (SubstitutionModel) value;
+    }
+    
+    /**
+     * Gets the site rate categories used to integrate over rate heterogeneity.
+     * Each category is weighted equally. Without site rates a single category
+     * with rate 1.0 is used.
+     * 
+     * @return The category rates
+     */
+    public double[] getSiteRateValues() {
+        if (siteRates == null) {
+            return new double[] { 1.0 };
+        }
+        
+        StackItem value = siteRates;
+        if (value instanceof Variable) {
+            value = ((Variable) value).getUnderlyingValue();
+        }
+        
+        if (value instanceof DiscreteGamma) {
+            return ((DiscreteGamma) value).getRateValues();
+        }
+        
+        if (siteRates.isArray()) {
+            Object[] values = siteRates.getArrayValue();
+            double[] rates = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                rates[i] = ((Number) values[i]).doubleValue();
+            }
+            return rates;
+        }
+        
+        return new double[] { siteRates.getDoubleValue() };
+    }
+    
+    /**
+     * Gets the clock rate that scales all branch lengths.
+     * 
+     * @return The clock rate, or 1.0 if not set
+     */
+    public double getClockRateValue() {
+        return clockRate == null ? 1.0 : clockRate.getDoubleValue();
+    }
+    
+    /**
+     * Gets the compressed observed alignment.
+     * 
+     * @return The site patterns, or null if no alignment has been observed
+     */
+    public SitePatterns getObservedPatterns() {
+        return observedPatterns;
+    }
+    
+    /**
+     * Sets the compressed observed alignment.
+     * This is called once when data is attached with {@code observe}.
+     * 
+     * @param observedPatterns The site patterns
+     */
+    public void setObservedPatterns(SitePatterns observedPatterns) {
+        this.observedPatterns = observedPatterns;
+    }
+    
+    /**
+     * Creates a likelihood engine for the observed alignment on the given tree.
+     * 
+     * @param tree The tree
+     * @return The likelihood engine
+     * @throws IllegalStateException if no alignment has been observed
+     */
+    public TreeLikelihood createLikelihood(Tree tree) {
+        if (observedPatterns == null) {
+            throw new IllegalStateException("No alignment has been observed");
+        }
+        return new TreeLikelihood(this, tree, observedPatterns);
+    }
+    
+    /**
+     * Computes the log-likelihood of an alignment on the given tree.
+     * This builds a fresh likelihood engine on every call; callers evaluating
+     * repeatedly should hold on to a {@link TreeLikelihood} instead.
+     * 
+     * @param tree The tree
+     * @param alignment The sequences, one per tip
+     * @return The log-likelihood
+     */
+    public double logLikelihood(Tree tree, List<Sequence> alignment) {
+        return new TreeLikelihood(this, tree, alignment).calculateLogLikelihood();
+    }
+    
+    /**
+     * Extracts the sequences from observed data attached with {@code observe}.
+     * 
+     * @param data The observed data (a single sequence or an array of sequences)
+     * @return The sequences
+     * @throws IllegalArgumentException if the data does not contain sequences
+     */
+    public static List<Sequence> toAlignment(StackItem data) {
+        List<Sequence> alignment = new ArrayList<>();
+        if (data instanceof Sequence) {
+            alignment.add((Sequence) data);
+        } else if (data instanceof Primitive && ((Primitive) data).isArray()) {
+            for (Object element : ((Primitive) data).getArrayValue()) {
+                if (!(element instanceof Sequence)) {
+                    throw new IllegalArgumentException("Observed data must contain only sequences");
+                }
+                alignment.add((Sequence) element);
+            }
+        } else {
+            throw new IllegalArgumentException("Observed data must be a sequence or an array of sequences");
+        }
+        return alignment;
+    }
+    
     /**
      * Validates that the tree parameter is valid.
      * 
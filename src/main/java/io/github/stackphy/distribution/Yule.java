@@ -2,6 +2,9 @@ package io.github.stackphy.distribution;
 
 import io.github.stackphy.model.Distribution;
 import io.github.stackphy.model.Parameter;
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.TreeDensity;
+import io.github.stackphy.tree.Tree;
 
 /**
  * Implementation of a Yule process for tree priors.
@@ -52,4 +55,50 @@ public class Yule implements Distribution {
     public double getBirthRateValue() {
         return birthRate.getDoubleValue();
     }
+
+    /**
+     * Computes the log density of an ultrametric tree conditioned on its
+     * number of tips, in one pass over the node heights.
+     *
+     * @param tree The tree
+     * @return The log density
+     * @see BirthDeathDensity
+     */
+    @Override
+    public double logDensity(Tree tree) {
+        return createTreeDensity(tree).getLogDensity();
+    }
+    
+    @Override
+    public TreeDensity createTreeDensity(Tree tree) {
+        return new BirthDeathDensity(tree, birthRate, null);
+    }
+
+    /**
+     * Simulates a tree with the given tips from the current birth rate.
+     *
+     * @param random The random context
+     * @param taxa The tip names
+     * @return The tree
+     * @see BirthDeathSimulator
+     */
+    @Override
+    public Tree simulate(RandomContext random, String[] taxa) {
+        return new BirthDeathSimulator(getBirthRateValue(), 0.0).simulate(random, taxa);
+    }
+
+    /**
+     * Simulates replicate trees on several threads, reproducibly for any
+     * thread count.
+     *
+     * @param random The random context
+     * @param taxa The tip names
+     * @param replicates The number of trees
+     * @param threads The number of threads
+     * @return The trees
+     * @see BirthDeathSimulator
+     */
+    public Tree[] simulate(RandomContext random, String[] taxa, int replicates, int threads) {
+        return new BirthDeathSimulator(getBirthRateValue(), 0.0).simulate(random, taxa, replicates, threads);
+    }
 }
@@ -298,7 +298,33 @@ public class CodePhyExporter {
         JsonObject funcJson = new JsonObject();
         
         // Handle different types of deterministic functions
-        if (value instanceof HKY) {
+        // (JC69, K80 and F81 extend HKY, so they are checked first)
+        if (value instanceof JC69) {
+            funcJson.addProperty("function", "jc69");
+            funcJson.add("arguments", new JsonObject());
+            return funcJson;
+        }
+        else if (value instanceof K80) {
+            K80 k80 = (K80) value;
+            funcJson.addProperty("function", "k80");
+            
+            JsonObject arguments = new JsonObject();
+            arguments.add("kappa", convertParameter(k80.getKappa()));
+            
+            funcJson.add("arguments", arguments);
+            return funcJson;
+        }
+        else if (value instanceof F81) {
+            F81 f81 = (F81) value;
+            funcJson.addProperty("function", "f81");
+            
+            JsonObject arguments = new JsonObject();
+            arguments.add("frequencies", convertParameter(f81.getBaseFrequencies()));
+            
+            funcJson.add("arguments", arguments);
+            return funcJson;
+        }
+        else if (value instanceof HKY) {
             HKY hky = (HKY) value;
             funcJson.addProperty("function", "hky");
             
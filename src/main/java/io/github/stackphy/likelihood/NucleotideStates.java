@@ -0,0 +1,62 @@
+package io.github.stackphy.likelihood;
+
+/**
+ * Encodes nucleotide characters as 4-bit state masks.
+ * Bit s is set when state s is compatible with the character (A=1, C=2,
+ * G=4, T/U=8), so IUPAC ambiguity codes map to the union of their bases and
+ * gaps or missing data map to all four.
+ */
+public final class NucleotideStates {
+    /** Number of nucleotide states. */
+    public static final int STATE_COUNT = 4;
+
+    /** Number of distinct masks. */
+    public static final int MASK_COUNT = 1 << STATE_COUNT;
+
+    /** Mask of a character compatible with every state. */
+    public static final int MISSING = MASK_COUNT - 1;
+
+    private static final int A = 1;
+    private static final int C = 2;
+    private static final int G = 4;
+    private static final int T = 8;
+
+    private NucleotideStates() {
+        // Utility class
+    }
+
+    /**
+     * Gets the state mask of a nucleotide character (case-insensitive).
+     *
+     * @param c The character
+     * @return The mask, between 1 and 15
+     * @throws IllegalArgumentException if the character is not a nucleotide,
+     *         IUPAC ambiguity code, gap or missing-data symbol
+     */
+    public static int getMask(char c) {
+        switch (Character.toUpperCase(c)) {
+            case 'A': return A;
+            case 'C': return C;
+            case 'G': return G;
+            case 'T':
+            case 'U': return T;
+            case 'R': return A | G;
+            case 'Y': return C | T;
+            case 'S': return C | G;
+            case 'W': return A | T;
+            case 'K': return G | T;
+            case 'M': return A | C;
+            case 'B': return C | G | T;
+            case 'D': return A | G | T;
+            case 'H': return A | C | T;
+            case 'V': return A | C | G;
+            case 'N':
+            case 'X':
+            case '-':
+            case '?':
+            case '.': return MISSING;
+            default:
+                throw new IllegalArgumentException("Invalid nucleotide character '" + c + "'");
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package io.github.stackphy.likelihood;
+
+import io.github.stackphy.model.Sequence;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An alignment compressed into unique site patterns.
+ * Identical alignment columns are collapsed into a single pattern with an
+ * integer weight counting how often it occurs. Instances are immutable and can
+ * be shared between likelihood engines and threads.
+ */
+public final class SitePatterns {
+    private final String[] taxa;
+    private final int siteCount;
+    private final int patternCount;
+    private final char[] states; // [taxon][pattern], flattened
+    private final int[] weights;
+    private final int[] sitePatterns;
+
+    private SitePatterns(String[] taxa, int siteCount, int patternCount, char[] states,
+                         int[] weights, int[] sitePatterns) {
+        this.taxa = taxa;
+        this.siteCount = siteCount;
+        this.patternCount = patternCount;
+        this.states = states;
+        this.weights = weights;
+        this.sitePatterns = sitePatterns;
+    }
+
+    /**
+     * Compresses an alignment into site patterns.
+     * Characters are upper-cased; patterns keep the order of their first occurrence.
+     *
+     * @param alignment The aligned sequences
+     * @return The site patterns
+     * @throws IllegalArgumentException if the alignment is empty, has duplicate
+     *         taxa, or the sequences differ in length
+     */
+    public static SitePatterns compress(List<Sequence> alignment) {
+        if (alignment.isEmpty()) {
+            throw new IllegalArgumentException("Alignment is empty");
+        }
+
+        int taxonCount = alignment.size();
+        int siteCount = alignment.get(0).getSequence().length();
+        String[] taxa = new String[taxonCount];
+        char[][] rows = new char[taxonCount][];
+        Set<String> seen = new HashSet<>();
+
+        for (int t = 0; t < taxonCount; t++) {
+            Sequence sequence = alignment.get(t);
+            if (sequence.getSequence().length() != siteCount) {
+                throw new IllegalArgumentException("Sequences must all have the same length");
+            }
+            if (!seen.add(sequence.getTaxon())) {
+                throw new IllegalArgumentException("Duplicate sequence for taxon '" + sequence.getTaxon() + "'");
+            }
+            taxa[t] = sequence.getTaxon();
+            rows[t] = sequence.getSequence().toUpperCase().toCharArray();
+        }
+
+        // Key each column by its characters and assign pattern indices on first sight
+        Map<String, Integer> patternIndex = new HashMap<>();
+        int[] sitePatterns = new int[siteCount];
+        int[] firstSite = new int[siteCount];
+        int[] counts = new int[siteCount];
+        char[] column = new char[taxonCount];
+        int patternCount = 0;
+
+        for (int s = 0; s < siteCount; s++) {
+            for (int t = 0; t < taxonCount; t++) {
+                column[t] = rows[t][s];
+            }
+            String key = new String(column);
+            Integer pattern = patternIndex.get(key);
+            if (pattern == null) {
+                pattern = patternCount++;
+                patternIndex.put(key, pattern);
+                firstSite[pattern] = s;
+            }
+            sitePatterns[s] = pattern;
+            counts[pattern]++;
+        }
+
+        char[] states = new char[taxonCount * patternCount];
+        for (int t = 0; t < taxonCount; t++) {
+            for (int p = 0; p < patternCount; p++) {
+                states[t * patternCount + p] = rows[t][firstSite[p]];
+            }
+        }
+
+        return new SitePatterns(taxa, siteCount, patternCount, states,
+                Arrays.copyOf(counts, patternCount), sitePatterns);
+    }
+
+    /**
+     * Gets the number of taxa.
+     *
+     * @return The taxon count
+     */
+    public int getTaxonCount() {
+        return taxa.length;
+    }
+
+    /**
+     * Gets the name of a taxon.
+     *
+     * @param taxon The taxon index
+     * @return The taxon name
+     */
+    public String getTaxon(int taxon) {
+        return taxa[taxon];
+    }
+
+    /**
+     * Gets the number of sites in the original alignment.
+     *
+     * @return The site count
+     */
+    public int getSiteCount() {
+        return siteCount;
+    }
+
+    /**
+     * Gets the number of unique patterns.
+     *
+     * @return The pattern count
+     */
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * Gets the character of a taxon in a pattern.
+     *
+     * @param taxon The taxon index
+     * @param pattern The pattern index
+     * @return The upper-case character
+     */
+    public char getState(int taxon, int pattern) {
+        return states[taxon * patternCount + pattern];
+    }
+
+    /**
+     * Gets how many sites share a pattern.
+     *
+     * @param pattern The pattern index
+     * @return The pattern weight
+     */
+    public int getWeight(int pattern) {
+        return weights[pattern];
+    }
+
+    /**
+     * Gets a copy of all pattern weights.
+     *
+     * @return The pattern weights
+     */
+    public int[] getWeights() {
+        return weights.clone();
+    }
+
+    /**
+     * Gets the pattern that a site of the original alignment maps to.
+     *
+     * @param site The site index
+     * @return The pattern index
+     */
+    public int getSitePattern(int site) {
+        return sitePatterns[site];
+    }
+}
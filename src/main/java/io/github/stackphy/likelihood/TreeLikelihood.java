@@ -0,0 +1,751 @@
+package io.github.stackphy.likelihood;
+
+import io.github.stackphy.distribution.PhyloCTMC;
+import io.github.stackphy.model.Sequence;
+import io.github.stackphy.substitution.SubstitutionModel;
+import io.github.stackphy.substitution.TransitionMatrixCache;
+import io.github.stackphy.tree.Tree;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Felsenstein pruning likelihood for a PhyloCTMC.
+ * Partial likelihoods are kept in one flat double[] per internal node, laid out as
+ * [pattern][category][state], and transition matrices in one flat double[]
+ * per node laid out as [category][from][to]. Model values (substitution model,
+ * site rates, clock rate) are read from the PhyloCTMC on every evaluation.
+ * <p>
+ * Tips have no partials. Each tip keeps one 4-bit state mask per pattern
+ * (see {@link NucleotideStates}), and the branch above it keeps a lookup table
+ * of Σ_{j ∈ mask} P_ij for every mask, laid out as [category][mask][from].
+ * Tip–tip and tip–internal kernels read tip contributions from that table,
+ * which handles ambiguity codes at no extra cost.
+ * <p>
+ * To avoid underflow on large trees, a pattern's partials at a node are
+ * rescaled by a power of two whenever their largest entry falls below the
+ * scaling threshold. Each internal node keeps, per pattern, the log scale
+ * accumulated over its whole subtree, so the root holds the total and only
+ * recomputed nodes touch their scale buffers. Power-of-two factors are exact,
+ * so scaling adds no rounding error.
+ * <p>
+ * Patterns are processed in blocks sized to keep a block's working set in
+ * cache. Each block runs the whole post-order pass for its patterns, so with
+ * more than one thread the blocks are evaluated independently on a ForkJoin
+ * pool. Per-block log-likelihood sums are always added in block order, so the
+ * result is bit-for-bit identical for any thread count.
+ * <p>
+ * Evaluation is incremental. Branch lengths, site rates and the model version
+ * are compared with the values of the previous evaluation, and only the
+ * matrices of changed branches and the partials on the paths from them to the
+ * root are recomputed. Changes that do not alter a branch length, such as a
+ * rearranged topology, are reported with {@link #markNodeDirty(int)}.
+ * Internal partials and matrices are double-buffered: {@link #store()} records
+ * which buffer of each node holds the current values, updates after a store
+ * write to the other buffer, and {@link #restore()} switches back by index
+ * without copying any likelihood data.
+ */
+public class TreeLikelihood {
+    // Target working-set size for one block: partials of a node and its two children
+    private static final int BLOCK_CACHE_BYTES = 256 * 1024;
+    private static final int MIN_BLOCK_PATTERNS = 16;
+    private static final double DEFAULT_SCALING_THRESHOLD = Math.scalb(1.0, -256);
+    private static final double LOG_2 = Math.log(2.0);
+
+    private static final ConcurrentHashMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+    private static volatile int defaultThreadCount = 1;
+
+    private final PhyloCTMC ctmc;
+    private final Tree tree;
+    private final int nodeCount;
+    private final int stateCount;
+    private final int patternCount;
+    private final int categoryCount;
+    private final double[] patternWeights;
+    private final double[][][] partials; // [buffer][node][pattern·category·state], null for tips
+    private final double[][][] matrices; // [buffer][node][category·from·to]
+    private final double[][][] tipTables; // [buffer][tip][category·mask·from]
+    private final double[][][] logScales; // [buffer][node][pattern], subtree totals, null for tips
+    private final byte[][] tipStates; // [tip][pattern] state masks
+    private final TransitionMatrixCache matrixCache;
+
+    // Current and stored buffer index of each node
+    private final int[] partialsIndex;
+    private final int[] storedPartialsIndex;
+    private final int[] matrixIndex;
+    private final int[] storedMatrixIndex;
+
+    // Inputs of the current matrices, compared on each evaluation to find changes
+    private final double[] branchLengths;
+    private final double[] storedBranchLengths;
+    private final double[] categoryRates;
+    private final double[] storedCategoryRates;
+    private long modelVersion;
+    private long storedModelVersion;
+
+    private final boolean[] partialsDirty;
+    private final boolean[] matricesDirty;
+    private final boolean[] nodeChanged;
+    private final int[] updateList;
+    private int updateCount;
+    private double logLikelihood;
+    private double storedLogLikelihood;
+    private boolean likelihoodKnown;
+    private boolean storedLikelihoodKnown;
+
+    private int threadCount;
+    private int blockSize;
+    private double[] blockLogL; // Per-block sums, reallocated when the block count changes
+    private double scalingThreshold;
+
+    /**
+     * Creates a new tree likelihood from raw sequences.
+     * The alignment is compressed into site patterns first.
+     *
+     * @param ctmc The PhyloCTMC providing the substitution model and rates
+     * @param tree The tree
+     * @param alignment The aligned sequences, one per tip of the tree
+     * @throws IllegalArgumentException if the alignment does not match the tree
+     */
+    public TreeLikelihood(PhyloCTMC ctmc, Tree tree, List<Sequence> alignment) {
+        this(ctmc, tree, SitePatterns.compress(alignment));
+    }
+
+    /**
+     * Creates a new tree likelihood over compressed site patterns.
+     *
+     * @param ctmc The PhyloCTMC providing the substitution model and rates
+     * @param tree The tree
+     * @param patterns The site patterns, with one taxon per tip of the tree
+     * @throws IllegalArgumentException if the patterns do not match the tree
+     */
+    public TreeLikelihood(PhyloCTMC ctmc, Tree tree, SitePatterns patterns) {
+        this.ctmc = ctmc;
+        this.tree = tree;
+        this.nodeCount = tree.getNodeCount();
+        this.stateCount = ctmc.getSubstitutionModelValue().getStateCount();
+        this.categoryCount = ctmc.getSiteRateValues().length;
+
+        if (stateCount != NucleotideStates.STATE_COUNT) {
+            throw new IllegalArgumentException("Only nucleotide substitution models are supported");
+        }
+
+        if (patterns.getTaxonCount() != tree.getTipCount()) {
+            throw new IllegalArgumentException("Alignment has " + patterns.getTaxonCount()
+                    + " sequences but the tree has " + tree.getTipCount() + " tips");
+        }
+
+        this.patternCount = patterns.getPatternCount();
+        this.patternWeights = new double[patternCount];
+        for (int p = 0; p < patternCount; p++) {
+            patternWeights[p] = patterns.getWeight(p);
+        }
+
+        int partialsSize = patternCount * categoryCount * stateCount;
+        int matricesSize = categoryCount * stateCount * stateCount;
+        int tableSize = categoryCount * NucleotideStates.MASK_COUNT * stateCount;
+        int tipCount = tree.getTipCount();
+        this.partials = new double[2][nodeCount][];
+        this.matrices = new double[2][nodeCount][];
+        this.tipTables = new double[2][tipCount][];
+        this.logScales = new double[2][nodeCount][];
+        this.tipStates = new byte[tipCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            if (tree.isTip(node)) {
+                tipTables[0][node] = new double[tableSize];
+                tipTables[1][node] = new double[tableSize];
+            } else {
+                partials[0][node] = new double[partialsSize];
+                partials[1][node] = new double[partialsSize];
+                logScales[0][node] = new double[patternCount];
+                logScales[1][node] = new double[patternCount];
+            }
+            matrices[0][node] = new double[matricesSize];
+            matrices[1][node] = new double[matricesSize];
+        }
+        this.matrixCache = new TransitionMatrixCache(ctmc.getSubstitutionModelValue());
+        this.threadCount = defaultThreadCount;
+        this.scalingThreshold = DEFAULT_SCALING_THRESHOLD;
+        this.blockSize = Math.max(MIN_BLOCK_PATTERNS,
+                BLOCK_CACHE_BYTES / (3 * categoryCount * stateCount * Double.BYTES));
+
+        this.partialsIndex = new int[nodeCount];
+        this.storedPartialsIndex = new int[nodeCount];
+        this.matrixIndex = new int[nodeCount];
+        this.storedMatrixIndex = new int[nodeCount];
+        this.branchLengths = new double[nodeCount];
+        this.storedBranchLengths = new double[nodeCount];
+        this.categoryRates = new double[categoryCount];
+        this.storedCategoryRates = new double[categoryCount];
+        this.partialsDirty = new boolean[nodeCount];
+        this.matricesDirty = new boolean[nodeCount];
+        this.nodeChanged = new boolean[nodeCount];
+        this.updateList = new int[nodeCount];
+        markAllDirty();
+
+        for (int t = 0; t < patterns.getTaxonCount(); t++) {
+            int tip = tree.getTaxonIndex(patterns.getTaxon(t));
+            if (tip == Tree.NONE) {
+                throw new IllegalArgumentException("Taxon '" + patterns.getTaxon(t) + "' is not in the tree");
+            }
+            setTipStates(tip, patterns, t);
+        }
+    }
+
+    /**
+     * Encodes the row of a taxon in the pattern table as state masks.
+     *
+     * @param tip The tip index
+     * @param patterns The site patterns
+     * @param taxon The taxon index in the patterns
+     * @throws IllegalArgumentException if the row contains an invalid character
+     */
+    private void setTipStates(int tip, SitePatterns patterns, int taxon) {
+        byte[] states = new byte[patternCount];
+        for (int p = 0; p < patternCount; p++) {
+            states[p] = (byte) NucleotideStates.getMask(patterns.getState(taxon, p));
+        }
+        tipStates[tip] = states;
+    }
+
+    /**
+     * Calculates the log-likelihood of the alignment.
+     *
+     * @return The log-likelihood
+     */
+    public double calculateLogLikelihood() {
+        SubstitutionModel model = ctmc.getSubstitutionModelValue();
+        double[] rates = ctmc.getSiteRateValues();
+        double clockRate = ctmc.getClockRateValue();
+
+        if (rates.length != categoryCount) {
+            throw new IllegalStateException("Number of site rate categories changed");
+        }
+
+        long version = model.getVersion();
+        if (version != modelVersion || !Arrays.equals(rates, categoryRates)) {
+            modelVersion = version;
+            System.arraycopy(rates, 0, categoryRates, 0, categoryCount);
+            Arrays.fill(matricesDirty, true);
+        }
+
+        // Find changed branches and the internal nodes above them, children first
+        int root = tree.getRoot();
+        updateCount = 0;
+        for (int node : tree.getPostOrder()) {
+            boolean changed = false;
+            if (!tree.isTip(node)) {
+                changed = partialsDirty[node]
+                        || nodeChanged[tree.getLeftChild(node)] || nodeChanged[tree.getRightChild(node)];
+                if (changed) {
+                    partialsIndex[node] = 1 - storedPartialsIndex[node];
+                    updateList[updateCount++] = node;
+                }
+            }
+            if (node == root) {
+                // Forces a matrix update should this node later get a parent
+                branchLengths[node] = Double.NaN;
+            } else {
+                double length = tree.getBranchLength(node) * clockRate;
+                if (matricesDirty[node] || Double.doubleToLongBits(length) != Double.doubleToLongBits(branchLengths[node])) {
+                    matrixIndex[node] = 1 - storedMatrixIndex[node];
+                    updateMatrices(node, length, rates);
+                    branchLengths[node] = length;
+                    changed = true;
+                }
+            }
+            nodeChanged[node] = changed;
+            partialsDirty[node] = false;
+            matricesDirty[node] = false;
+        }
+
+        if (updateCount == 0 && likelihoodKnown) {
+            return logLikelihood;
+        }
+
+        double[] frequencies = model.getFrequencies();
+        int blockCount = (patternCount + blockSize - 1) / blockSize;
+        if (blockLogL == null || blockLogL.length != blockCount) {
+            blockLogL = new double[blockCount];
+        }
+
+        if (threadCount > 1 && blockCount > 1) {
+            getPool(threadCount).invoke(new BlockTask(frequencies, blockLogL, 0, blockCount));
+        } else {
+            for (int b = 0; b < blockCount; b++) {
+                blockLogL[b] = calculateBlock(frequencies, b);
+            }
+        }
+
+        // Fixed reduction order keeps the result independent of scheduling
+        double logL = 0.0;
+        for (int b = 0; b < blockCount; b++) {
+            logL += blockLogL[b];
+        }
+        logLikelihood = logL;
+        likelihoodKnown = true;
+        return logL;
+    }
+
+    /**
+     * Updates the partials of the changed nodes and integrates the root for one block of patterns.
+     *
+     * @param frequencies The equilibrium state frequencies
+     * @param block The block index
+     * @return The log-likelihood of the block
+     */
+    private double calculateBlock(double[] frequencies, int block) {
+        int start = block * blockSize;
+        int end = Math.min(patternCount, start + blockSize);
+        for (int i = 0; i < updateCount; i++) {
+            int node = updateList[i];
+            updatePartials(node, tree.getLeftChild(node), tree.getRightChild(node), start, end);
+        }
+        return integrateRoot(frequencies, start, end);
+    }
+
+    /**
+     * Marks the partials of a node for recomputation.
+     * Branch length and model changes are detected automatically; this is needed
+     * when the children of a node change without any branch length changing.
+     * The path to the root is recomputed along with the node.
+     *
+     * @param node The index of an internal node
+     */
+    public void markNodeDirty(int node) {
+        partialsDirty[node] = true;
+    }
+
+    /**
+     * Marks every matrix and partial for recomputation.
+     */
+    public void markAllDirty() {
+        Arrays.fill(partialsDirty, true);
+        Arrays.fill(matricesDirty, true);
+        likelihoodKnown = false;
+    }
+
+    /**
+     * Records the current state so a later {@link #restore()} can return to it.
+     * Only buffer indices and scalar inputs are saved; no partials are copied.
+     */
+    public void store() {
+        System.arraycopy(partialsIndex, 0, storedPartialsIndex, 0, nodeCount);
+        System.arraycopy(matrixIndex, 0, storedMatrixIndex, 0, nodeCount);
+        System.arraycopy(branchLengths, 0, storedBranchLengths, 0, nodeCount);
+        System.arraycopy(categoryRates, 0, storedCategoryRates, 0, categoryCount);
+        storedModelVersion = modelVersion;
+        storedLogLikelihood = logLikelihood;
+        storedLikelihoodKnown = likelihoodKnown;
+    }
+
+    /**
+     * Returns to the state recorded by the last {@link #store()} by switching
+     * buffer indices back. The tree and model must be restored by the caller.
+     */
+    public void restore() {
+        System.arraycopy(storedPartialsIndex, 0, partialsIndex, 0, nodeCount);
+        System.arraycopy(storedMatrixIndex, 0, matrixIndex, 0, nodeCount);
+        System.arraycopy(storedBranchLengths, 0, branchLengths, 0, nodeCount);
+        System.arraycopy(storedCategoryRates, 0, categoryRates, 0, categoryCount);
+        modelVersion = storedModelVersion;
+        logLikelihood = storedLogLikelihood;
+        likelihoodKnown = storedLikelihoodKnown;
+        Arrays.fill(partialsDirty, false);
+        Arrays.fill(matricesDirty, false);
+    }
+
+    /**
+     * Gets the number of internal nodes whose partials were recomputed by the last evaluation.
+     *
+     * @return The updated node count
+     */
+    public int getUpdatedNodeCount() {
+        return updateCount;
+    }
+
+    /**
+     * Fills the transition matrices of the branch above a node for all rate categories.
+     * Matrices come from the model's matrix cache, so unchanged branches are not recomputed.
+     *
+     * @param node The node index
+     * @param branchLength The branch length, already multiplied by the clock rate
+     * @param rates The site rate categories
+     */
+    private void updateMatrices(int node, double branchLength, double[] rates) {
+        int matrixSize = stateCount * stateCount;
+        for (int c = 0; c < categoryCount; c++) {
+            matrixCache.getTransitionProbabilities(branchLength, rates[c], matrices[matrixIndex[node]][node], c * matrixSize);
+        }
+        if (tree.isTip(node)) {
+            updateTipTable(matrices[matrixIndex[node]][node], tipTables[matrixIndex[node]][node]);
+        }
+    }
+
+    /**
+     * Sums the matrix columns selected by each state mask.
+     *
+     * @param matrix The matrices of a tip branch, [category][from][to]
+     * @param table Output table, [category][mask][from]
+     */
+    private void updateTipTable(double[] matrix, double[] table) {
+        int t = 0;
+        for (int c = 0; c < categoryCount; c++) {
+            int m = c * stateCount * stateCount;
+            for (int mask = 0; mask < NucleotideStates.MASK_COUNT; mask++) {
+                for (int i = 0; i < stateCount; i++) {
+                    double sum = 0.0;
+                    for (int j = 0; j < stateCount; j++) {
+                        if ((mask & (1 << j)) != 0) {
+                            sum += matrix[m + i * stateCount + j];
+                        }
+                    }
+                    table[t++] = sum;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the partials of an internal node from its two children for a
+     * range of patterns, picking the kernel for the kinds of children.
+     *
+     * @param node The parent node
+     * @param child1 The first child
+     * @param child2 The second child
+     * @param start The first pattern (inclusive)
+     * @param end The last pattern (exclusive)
+     */
+    private void updatePartials(int node, int child1, int child2, int start, int end) {
+        boolean tip1 = tree.isTip(child1);
+        boolean tip2 = tree.isTip(child2);
+        if (tip1 && tip2) {
+            updateTipTipPartials(node, child1, child2, start, end);
+        } else if (tip1) {
+            updateTipInternalPartials(node, child1, child2, start, end);
+        } else if (tip2) {
+            updateTipInternalPartials(node, child2, child1, start, end);
+        } else {
+            updateInternalPartials(node, child1, child2, start, end);
+        }
+        scalePartials(node, child1, child2, start, end);
+    }
+
+    /**
+     * Rescales the patterns of a node whose largest partial is below the
+     * threshold and accumulates the subtree log scales of the node.
+     *
+     * @param node The node whose partials were just computed
+     * @param child1 The first child
+     * @param child2 The second child
+     * @param start The first pattern (inclusive)
+     * @param end The last pattern (exclusive)
+     */
+    private void scalePartials(int node, int child1, int child2, int start, int end) {
+        double[] out = partials[partialsIndex[node]][node];
+        double[] scales = logScales[partialsIndex[node]][node];
+        double[] scales1 = logScales[partialsIndex[child1]][child1];
+        double[] scales2 = logScales[partialsIndex[child2]][child2];
+        int patternSize = categoryCount * stateCount;
+
+        int v = start * patternSize;
+        for (int p = start; p < end; p++) {
+            double scale = 0.0;
+            if (scales1 != null) {
+                scale += scales1[p];
+            }
+            if (scales2 != null) {
+                scale += scales2[p];
+            }
+
+            double max = 0.0;
+            for (int k = v; k < v + patternSize; k++) {
+                if (out[k] > max) {
+                    max = out[k];
+                }
+            }
+            if (max < scalingThreshold && max > 0.0) {
+                int exponent = Math.getExponent(max);
+                double factor = Math.scalb(1.0, -exponent);
+                for (int k = v; k < v + patternSize; k++) {
+                    out[k] *= factor;
+                }
+                scale += exponent * LOG_2;
+            }
+            scales[p] = scale;
+            v += patternSize;
+        }
+    }
+
+    /**
+     * Computes partials from two tips: a product of two table lookups.
+     */
+    private void updateTipTipPartials(int node, int tip1, int tip2, int start, int end) {
+        double[] out = partials[partialsIndex[node]][node];
+        byte[] states1 = tipStates[tip1];
+        byte[] states2 = tipStates[tip2];
+        double[] table1 = tipTables[matrixIndex[tip1]][tip1];
+        double[] table2 = tipTables[matrixIndex[tip2]][tip2];
+        int tableSize = NucleotideStates.MASK_COUNT * stateCount;
+
+        int v = start * categoryCount * stateCount;
+        for (int p = start; p < end; p++) {
+            int offset1 = states1[p] * stateCount;
+            int offset2 = states2[p] * stateCount;
+            for (int c = 0; c < categoryCount; c++) {
+                int t1 = c * tableSize + offset1;
+                int t2 = c * tableSize + offset2;
+                for (int i = 0; i < stateCount; i++) {
+                    out[v++] = table1[t1 + i] * table2[t2 + i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes partials from a tip and an internal node.
+     */
+    private void updateTipInternalPartials(int node, int tip, int child, int start, int end) {
+        double[] out = partials[partialsIndex[node]][node];
+        byte[] states1 = tipStates[tip];
+        double[] table1 = tipTables[matrixIndex[tip]][tip];
+        double[] partials2 = partials[partialsIndex[child]][child];
+        double[] matrices2 = matrices[matrixIndex[child]][child];
+        int tableSize = NucleotideStates.MASK_COUNT * stateCount;
+        int matrixSize = stateCount * stateCount;
+
+        int v = start * categoryCount * stateCount;
+        for (int p = start; p < end; p++) {
+            int offset1 = states1[p] * stateCount;
+            for (int c = 0; c < categoryCount; c++) {
+                int t1 = c * tableSize + offset1;
+                int m = c * matrixSize;
+                for (int i = 0; i < stateCount; i++) {
+                    double sum2 = 0.0;
+                    for (int j = 0; j < stateCount; j++) {
+                        sum2 += matrices2[m + j] * partials2[v + j];
+                    }
+                    out[v + i] = table1[t1 + i] * sum2;
+                    m += stateCount;
+                }
+                v += stateCount;
+            }
+        }
+    }
+
+    /**
+     * Computes partials from two internal nodes.
+     */
+    private void updateInternalPartials(int node, int child1, int child2, int start, int end) {
+        double[] out = partials[partialsIndex[node]][node];
+        double[] partials1 = partials[partialsIndex[child1]][child1];
+        double[] partials2 = partials[partialsIndex[child2]][child2];
+        double[] matrices1 = matrices[matrixIndex[child1]][child1];
+        double[] matrices2 = matrices[matrixIndex[child2]][child2];
+        int matrixSize = stateCount * stateCount;
+
+        int v = start * categoryCount * stateCount;
+        for (int p = start; p < end; p++) {
+            for (int c = 0; c < categoryCount; c++) {
+                int m = c * matrixSize;
+                for (int i = 0; i < stateCount; i++) {
+                    double sum1 = 0.0;
+                    double sum2 = 0.0;
+                    for (int j = 0; j < stateCount; j++) {
+                        sum1 += matrices1[m + j] * partials1[v + j];
+                        sum2 += matrices2[m + j] * partials2[v + j];
+                    }
+                    out[v + i] = sum1 * sum2;
+                    m += stateCount;
+                }
+                v += stateCount;
+            }
+        }
+    }
+
+    /**
+     * Integrates the root partials over categories and states for a range of patterns.
+     *
+     * @param frequencies The equilibrium state frequencies
+     * @param start The first pattern (inclusive)
+     * @param end The last pattern (exclusive)
+     * @return The log-likelihood of the patterns
+     */
+    private double integrateRoot(double[] frequencies, int start, int end) {
+        int root = tree.getRoot();
+        double[] rootPartials = partials[partialsIndex[root]][root];
+        double[] rootScales = logScales[partialsIndex[root]][root];
+        double categoryWeight = 1.0 / categoryCount;
+        double logL = 0.0;
+
+        int v = start * categoryCount * stateCount;
+        for (int p = start; p < end; p++) {
+            double sum = 0.0;
+            for (int c = 0; c < categoryCount; c++) {
+                for (int s = 0; s < stateCount; s++) {
+                    sum += frequencies[s] * rootPartials[v++];
+                }
+            }
+            logL += patternWeights[p] * (Math.log(sum * categoryWeight) + rootScales[p]);
+        }
+        return logL;
+    }
+
+    /**
+     * Gets the number of threads used for evaluation.
+     *
+     * @return The thread count
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads used for evaluation.
+     *
+     * @param threadCount The thread count (1 evaluates on the calling thread)
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Gets the value below which a pattern's partials are rescaled.
+     *
+     * @return The scaling threshold
+     */
+    public double getScalingThreshold() {
+        return scalingThreshold;
+    }
+
+    /**
+     * Sets the value below which a pattern's partials are rescaled.
+     * A threshold of 0 disables scaling.
+     *
+     * @param scalingThreshold The scaling threshold, in [0, 1]
+     */
+    public void setScalingThreshold(double scalingThreshold) {
+        if (!(scalingThreshold >= 0.0 && scalingThreshold <= 1.0)) {
+            throw new IllegalArgumentException("Scaling threshold must be in [0, 1]");
+        }
+        this.scalingThreshold = scalingThreshold;
+        markAllDirty();
+    }
+
+    /**
+     * Gets the number of patterns per block.
+     *
+     * @return The block size
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Sets the number of patterns per block.
+     * The result depends on the block size (through summation order) but not
+     * on the thread count.
+     *
+     * @param blockSize The block size
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Gets the thread count given to likelihoods created from now on.
+     *
+     * @return The default thread count
+     */
+    public static int getDefaultThreadCount() {
+        return defaultThreadCount;
+    }
+
+    /**
+     * Sets the thread count given to likelihoods created from now on.
+     *
+     * @param threadCount The default thread count
+     */
+    public static void setDefaultThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        defaultThreadCount = threadCount;
+    }
+
+    /**
+     * Gets the shared pool for a thread count, creating it on first use.
+     *
+     * @param threads The parallelism
+     * @return The pool
+     */
+    private static ForkJoinPool getPool(int threads) {
+        return POOLS.computeIfAbsent(threads, ForkJoinPool::new);
+    }
+
+    /**
+     * Evaluates a range of pattern blocks, splitting it in half until one block is left.
+     */
+    private final class BlockTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] frequencies;
+        private final double[] blockLogL;
+        private final int from;
+        private final int to;
+
+        private BlockTask(double[] frequencies, double[] blockLogL, int from, int to) {
+            this.frequencies = frequencies;
+            this.blockLogL = blockLogL;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                blockLogL[from] = calculateBlock(frequencies, from);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BlockTask(frequencies, blockLogL, from, mid),
+                        new BlockTask(frequencies, blockLogL, mid, to));
+            }
+        }
+    }
+
+    /**
+     * Gets the transition matrix cache, e.g. to read hit/miss counters or change its budget.
+     *
+     * @return The matrix cache
+     */
+    public TransitionMatrixCache getMatrixCache() {
+        return matrixCache;
+    }
+
+    /**
+     * Gets the number of site patterns.
+     *
+     * @return The pattern count
+     */
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * Gets the tree.
+     *
+     * @return The tree
+     */
+    public Tree getTree() {
+        return tree;
+    }
+}
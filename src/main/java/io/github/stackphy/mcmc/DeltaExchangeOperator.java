@@ -0,0 +1,65 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.Variable;
+
+/**
+ * Moves an amount d, drawn uniformly from [0, δ], from one entry of a simplex
+ * to another, so the entries still sum to one. The move is symmetric;
+ * proposals that make an entry negative are rejected.
+ */
+public class DeltaExchangeOperator extends Operator {
+    private final double delta;
+    private Object previous;
+    private long previousVersion;
+
+    /**
+     * Creates a new delta exchange operator.
+     *
+     * @param variable The variable, holding a vector of at least two entries
+     * @param delta The largest amount moved
+     * @param weight The relative probability of choosing this operator
+     */
+    public DeltaExchangeOperator(Variable variable, double delta, double weight) {
+        super(variable, weight);
+        if (!(delta > 0.0)) {
+            throw new IllegalArgumentException("Delta must be positive");
+        }
+        this.delta = delta;
+    }
+
+    @Override
+    public double propose(RandomContext random, NodeChanges changes) {
+        Variable variable = getVariable();
+        previous = variable.getValue();
+        previousVersion = variable.getVersion();
+        double[] values = Values.toDoubles(previous);
+        if (values.length < 2) {
+            throw new IllegalStateException("Delta exchange needs at least two entries");
+        }
+        int from = random.nextInt(values.length);
+        int to = random.nextInt(values.length - 1);
+        if (to >= from) {
+            to++;
+        }
+        double d = random.nextDouble() * delta;
+        values[from] -= d;
+        values[to] += d;
+        variable.setValue(Values.box(values));
+        return values[from] < 0.0 ? Double.NEGATIVE_INFINITY : 0.0;
+    }
+
+    @Override
+    public void reject() {
+        getVariable().restoreValue(previous, previousVersion);
+    }
+
+    /**
+     * Gets the largest amount moved.
+     *
+     * @return The delta
+     */
+    public double getDelta() {
+        return delta;
+    }
+}
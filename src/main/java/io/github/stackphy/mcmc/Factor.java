@@ -0,0 +1,66 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.Variable;
+
+/**
+ * One term of the joint posterior: the log density of a stochastic variable's
+ * value given its parents. Factors of observed variables make up the
+ * likelihood and the others the prior.
+ * <p>
+ * A factor keeps its last value so that only the factors reading a changed
+ * variable are recomputed. {@link #store()} is called before a proposal and
+ * {@link #restore(Variable, NodeChanges)} after a rejection, once the
+ * operator has put the old value back.
+ */
+abstract class Factor {
+    private final Variable variable;
+    private double logDensity;
+    private double storedLogDensity;
+
+    Factor(Variable variable) {
+        this.variable = variable;
+    }
+
+    /**
+     * Gets the variable whose density this factor is.
+     */
+    Variable getVariable() {
+        return variable;
+    }
+
+    /**
+     * Returns whether the factor belongs to the likelihood rather than the prior.
+     */
+    boolean isLikelihood() {
+        return variable.hasObservedData();
+    }
+
+    /**
+     * Gets the log density from the last evaluation.
+     */
+    double getLogDensity() {
+        return logDensity;
+    }
+
+    /**
+     * Recomputes the log density after a variable has changed.
+     *
+     * @param changed The variable that changed, or null if anything may have changed
+     * @param changes The tree nodes changed, when the changed variable is a tree
+     * @return The new log density
+     */
+    final double evaluate(Variable changed, NodeChanges changes) {
+        logDensity = compute(changed, changes);
+        return logDensity;
+    }
+
+    void store() {
+        storedLogDensity = logDensity;
+    }
+
+    void restore(Variable changed, NodeChanges changes) {
+        logDensity = storedLogDensity;
+    }
+
+    abstract double compute(Variable changed, NodeChanges changes);
+}
@@ -0,0 +1,49 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.distribution.PhyloCTMC;
+import io.github.stackphy.likelihood.TreeLikelihood;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.tree.Tree;
+
+/**
+ * The log-likelihood of an observed alignment under a PhyloCTMC.
+ * The {@link TreeLikelihood} finds changed branches and model parameters by
+ * itself and recomputes only the partials above them, plus those of nodes a
+ * topology move reports as rearranged; a rejected proposal switches its
+ * buffers back without recomputing anything.
+ */
+final class LikelihoodFactor extends Factor {
+    private final TreeLikelihood likelihood;
+
+    LikelihoodFactor(Variable variable, Tree tree) {
+        super(variable);
+        this.likelihood = ((PhyloCTMC) variable.getDistribution()).createLikelihood(tree);
+    }
+
+    @Override
+    double compute(Variable changed, NodeChanges changes) {
+        // Rearranged nodes may keep all their branch lengths, so mark them explicitly
+        if (changes != null && changed != null && Values.unwrap(changed.getValue()) == likelihood.getTree()) {
+            for (int i = 0; i < changes.getTopologyCount(); i++) {
+                likelihood.markNodeDirty(changes.getTopology(i));
+            }
+        }
+        return likelihood.calculateLogLikelihood();
+    }
+
+    @Override
+    void store() {
+        super.store();
+        likelihood.store();
+    }
+
+    @Override
+    void restore(Variable changed, NodeChanges changes) {
+        likelihood.restore();
+        super.restore(changed, changes);
+    }
+
+    TreeLikelihood getLikelihood() {
+        return likelihood;
+    }
+}
@@ -0,0 +1,405 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.runtime.Environment;
+import io.github.stackphy.simulation.SampleTable;
+import io.github.stackphy.simulation.TraceWriter;
+import io.github.stackphy.tree.Tree;
+import io.github.stackphy.types.CollectionType;
+import io.github.stackphy.types.PhyloSpecType;
+import io.github.stackphy.types.PhylogeneticType;
+import io.github.stackphy.types.PrimitiveType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metropolis-Hastings sampler for the posterior of the model in an
+ * {@link Environment}.
+ * <p>
+ * Every free variable of the {@link Posterior} gets default operators
+ * chosen from the PhyloSpec type of its distribution: a scale move for
+ * positive reals, a reflected random walk for reals and probabilities, a
+ * delta exchange for simplices, and node height and topology moves for
+ * trees. Each iteration picks one operator by weight, rescores only the
+ * factors that read its variable and accepts or rejects; a rejection puts
+ * the old value back and switches the touched factors back to their stored
+ * state, so it costs no likelihood recomputation. Continuous variables can instead be
+ * moved together by gradient with {@link #useNoUTurnSampler(double)}.
+ * <p>
+ * Tree likelihoods evaluate their site patterns on
+ * {@link #setThreadCount(int) several threads}, which does not change the
+ * chain.
+ */
+public class MCMC {
+    private static final double DEFAULT_SCALE_FACTOR = 0.75;
+    private static final double DEFAULT_WINDOW_SIZE = 1.0;
+    private static final double DEFAULT_PROBABILITY_WINDOW = 0.1;
+    private static final double DEFAULT_DELTA = 0.05;
+    private static final double DEFAULT_SLIDE_FRACTION = 0.1; // Of the starting root height
+
+    private final Posterior posterior;
+    private final List<Operator> operators;
+    private final Map<Operator, List<Factor>> touchedFactors = new IdentityHashMap<>();
+    private final NodeChanges changes = new NodeChanges();
+    private long iteration;
+
+    /**
+     * Builds the posterior of an executed environment and assigns default operators.
+     *
+     * @param environment The environment
+     * @param random The random context used for initial values
+     */
+    public MCMC(Environment environment, RandomContext random) {
+        this(new Posterior(environment, random));
+    }
+
+    /**
+     * Creates a sampler for a posterior with default operators.
+     *
+     * @param posterior The posterior
+     */
+    public MCMC(Posterior posterior) {
+        this.posterior = posterior;
+        this.operators = new ArrayList<>();
+        for (Variable variable : posterior.getFreeVariables()) {
+            operators.addAll(createDefaultOperators(variable, Posterior.getType(variable)));
+        }
+    }
+
+    /**
+     * Creates the default operators for a variable of a given type. Trees get
+     * a node height move and, three times as often between them, the NNI,
+     * SPR and subtree slide topology moves, each weighted by the number of
+     * internal nodes.
+     *
+     * @param variable The variable
+     * @param type The PhyloSpec type of its values
+     * @return The operators, empty if the type has no default operator
+     */
+    public static List<Operator> createDefaultOperators(Variable variable, PhyloSpecType type) {
+        if (type == null) {
+            return Collections.emptyList();
+        }
+        PhyloSpecType element = type;
+        if (type instanceof CollectionType && type != CollectionType.SIMPLEX) {
+            CollectionType collection = (CollectionType) type;
+            if (!"Vector".equals(collection.getCollectionKind())) {
+                return Collections.emptyList();
+            }
+            element = collection.getElementTypes()[0];
+        }
+
+        if (type == CollectionType.SIMPLEX) {
+            return List.of(new DeltaExchangeOperator(variable, DEFAULT_DELTA, 1.0));
+        } else if (PhylogeneticType.TREE.isAssignableFrom(type)) {
+            Tree tree = (Tree) variable.getValue();
+            int weight = Math.max(1, tree.getNodeCount() - tree.getTipCount());
+            double slideSize = DEFAULT_SLIDE_FRACTION * tree.getHeight(tree.getRoot());
+            return List.of(
+                    new NodeHeightOperator(variable, DEFAULT_SCALE_FACTOR, weight),
+                    new NNIOperator(variable, weight),
+                    new SPROperator(variable, weight),
+                    new SubtreeSlideOperator(variable, slideSize > 0.0 ? slideSize : 1.0, weight));
+        } else if (element == PrimitiveType.POSITIVE_REAL || element == PrimitiveType.NON_NEG_REAL) {
+            return List.of(new ScaleOperator(variable, DEFAULT_SCALE_FACTOR, 1.0));
+        } else if (element == PrimitiveType.PROBABILITY) {
+            return List.of(new RandomWalkOperator(variable, DEFAULT_PROBABILITY_WINDOW, 0.0, 1.0, 1.0));
+        } else if (element == PrimitiveType.REAL) {
+            return List.of(new RandomWalkOperator(variable, DEFAULT_WINDOW_SIZE, 1.0));
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Runs the chain and records its state at regular intervals.
+     * The table has columns "posterior", "prior" and "likelihood", then one
+     * column per free numeric variable (name.1, name.2, ... for vectors) and
+     * a name.rootHeight column per tree. The chain continues from where the
+     * last run stopped.
+     *
+     * @param random The random context
+     * @param iterations The number of iterations
+     * @param sampleEvery The number of iterations between recorded states
+     * @return One row per recorded state
+     */
+    public SampleTable run(RandomContext random, long iterations, int sampleEvery) {
+        checkRun(iterations, sampleEvery);
+        long rows = iterations / sampleEvery;
+        if (rows > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many samples for one table");
+        }
+        SampleTable table = new SampleTable(getColumnNames(), (int) rows);
+
+        double totalWeight = getTotalWeight();
+        for (long i = 1; i <= iterations; i++) {
+            step(random, totalWeight);
+            if (i % sampleEvery == 0) {
+                record(table, (int) (i / sampleEvery - 1));
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Runs the chain and streams its state at regular intervals to a trace,
+     * with the iteration number as the state. The trace must have the columns
+     * of {@link #getColumnNames()}; it is not closed.
+     *
+     * @param random The random context
+     * @param iterations The number of iterations
+     * @param sampleEvery The number of iterations between recorded states
+     * @param trace The trace to write to
+     * @throws IOException if the trace cannot be written
+     */
+    public void run(RandomContext random, long iterations, int sampleEvery, TraceWriter trace) throws IOException {
+        checkRun(iterations, sampleEvery);
+        if (!trace.getColumnNames().equals(getColumnNames())) {
+            throw new IllegalArgumentException("Trace columns do not match the chain");
+        }
+        double[] row = new double[trace.getColumnNames().size()];
+        double totalWeight = getTotalWeight();
+        for (long i = 1; i <= iterations; i++) {
+            step(random, totalWeight);
+            if (i % sampleEvery == 0) {
+                record(row);
+                trace.write(iteration, row);
+            }
+        }
+    }
+
+    private void checkRun(long iterations, int sampleEvery) {
+        if (iterations < 0) {
+            throw new IllegalArgumentException("Iteration count cannot be negative");
+        }
+        if (sampleEvery < 1) {
+            throw new IllegalArgumentException("Sampling interval must be positive");
+        }
+        if (operators.isEmpty()) {
+            throw new IllegalStateException("No operators to run");
+        }
+    }
+
+    /**
+     * Gets the sum of the operator weights.
+     */
+    double getTotalWeight() {
+        double totalWeight = 0.0;
+        for (Operator operator : operators) {
+            totalWeight += operator.getWeight();
+        }
+        return totalWeight;
+    }
+
+    /**
+     * Makes one Metropolis-Hastings step on the posterior raised to the chain's heat.
+     */
+    void step(RandomContext random, double totalWeight) {
+        Operator operator = choose(random, totalWeight);
+        List<Factor> touched = touchedFactors.computeIfAbsent(operator,
+                op -> posterior.getFactors(op.getVariables()));
+        // Tree factors can use the changed nodes only when one variable moves
+        Variable changed = operator.getVariables().size() == 1 ? operator.getVariable() : null;
+
+        double before = posterior.getLogPosterior();
+        posterior.store(touched);
+        changes.clear();
+        double logRatio = operator.propose(random, changes);
+        boolean accept = false;
+        if (logRatio > Double.NEGATIVE_INFINITY) {
+            posterior.update(touched, changed, changes);
+            double after = posterior.getLogPosterior();
+            if (logRatio == Double.POSITIVE_INFINITY || before == Double.NEGATIVE_INFINITY) {
+                // Moves that keep the posterior invariant by themselves are kept,
+                // and an impossible starting state is left by any possible move
+                accept = after > Double.NEGATIVE_INFINITY;
+            } else {
+                double logAlpha = posterior.getHeat() * (after - before) + logRatio;
+                accept = logAlpha >= 0.0 || Math.log(random.nextOpenDouble()) < logAlpha;
+            }
+        }
+        if (!accept) {
+            operator.reject();
+            posterior.restore(touched, changed, changes);
+        }
+        operator.recordOutcome(accept);
+        iteration++;
+    }
+
+    private Operator choose(RandomContext random, double totalWeight) {
+        double u = random.nextDouble() * totalWeight;
+        for (Operator operator : operators) {
+            u -= operator.getWeight();
+            if (u < 0.0) {
+                return operator;
+            }
+        }
+        return operators.get(operators.size() - 1);
+    }
+
+    /**
+     * Gets the names of the columns {@link #run(RandomContext, long, int)} records.
+     *
+     * @return The column names
+     */
+    public List<String> getColumnNames() {
+        List<String> names = new ArrayList<>();
+        names.add("posterior");
+        names.add("prior");
+        names.add("likelihood");
+        for (Variable variable : posterior.getFreeVariables()) {
+            Object value = Values.unwrap(variable.getValue());
+            if (value instanceof Tree) {
+                names.add(variable.getName() + ".rootHeight");
+            } else if (value instanceof Object[]) {
+                for (int i = 1; i <= ((Object[]) value).length; i++) {
+                    names.add(variable.getName() + "." + i);
+                }
+            } else {
+                names.add(variable.getName());
+            }
+        }
+        return names;
+    }
+
+    void record(SampleTable table, int row) {
+        double[] values = new double[table.getColumnCount()];
+        record(values);
+        for (int column = 0; column < values.length; column++) {
+            table.set(column, row, values[column]);
+        }
+    }
+
+    /**
+     * Fills one value per column of the current state.
+     */
+    private void record(double[] values) {
+        values[0] = posterior.getLogPosterior();
+        values[1] = posterior.getLogPrior();
+        values[2] = posterior.getLogLikelihood();
+        int column = 3;
+        for (Variable variable : posterior.getFreeVariables()) {
+            Object value = Values.unwrap(variable.getValue());
+            if (value instanceof Tree) {
+                Tree tree = (Tree) value;
+                values[column++] = tree.getHeight(tree.getRoot());
+            } else {
+                for (double x : Values.toDoubles(value)) {
+                    values[column++] = x;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds an operator, for example one with tuned settings or for a
+     * variable without a default operator.
+     *
+     * @param operator The operator
+     */
+    public void addOperator(Operator operator) {
+        operators.add(operator);
+        touchedFactors.remove(operator);
+    }
+
+    /**
+     * Replaces the operators on every variable NUTS can move with one
+     * {@link NoUTurnOperator} on all of them. Other variables, such as trees
+     * and the parameters of a tree likelihood, keep their operators.
+     *
+     * @param weight The weight of the NUTS operator
+     * @return The operator, or null if no variable can be moved by gradient
+     */
+    public NoUTurnOperator useNoUTurnSampler(double weight) {
+        List<Variable> variables = NoUTurnOperator.findDifferentiable(posterior);
+        if (variables.isEmpty()) {
+            return null;
+        }
+        for (Variable variable : variables) {
+            removeOperators(variable);
+        }
+        NoUTurnOperator operator = new NoUTurnOperator(posterior, variables, weight);
+        addOperator(operator);
+        return operator;
+    }
+
+    /**
+     * Removes all operators on a variable, so that custom ones can replace the defaults.
+     *
+     * @param variable The variable
+     */
+    public void removeOperators(Variable variable) {
+        operators.removeIf(operator -> operator.getVariables().contains(variable));
+        touchedFactors.keySet().removeIf(operator -> operator.getVariables().contains(variable));
+    }
+
+    /**
+     * Gets the operators.
+     *
+     * @return The operators
+     */
+    public List<Operator> getOperators() {
+        return Collections.unmodifiableList(operators);
+    }
+
+    /**
+     * Gets the posterior being sampled.
+     *
+     * @return The posterior
+     */
+    public Posterior getPosterior() {
+        return posterior;
+    }
+
+    /**
+     * Gets the power the posterior is raised to.
+     *
+     * @return The heat, 1 for an ordinary chain
+     */
+    public double getHeat() {
+        return posterior.getHeat();
+    }
+
+    /**
+     * Sets the power the posterior is raised to.
+     *
+     * @param heat The heat, in (0, 1]
+     * @see Posterior#setHeat(double)
+     */
+    public void setHeat(double heat) {
+        posterior.setHeat(heat);
+    }
+
+    /**
+     * Gets the number of iterations run so far.
+     *
+     * @return The iteration count
+     */
+    public long getIteration() {
+        return iteration;
+    }
+
+    /**
+     * Gets the number of threads each tree likelihood uses.
+     *
+     * @return The thread count
+     */
+    public int getThreadCount() {
+        return posterior.getThreadCount();
+    }
+
+    /**
+     * Sets the number of threads each tree likelihood uses.
+     * The chain does not depend on the thread count.
+     *
+     * @param threadCount The thread count
+     */
+    public void setThreadCount(int threadCount) {
+        posterior.setThreadCount(threadCount);
+    }
+}
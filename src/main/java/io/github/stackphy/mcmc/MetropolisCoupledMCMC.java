@@ -0,0 +1,331 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.runtime.Environment;
+import io.github.stackphy.simulation.SampleTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Metropolis-coupled MCMC (MC³): several chains on the same model, all but
+ * one heated, that now and then propose to swap heats so the cold chain can
+ * jump between modes the heated chains have found.
+ * <p>
+ * Chain i starts with heat 1 / (1 + i·ΔT). Each chain has its own model
+ * graph, built from its own {@link Environment}, and so its own values and
+ * likelihood buffers, and runs on its own thread with its own random context.
+ * After every swap interval one pair of chains tries to swap. Every chain
+ * holds an identical copy of a separate swap stream and draws each round's
+ * pair and uniform from it in lock-step, so all chains agree on them without
+ * storing a schedule. Only the two chains of a pair meet: each posts its log
+ * posterior and heat to a lock-free mailbox for the other and reads the
+ * other's post, then both make the same decision from the same numbers and
+ * the same uniform. The other chains carry on
+ * without waiting, so there is no barrier across all chains and the wall
+ * time of a run stays close to that of a single chain while there are cores
+ * to spare. Because pairs and uniforms come from the copied stream, the
+ * output depends only on the random context, not on thread timing.
+ * <p>
+ * Heats rather than states are swapped, so a swap costs nothing beyond the
+ * exchange. Samples are taken from whichever chain is cold at the time.
+ */
+public class MetropolisCoupledMCMC {
+    private static final int DEFAULT_SWAP_INTERVAL = 10;
+    private static final int SPINS_BEFORE_YIELD = 1000;
+
+    private final List<MCMC> chains;
+    private final int chainCount;
+    private final AtomicReferenceArray<Offer> mailboxes; // [from·n + to]
+    private final long[] swapAttempts; // Counted by the lower-numbered chain of each pair
+    private final long[] swapAcceptances;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>(); // First error on any chain
+    private int swapInterval = DEFAULT_SWAP_INTERVAL;
+
+    /**
+     * Creates coupled chains, one per environment. The environments must come
+     * from running the same script, so that the chains sample the same model.
+     *
+     * @param environments One executed environment per chain
+     * @param temperatureIncrement The temperature step ΔT between chains
+     * @param random The random context used for initial values
+     */
+    public MetropolisCoupledMCMC(List<Environment> environments, double temperatureIncrement, RandomContext random) {
+        if (environments.isEmpty()) {
+            throw new IllegalArgumentException("At least one chain is needed");
+        }
+        if (!(temperatureIncrement > 0.0)) {
+            throw new IllegalArgumentException("Temperature increment must be positive");
+        }
+        this.chainCount = environments.size();
+        this.chains = new ArrayList<>();
+        for (int i = 0; i < chainCount; i++) {
+            MCMC chain = new MCMC(environments.get(i), random.split());
+            chain.setThreadCount(1);
+            chain.setHeat(1.0 / (1.0 + i * temperatureIncrement));
+            chains.add(chain);
+        }
+        List<String> columns = chains.get(0).getColumnNames();
+        for (MCMC chain : chains) {
+            if (!chain.getColumnNames().equals(columns)) {
+                throw new IllegalArgumentException("All chains must sample the same model");
+            }
+        }
+        this.mailboxes = new AtomicReferenceArray<>(chainCount * chainCount);
+        this.swapAttempts = new long[chainCount];
+        this.swapAcceptances = new long[chainCount];
+    }
+
+    /**
+     * Runs all chains and records the cold chain at regular intervals.
+     * The columns are those of {@link MCMC#run(RandomContext, long, int)}.
+     *
+     * @param random The random context
+     * @param iterations The number of iterations of each chain
+     * @param sampleEvery The number of iterations between recorded states
+     * @return One row per recorded state of the cold chain
+     */
+    public SampleTable run(RandomContext random, long iterations, int sampleEvery) {
+        if (iterations < 0) {
+            throw new IllegalArgumentException("Iteration count cannot be negative");
+        }
+        if (sampleEvery < 1) {
+            throw new IllegalArgumentException("Sampling interval must be positive");
+        }
+        for (MCMC chain : chains) {
+            if (chain.getOperators().isEmpty()) {
+                throw new IllegalStateException("No operators to run");
+            }
+        }
+        long rows = iterations / sampleEvery;
+        if (rows > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many iterations for one run");
+        }
+        SampleTable table = new SampleTable(chains.get(0).getColumnNames(), (int) rows);
+
+        // One seed for the swap stream every chain copies, then one stream per chain
+        long swapSeed = random.split().nextLong();
+        RandomContext[] streams = new RandomContext[chainCount];
+        for (int c = 0; c < chainCount; c++) {
+            streams[c] = random.split();
+        }
+
+        failure.set(null);
+        ExecutorService executor = Executors.newFixedThreadPool(chainCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < chainCount; c++) {
+                int chain = c;
+                Callable<Void> task = () -> {
+                    try {
+                        runChain(chain, streams[chain], new RandomContext(swapSeed), iterations, sampleEvery, table);
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                        throw t;
+                    }
+                    return null;
+                };
+                futures.add(executor.submit(task));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Coupled chains were interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = failure.get() != null ? failure.get() : e.getCause();
+            throw new IllegalStateException("Coupled chains failed", cause);
+        } finally {
+            executor.shutdownNow();
+            for (int i = 0; i < mailboxes.length(); i++) {
+                mailboxes.set(i, null);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Runs one chain on the calling thread, drawing every swap round from its
+     * copy of the swap stream and taking part in the rounds that pick it.
+     */
+    private void runChain(int c, RandomContext random, RandomContext swapRandom, long iterations,
+            int sampleEvery, SampleTable table) {
+        MCMC chain = chains.get(c);
+        double totalWeight = chain.getTotalWeight();
+        for (long i = 1; i <= iterations; i++) {
+            chain.step(random, totalWeight);
+            if (i % swapInterval == 0 && chainCount > 1) {
+                // Every chain draws every round, so the copies stay in step
+                int first = swapRandom.nextInt(chainCount);
+                int second = swapRandom.nextInt(chainCount - 1);
+                if (second >= first) {
+                    second++;
+                }
+                double logU = Math.log(swapRandom.nextOpenDouble());
+                int partner = first == c ? second : second == c ? first : -1;
+                if (partner >= 0) {
+                    exchange(c, partner, i / swapInterval - 1, logU);
+                }
+            }
+            if (i % sampleEvery == 0 && chain.getHeat() == 1.0) {
+                chain.record(table, (int) (i / sampleEvery - 1));
+            }
+        }
+    }
+
+    /**
+     * Meets the partner chain for one swap round and swaps heats if the swap is accepted.
+     */
+    private void exchange(int c, int partner, long round, double logU) {
+        MCMC chain = chains.get(c);
+        Offer mine = new Offer(round, chain.getPosterior().getLogPosterior(), chain.getHeat());
+        int outbox = c * chainCount + partner;
+        int inbox = partner * chainCount + c;
+
+        // The partner may not have read our previous post yet
+        int spins = 0;
+        while (!mailboxes.compareAndSet(outbox, null, mine)) {
+            spins = await(spins);
+        }
+        Offer theirs;
+        spins = 0;
+        while ((theirs = mailboxes.get(inbox)) == null) {
+            spins = await(spins);
+        }
+        mailboxes.set(inbox, null);
+        if (theirs.round != round) {
+            throw new IllegalStateException("Swap rounds out of step between chains " + c + " and " + partner);
+        }
+
+        // Both chains evaluate the same expression, written for the lower-numbered
+        // chain, so they agree on the outcome to the last bit
+        Offer lower = c < partner ? mine : theirs;
+        Offer upper = c < partner ? theirs : mine;
+        double logAlpha = (lower.heat - upper.heat) * (upper.logPosterior - lower.logPosterior);
+        boolean accept = logU < logAlpha;
+        if (c < partner) {
+            swapAttempts[c]++;
+            if (accept) {
+                swapAcceptances[c]++;
+            }
+        }
+        if (accept) {
+            chain.setHeat(theirs.heat);
+        }
+    }
+
+    /**
+     * Waits briefly for the partner chain, spinning at first and then yielding the core.
+     */
+    private int await(int spins) {
+        if (failure.get() != null) {
+            throw new IllegalStateException("Another chain failed", failure.get());
+        }
+        if (spins < SPINS_BEFORE_YIELD) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+        return spins + 1;
+    }
+
+    /**
+     * Gets the number of chains.
+     *
+     * @return The chain count
+     */
+    public int getChainCount() {
+        return chainCount;
+    }
+
+    /**
+     * Gets one chain.
+     *
+     * @param index The chain index
+     * @return The chain
+     */
+    public MCMC getChain(int index) {
+        return chains.get(index);
+    }
+
+    /**
+     * Gets the chains.
+     *
+     * @return The chains, in index order
+     */
+    public List<MCMC> getChains() {
+        return Collections.unmodifiableList(chains);
+    }
+
+    /**
+     * Gets the number of swap attempts over all runs.
+     *
+     * @return The attempt count
+     */
+    public long getSwapAttemptCount() {
+        long count = 0;
+        for (long attempts : swapAttempts) {
+            count += attempts;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of accepted swaps over all runs.
+     *
+     * @return The acceptance count
+     */
+    public long getSwapAcceptanceCount() {
+        long count = 0;
+        for (long acceptances : swapAcceptances) {
+            count += acceptances;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of iterations between swap attempts.
+     *
+     * @return The swap interval
+     */
+    public int getSwapInterval() {
+        return swapInterval;
+    }
+
+    /**
+     * Sets the number of iterations between swap attempts.
+     *
+     * @param swapInterval The swap interval
+     */
+    public void setSwapInterval(int swapInterval) {
+        if (swapInterval < 1) {
+            throw new IllegalArgumentException("Swap interval must be positive");
+        }
+        this.swapInterval = swapInterval;
+    }
+
+    /**
+     * One chain's post to its partner for a swap round. Fields are final, so
+     * a post read through the mailbox is seen fully initialized.
+     */
+    private static final class Offer {
+        final long round;
+        final double logPosterior;
+        final double heat;
+
+        Offer(long round, double logPosterior, double heat) {
+            this.round = round;
+            this.logPosterior = logPosterior;
+            this.heat = heat;
+        }
+    }
+}
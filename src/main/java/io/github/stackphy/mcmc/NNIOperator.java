@@ -0,0 +1,68 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.tree.Tree;
+
+/**
+ * Nearest-neighbour interchange on a time tree (the narrow exchange): picks
+ * an internal node other than the root and swaps one of its children with
+ * its sibling, keeping all heights. The swap is valid only if the sibling is
+ * younger than the node. The move is symmetric, and only the node and its
+ * parent get new children, so a tree likelihood recomputes just the path
+ * from the node to the root.
+ */
+public class NNIOperator extends Operator {
+    private int child = Tree.NONE;
+    private int sibling = Tree.NONE;
+    private long previousVersion;
+
+    /**
+     * Creates a new nearest-neighbour interchange operator.
+     *
+     * @param variable The variable, holding a tree
+     * @param weight The relative probability of choosing this operator
+     */
+    public NNIOperator(Variable variable, double weight) {
+        super(variable, weight);
+    }
+
+    @Override
+    public double propose(RandomContext random, NodeChanges changes) {
+        Tree tree = (Tree) getVariable().getValue();
+        previousVersion = getVariable().getVersion();
+        child = Tree.NONE;
+        int tipCount = tree.getTipCount();
+        int internalCount = tree.getNodeCount() - tipCount;
+        if (internalCount < 2) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        int node = tipCount + random.nextInt(internalCount - 1);
+        if (node >= tree.getRoot()) {
+            node++;
+        }
+        int moving = random.nextInt(2) == 0 ? tree.getLeftChild(node) : tree.getRightChild(node);
+        int uncle = tree.getSibling(node);
+        if (tree.getHeight(uncle) >= tree.getHeight(node)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+
+        tree.exchange(moving, uncle);
+        child = moving;
+        sibling = uncle;
+        changes.addTopology(node);
+        changes.addTopology(tree.getParent(node));
+        getVariable().setValue(tree);
+        return 0.0;
+    }
+
+    @Override
+    public void reject() {
+        if (child == Tree.NONE) {
+            return;
+        }
+        Tree tree = (Tree) getVariable().getValue();
+        tree.exchange(child, sibling);
+        getVariable().restoreValue(tree, previousVersion);
+    }
+}
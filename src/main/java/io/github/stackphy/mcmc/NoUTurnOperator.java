@@ -0,0 +1,389 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.Variable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The No-U-Turn Sampler (Hoffman and Gelman, 2014) on a block of
+ * continuous variables, as one operator.
+ * <p>
+ * Each proposal simulates Hamiltonian dynamics in unconstrained coordinates
+ * (log for positive reals, logit for probabilities, log-ratios for
+ * simplices) with analytic gradients, doubling the trajectory until it
+ * turns back on itself, and moves to a point drawn from it. The move leaves
+ * the posterior invariant by itself, so {@link #propose(RandomContext, NodeChanges)}
+ * returns positive infinity and the chain always keeps it.
+ * <p>
+ * For the first {@link #setAdaptationCount(int) adaptation proposals} the
+ * step size is tuned by dual averaging towards an acceptance statistic of
+ * 0.8, and over the middle of that window a diagonal mass matrix is
+ * estimated from the variance of the coordinates. Adaptation stops
+ * afterwards, so the samples that follow are valid.
+ */
+public class NoUTurnOperator extends Operator {
+    private static final int DEFAULT_ADAPTATION_COUNT = 500;
+    private static final int DEFAULT_MAX_DEPTH = 10;
+    private static final double MAX_ENERGY_ERROR = 1000.0;
+    private static final double TARGET_ACCEPTANCE = 0.8;
+    // Dual averaging constants recommended by Hoffman and Gelman
+    private static final double GAMMA = 0.05;
+    private static final double T0 = 10.0;
+    private static final double KAPPA = 0.75;
+
+    private final UnconstrainedBlock block;
+    private final int dimension;
+    private final double[] inverseMass;
+    private final Object[] previous;
+    private final long[] previousVersions;
+    private double[] proposal; // Point selected by the last proposal
+    private int adaptationCount = DEFAULT_ADAPTATION_COUNT;
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+    private double stepSize = Double.NaN;
+    private long proposals;
+
+    // Dual averaging state
+    private double mu;
+    private double logStepSizeBar;
+    private double hBar;
+    private long adaptationStep;
+
+    // Running variance of the coordinates for the mass matrix
+    private final double[] coordinateMean;
+    private final double[] coordinateSquares;
+    private long coordinateCount;
+
+    /**
+     * Creates a NUTS operator on some variables of a posterior.
+     *
+     * @param posterior The posterior the variables belong to
+     * @param variables Variables from {@link #findDifferentiable(Posterior)}
+     * @param weight The relative probability of choosing this operator
+     */
+    public NoUTurnOperator(Posterior posterior, List<Variable> variables, double weight) {
+        super(variables, weight);
+        this.block = new UnconstrainedBlock(posterior, variables);
+        this.dimension = block.getDimension();
+        this.inverseMass = new double[dimension];
+        Arrays.fill(inverseMass, 1.0);
+        this.previous = new Object[variables.size()];
+        this.previousVersions = new long[variables.size()];
+        this.coordinateMean = new double[dimension];
+        this.coordinateSquares = new double[dimension];
+    }
+
+    /**
+     * Finds the free variables of a posterior that NUTS can move: continuous
+     * variables whose prior has a gradient and that are read only directly
+     * as parameters of distributions with gradients. Variables read by a
+     * tree prior, a tree likelihood or a deterministic expression are left
+     * to their Metropolis-Hastings operators.
+     *
+     * @param posterior The posterior
+     * @return The variables, parents before children
+     */
+    public static List<Variable> findDifferentiable(Posterior posterior) {
+        return UnconstrainedBlock.findDifferentiable(posterior);
+    }
+
+    @Override
+    public double propose(RandomContext random, NodeChanges changes) {
+        List<Variable> variables = getVariables();
+        for (int v = 0; v < previous.length; v++) {
+            previous[v] = variables.get(v).getValue();
+            previousVersions[v] = variables.get(v).getVersion();
+        }
+        double[] z0 = new double[dimension];
+        double[] gradient0 = new double[dimension];
+        block.read(z0);
+        double target0 = block.evaluate(z0, gradient0);
+        if (Double.isNaN(stepSize)) {
+            stepSize = findStepSize(z0, gradient0, target0, random);
+            restartAdaptation();
+        }
+
+        double[] p0 = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            p0[i] = random.nextGaussian() / Math.sqrt(inverseMass[i]);
+        }
+        double joint0 = target0 - kinetic(p0);
+        double logSlice = joint0 - random.nextExponential();
+
+        Subtree tree = new Subtree();
+        tree.zMinus = tree.zPlus = tree.zProposal = z0;
+        tree.pMinus = tree.pPlus = p0;
+        tree.gradientMinus = tree.gradientPlus = gradient0;
+        long n = 1;
+        boolean keepGoing = true;
+        double acceptance = 0.0;
+        for (int depth = 0; keepGoing && depth < maxDepth; depth++) {
+            int direction = random.nextDouble() < 0.5 ? -1 : 1;
+            Subtree next = direction < 0
+                    ? buildTree(tree.zMinus, tree.pMinus, tree.gradientMinus, logSlice, direction, depth, joint0, random)
+                    : buildTree(tree.zPlus, tree.pPlus, tree.gradientPlus, logSlice, direction, depth, joint0, random);
+            if (direction < 0) {
+                tree.zMinus = next.zMinus;
+                tree.pMinus = next.pMinus;
+                tree.gradientMinus = next.gradientMinus;
+            } else {
+                tree.zPlus = next.zPlus;
+                tree.pPlus = next.pPlus;
+                tree.gradientPlus = next.gradientPlus;
+            }
+            if (next.keepGoing && random.nextDouble() < (double) next.n / n) {
+                tree.zProposal = next.zProposal;
+            }
+            n += next.n;
+            keepGoing = next.keepGoing && noUTurn(tree);
+            acceptance = next.acceptanceSum / next.acceptanceCount;
+        }
+
+        // Adapt first: retuning the step size runs leapfrog probes that move the variables
+        adapt(acceptance, tree.zProposal, z0, gradient0, target0, random);
+        proposal = tree.zProposal;
+        block.assign(proposal);
+        proposals++;
+        return Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public void reject() {
+        List<Variable> variables = getVariables();
+        for (int v = 0; v < previous.length; v++) {
+            variables.get(v).restoreValue(previous[v], previousVersions[v]);
+        }
+    }
+
+    /**
+     * Builds a subtree of 2^depth leapfrog steps from one end of the trajectory.
+     */
+    private Subtree buildTree(double[] z, double[] p, double[] gradient, double logSlice,
+            int direction, int depth, double joint0, RandomContext random) {
+        if (depth == 0) {
+            double[] z1 = z.clone();
+            double[] p1 = p.clone();
+            double[] gradient1 = gradient.clone();
+            double joint = leapfrog(z1, p1, gradient1, direction * stepSize) - kinetic(p1);
+            Subtree leaf = new Subtree();
+            leaf.zMinus = leaf.zPlus = leaf.zProposal = z1;
+            leaf.pMinus = leaf.pPlus = p1;
+            leaf.gradientMinus = leaf.gradientPlus = gradient1;
+            leaf.n = logSlice <= joint ? 1 : 0;
+            // NaN compares false, so a failed step ends the trajectory
+            leaf.keepGoing = joint > logSlice - MAX_ENERGY_ERROR;
+            leaf.acceptanceSum = joint - joint0 >= 0.0 ? 1.0 : Double.isNaN(joint) ? 0.0 : Math.exp(joint - joint0);
+            leaf.acceptanceCount = 1;
+            return leaf;
+        }
+        Subtree tree = buildTree(z, p, gradient, logSlice, direction, depth - 1, joint0, random);
+        if (!tree.keepGoing) {
+            return tree;
+        }
+        Subtree next = direction < 0
+                ? buildTree(tree.zMinus, tree.pMinus, tree.gradientMinus, logSlice, direction, depth - 1, joint0, random)
+                : buildTree(tree.zPlus, tree.pPlus, tree.gradientPlus, logSlice, direction, depth - 1, joint0, random);
+        if (direction < 0) {
+            tree.zMinus = next.zMinus;
+            tree.pMinus = next.pMinus;
+            tree.gradientMinus = next.gradientMinus;
+        } else {
+            tree.zPlus = next.zPlus;
+            tree.pPlus = next.pPlus;
+            tree.gradientPlus = next.gradientPlus;
+        }
+        if (tree.n + next.n > 0 && random.nextDouble() < (double) next.n / (tree.n + next.n)) {
+            tree.zProposal = next.zProposal;
+        }
+        tree.n += next.n;
+        tree.acceptanceSum += next.acceptanceSum;
+        tree.acceptanceCount += next.acceptanceCount;
+        tree.keepGoing = next.keepGoing && noUTurn(tree);
+        return tree;
+    }
+
+    /**
+     * Makes one leapfrog step in place.
+     *
+     * @return The target at the new position
+     */
+    private double leapfrog(double[] z, double[] p, double[] gradient, double epsilon) {
+        for (int i = 0; i < dimension; i++) {
+            p[i] += 0.5 * epsilon * gradient[i];
+            z[i] += epsilon * inverseMass[i] * p[i];
+        }
+        double target = block.evaluate(z, gradient);
+        for (int i = 0; i < dimension; i++) {
+            p[i] += 0.5 * epsilon * gradient[i];
+        }
+        return target;
+    }
+
+    private double kinetic(double[] p) {
+        double sum = 0.0;
+        for (int i = 0; i < dimension; i++) {
+            sum += p[i] * p[i] * inverseMass[i];
+        }
+        return 0.5 * sum;
+    }
+
+    /**
+     * Returns whether neither end of a trajectory is moving back towards the other.
+     */
+    private boolean noUTurn(Subtree tree) {
+        double minus = 0.0;
+        double plus = 0.0;
+        for (int i = 0; i < dimension; i++) {
+            double span = tree.zPlus[i] - tree.zMinus[i];
+            minus += span * inverseMass[i] * tree.pMinus[i];
+            plus += span * inverseMass[i] * tree.pPlus[i];
+        }
+        return minus >= 0.0 && plus >= 0.0;
+    }
+
+    /**
+     * Finds a step size at which one leapfrog step has acceptance probability
+     * near 1/2, by repeated halving or doubling.
+     */
+    private double findStepSize(double[] z0, double[] gradient0, double target0, RandomContext random) {
+        double epsilon = 1.0;
+        double[] p0 = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            p0[i] = random.nextGaussian() / Math.sqrt(inverseMass[i]);
+        }
+        double joint0 = target0 - kinetic(p0);
+        double logRatio = stepLogRatio(z0, p0, gradient0, joint0, epsilon);
+        double direction = logRatio > Math.log(0.5) ? 1.0 : -1.0;
+        for (int i = 0; i < 100 && direction * logRatio > -direction * Math.log(2.0); i++) {
+            epsilon *= Math.pow(2.0, direction);
+            logRatio = stepLogRatio(z0, p0, gradient0, joint0, epsilon);
+        }
+        return epsilon;
+    }
+
+    private double stepLogRatio(double[] z0, double[] p0, double[] gradient0, double joint0, double epsilon) {
+        double[] z = z0.clone();
+        double[] p = p0.clone();
+        double[] gradient = gradient0.clone();
+        double logRatio = leapfrog(z, p, gradient, epsilon) - kinetic(p) - joint0;
+        return Double.isNaN(logRatio) ? Double.NEGATIVE_INFINITY : logRatio;
+    }
+
+    /**
+     * Updates the step size and mass matrix during warm-up.
+     */
+    private void adapt(double acceptance, double[] z, double[] z0, double[] gradient0, double target0,
+            RandomContext random) {
+        if (proposals >= adaptationCount) {
+            return;
+        }
+        adaptationStep++;
+        double m = adaptationStep;
+        hBar += (TARGET_ACCEPTANCE - acceptance - hBar) / (m + T0);
+        double logStepSize = mu - Math.sqrt(m) / GAMMA * hBar;
+        double weight = Math.pow(m, -KAPPA);
+        logStepSizeBar = weight * logStepSize + (1.0 - weight) * logStepSizeBar;
+        stepSize = Math.exp(logStepSize);
+
+        // Estimate the mass matrix over the middle of the window, then tune the step size again
+        long start = adaptationCount / 4;
+        long end = adaptationCount / 2;
+        if (proposals >= start && proposals < end) {
+            coordinateCount++;
+            for (int i = 0; i < dimension; i++) {
+                double delta = z[i] - coordinateMean[i];
+                coordinateMean[i] += delta / coordinateCount;
+                coordinateSquares[i] += delta * (z[i] - coordinateMean[i]);
+            }
+        } else if (proposals == end && coordinateCount > 2 && end < adaptationCount - 1) {
+            double n = coordinateCount;
+            for (int i = 0; i < dimension; i++) {
+                // Shrink towards a small multiple of the identity, as Stan does
+                double variance = coordinateSquares[i] / (n - 1.0);
+                inverseMass[i] = n / (n + 5.0) * variance + 1e-3 * 5.0 / (n + 5.0);
+            }
+            stepSize = findStepSize(z0, gradient0, target0, random);
+            restartAdaptation();
+        }
+        if (proposals == adaptationCount - 1 && adaptationStep > 0) {
+            // Sample with the averaged step size, which is less noisy than the last iterate
+            stepSize = Math.exp(logStepSizeBar);
+        }
+    }
+
+    private void restartAdaptation() {
+        mu = Math.log(10.0 * stepSize);
+        logStepSizeBar = 0.0;
+        hBar = 0.0;
+        adaptationStep = 0;
+    }
+
+    /**
+     * Gets the unconstrained point selected by the last proposal.
+     */
+    double[] getProposal() {
+        return proposal;
+    }
+
+    /**
+     * Gets the current leapfrog step size.
+     *
+     * @return The step size, or NaN before the first proposal
+     */
+    public double getStepSize() {
+        return stepSize;
+    }
+
+    /**
+     * Gets the number of proposals over which the step size and mass matrix are tuned.
+     *
+     * @return The adaptation count
+     */
+    public int getAdaptationCount() {
+        return adaptationCount;
+    }
+
+    /**
+     * Sets the number of proposals over which the step size and mass matrix
+     * are tuned. Must be set before the first proposal.
+     *
+     * @param adaptationCount The adaptation count, 0 for no tuning
+     */
+    public void setAdaptationCount(int adaptationCount) {
+        if (adaptationCount < 0) {
+            throw new IllegalArgumentException("Adaptation count cannot be negative");
+        }
+        this.adaptationCount = adaptationCount;
+    }
+
+    /**
+     * Sets the largest number of trajectory doublings, which caps a proposal at
+     * 2^maxDepth − 1 leapfrog steps.
+     *
+     * @param maxDepth The maximum tree depth
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Maximum tree depth must be positive");
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * The ends, a drawn point and the size of part of a trajectory.
+     */
+    private static final class Subtree {
+        double[] zMinus;
+        double[] pMinus;
+        double[] gradientMinus;
+        double[] zPlus;
+        double[] pPlus;
+        double[] gradientPlus;
+        double[] zProposal;
+        long n;
+        boolean keepGoing;
+        double acceptanceSum;
+        long acceptanceCount;
+    }
+}
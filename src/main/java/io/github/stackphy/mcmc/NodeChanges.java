@@ -0,0 +1,97 @@
+package io.github.stackphy.mcmc;
+
+import java.util.Arrays;
+
+/**
+ * The tree nodes changed by one proposal.
+ * Tree operators report each node whose height they move, so that tree
+ * priors can update their cached terms for just those nodes, and each
+ * internal node whose children they change, so that tree likelihoods
+ * recompute its partials even where no branch length changed. An empty
+ * record after a tree proposal means the whole tree must be rescored.
+ */
+public final class NodeChanges {
+    private int[] heights = new int[8];
+    private int heightCount;
+    private int[] topology = new int[8];
+    private int topologyCount;
+
+    /**
+     * Forgets all recorded changes.
+     */
+    public void clear() {
+        heightCount = 0;
+        topologyCount = 0;
+    }
+
+    /**
+     * Records that the height of a node has changed.
+     *
+     * @param node The node index
+     */
+    public void addHeight(int node) {
+        if (heightCount == heights.length) {
+            heights = Arrays.copyOf(heights, 2 * heightCount);
+        }
+        heights[heightCount++] = node;
+    }
+
+    /**
+     * Gets the number of recorded height changes.
+     *
+     * @return The count
+     */
+    public int getHeightCount() {
+        return heightCount;
+    }
+
+    /**
+     * Gets a node whose height changed.
+     *
+     * @param index The index of the change, from 0 to {@link #getHeightCount()} - 1
+     * @return The node index
+     */
+    public int getHeight(int index) {
+        return heights[index];
+    }
+
+    /**
+     * Records that the children of an internal node have changed.
+     *
+     * @param node The node index
+     */
+    public void addTopology(int node) {
+        if (topologyCount == topology.length) {
+            topology = Arrays.copyOf(topology, 2 * topologyCount);
+        }
+        topology[topologyCount++] = node;
+    }
+
+    /**
+     * Gets the number of recorded topology changes.
+     *
+     * @return The count
+     */
+    public int getTopologyCount() {
+        return topologyCount;
+    }
+
+    /**
+     * Gets a node whose children changed.
+     *
+     * @param index The index of the change, from 0 to {@link #getTopologyCount()} - 1
+     * @return The node index
+     */
+    public int getTopology(int index) {
+        return topology[index];
+    }
+
+    /**
+     * Returns whether no change has been recorded.
+     *
+     * @return true if nothing was recorded
+     */
+    public boolean isEmpty() {
+        return heightCount == 0 && topologyCount == 0;
+    }
+}
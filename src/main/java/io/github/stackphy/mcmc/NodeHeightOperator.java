@@ -0,0 +1,65 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.tree.Tree;
+
+/**
+ * Moves the height of one internal node of a tree, keeping the topology.
+ * A non-root node gets a height drawn uniformly between its older child and
+ * its parent, which is symmetric. The root has no parent, so its distance
+ * above the older child is scaled by a factor drawn from [f, 1/f] instead.
+ * The tree is changed in place and re-assigned to the variable, so its
+ * version changes with every move.
+ */
+public class NodeHeightOperator extends Operator {
+    private final double rootScaleFactor;
+    private int node = Tree.NONE;
+    private double previousHeight;
+    private long previousVersion;
+
+    /**
+     * Creates a new node height operator.
+     *
+     * @param variable The variable, holding a tree
+     * @param rootScaleFactor The scale factor for root moves, between 0 and 1
+     * @param weight The relative probability of choosing this operator
+     */
+    public NodeHeightOperator(Variable variable, double rootScaleFactor, double weight) {
+        super(variable, weight);
+        if (!(rootScaleFactor > 0.0 && rootScaleFactor < 1.0)) {
+            throw new IllegalArgumentException("Scale factor must be between 0 and 1");
+        }
+        this.rootScaleFactor = rootScaleFactor;
+    }
+
+    @Override
+    public double propose(RandomContext random, NodeChanges changes) {
+        Tree tree = (Tree) getVariable().getValue();
+        previousVersion = getVariable().getVersion();
+        int tipCount = tree.getTipCount();
+        node = tipCount + random.nextInt(tree.getNodeCount() - tipCount);
+        previousHeight = tree.getHeight(node);
+        double lower = Math.max(tree.getHeight(tree.getLeftChild(node)), tree.getHeight(tree.getRightChild(node)));
+
+        double logRatio = 0.0;
+        if (node == tree.getRoot()) {
+            double scale = drawScale(random, rootScaleFactor);
+            tree.setHeight(node, lower + (previousHeight - lower) * scale);
+            logRatio = -Math.log(scale);
+        } else {
+            double upper = tree.getHeight(tree.getParent(node));
+            tree.setHeight(node, lower + random.nextDouble() * (upper - lower));
+        }
+        changes.addHeight(node);
+        getVariable().setValue(tree);
+        return logRatio;
+    }
+
+    @Override
+    public void reject() {
+        Tree tree = (Tree) getVariable().getValue();
+        tree.setHeight(node, previousHeight);
+        getVariable().restoreValue(tree, previousVersion);
+    }
+}
@@ -0,0 +1,167 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.tree.Tree;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Metropolis-Hastings proposal on one stochastic variable, or on a block of them.
+ * <p>
+ * {@link #propose(RandomContext, NodeChanges)} assigns a new value to the
+ * variable (through {@link Variable#setValue(Object)}, so version-keyed
+ * caches see the change) and returns the log Hastings ratio. If the move is
+ * rejected, {@link #reject()} puts the previous value back with its previous
+ * version stamp (through {@link Variable#restoreValue(Object, long)}), so
+ * those caches stay valid. Operators keep
+ * their own acceptance counts, so each chain needs its own operators.
+ */
+public abstract class Operator {
+    private final List<Variable> variables;
+    private final double weight;
+    private long proposalCount;
+    private long acceptanceCount;
+
+    /**
+     * Creates a new operator.
+     *
+     * @param variable The variable the operator moves
+     * @param weight The relative probability of choosing this operator
+     */
+    protected Operator(Variable variable, double weight) {
+        this(Collections.singletonList(variable), weight);
+    }
+
+    /**
+     * Creates a new operator that moves several variables jointly.
+     *
+     * @param variables The variables the operator moves
+     * @param weight The relative probability of choosing this operator
+     */
+    protected Operator(List<Variable> variables, double weight) {
+        if (variables.isEmpty()) {
+            throw new IllegalArgumentException("An operator must move at least one variable");
+        }
+        for (Variable variable : variables) {
+            if (!variable.isStochastic()) {
+                throw new IllegalArgumentException("Operators can only move stochastic variables");
+            }
+        }
+        if (!(weight > 0.0)) {
+            throw new IllegalArgumentException("Operator weight must be positive");
+        }
+        this.variables = List.copyOf(variables);
+        this.weight = weight;
+    }
+
+    /**
+     * Gets the variable this operator moves, or the first of them.
+     *
+     * @return The variable
+     */
+    public Variable getVariable() {
+        return variables.get(0);
+    }
+
+    /**
+     * Gets all the variables this operator moves.
+     *
+     * @return The variables
+     */
+    public List<Variable> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Gets the relative probability of choosing this operator.
+     *
+     * @return The weight
+     */
+    public double getWeight() {
+        return weight;
+    }
+
+    /**
+     * Proposes a new value for the variable.
+     *
+     * @param random The random context
+     * @param changes Receives the tree nodes the proposal changes, if it moves a tree
+     * @return The log Hastings ratio, negative infinity if the proposal is invalid, or
+     *         positive infinity for a move that leaves the posterior invariant by
+     *         itself (such as a NUTS trajectory) and is always accepted
+     */
+    public abstract double propose(RandomContext random, NodeChanges changes);
+
+    /**
+     * Puts back the value and version stamp the variable had before the last proposal.
+     */
+    public abstract void reject();
+
+    /**
+     * Gets the number of proposals made.
+     *
+     * @return The proposal count
+     */
+    public long getProposalCount() {
+        return proposalCount;
+    }
+
+    /**
+     * Gets the number of proposals accepted.
+     *
+     * @return The acceptance count
+     */
+    public long getAcceptanceCount() {
+        return acceptanceCount;
+    }
+
+    /**
+     * Gets the fraction of proposals accepted.
+     *
+     * @return The acceptance rate, or NaN if nothing has been proposed
+     */
+    public double getAcceptanceRate() {
+        return proposalCount == 0 ? Double.NaN : (double) acceptanceCount / proposalCount;
+    }
+
+    void recordOutcome(boolean accepted) {
+        proposalCount++;
+        if (accepted) {
+            acceptanceCount++;
+        }
+    }
+
+    /**
+     * Draws a multiplier uniformly from [factor, 1 / factor].
+     *
+     * @param random The random context
+     * @param factor The scale factor, between 0 and 1
+     * @return The multiplier
+     */
+    static double drawScale(RandomContext random, double factor) {
+        return factor + random.nextDouble() * (1.0 / factor - factor);
+    }
+
+    /**
+     * Draws a node other than the root uniformly.
+     *
+     * @param tree The tree
+     * @param random The random context
+     * @return The node index
+     */
+    static int drawNonRoot(Tree tree, RandomContext random) {
+        int node = random.nextInt(tree.getNodeCount() - 1);
+        return node >= tree.getRoot() ? node + 1 : node;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder names = new StringBuilder();
+        for (Variable variable : variables) {
+            names.append(names.length() == 0 ? "" : ", ").append(variable.getName());
+        }
+        return getClass().getSimpleName() + "(" + names + ")";
+    }
+}
@@ -0,0 +1,390 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.distribution.PhyloCTMC;
+import io.github.stackphy.functions.DistributionRegistry;
+import io.github.stackphy.functions.DistributionSignature;
+import io.github.stackphy.likelihood.TreeLikelihood;
+import io.github.stackphy.model.Distribution;
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.runtime.Environment;
+import io.github.stackphy.runtime.ModelGraph;
+import io.github.stackphy.tree.Tree;
+import io.github.stackphy.types.PhyloSpecType;
+import io.github.stackphy.types.PhylogeneticType;
+import io.github.stackphy.types.PrimitiveType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The joint posterior of the model in an {@link Environment}, as a product
+ * of one factor per stochastic variable: the density of its value given the
+ * variables its distribution reads.
+ * <p>
+ * Observed variables contribute the likelihood: a PhyloCTMC with an observed
+ * alignment is scored by a {@link TreeLikelihood}, other observed values by
+ * their distribution. Unobserved variables contribute the prior; a tree is
+ * scored incrementally by its prior's tree density. Each factor is indexed by
+ * every stochastic variable it reads, so a proposal on one variable
+ * recomputes only the factors that read it.
+ * <p>
+ * Unobserved variables without a value are initialized in dependency order:
+ * by drawing from their distribution, or, for trees, by simulating from the
+ * tree prior with the taxa of an alignment observed on that tree. Unobserved
+ * variables that cannot be scored and that nothing reads (such as simulated
+ * alignments) are left out, which integrates them out of the posterior.
+ * Those that cannot be scored but are read by others stay fixed at their
+ * initial value.
+ */
+public class Posterior {
+    private final ModelGraph graph;
+    private final List<Factor> factors;
+    private final Map<Variable, List<Factor>> factorsByVariable;
+    private final List<Variable> freeVariables;
+    private final List<String> fixedVariables;
+    private double logPrior;
+    private double logLikelihood;
+    private double storedLogPrior;
+    private double storedLogLikelihood;
+    private double heat = 1.0;
+    private int threadCount;
+
+    /**
+     * Builds the posterior of an executed environment and initializes its
+     * unassigned variables.
+     *
+     * @param environment The environment
+     * @param random The random context used for initial values
+     * @throws IllegalStateException if the model is cyclic or a variable cannot be initialized
+     */
+    public Posterior(Environment environment, RandomContext random) {
+        this.graph = new ModelGraph(environment);
+        this.factors = new ArrayList<>();
+        this.factorsByVariable = new IdentityHashMap<>();
+        this.freeVariables = new ArrayList<>();
+        this.fixedVariables = new ArrayList<>();
+
+        for (Variable variable : graph.getVariables()) {
+            factorsByVariable.put(variable, new ArrayList<>());
+        }
+        for (Variable variable : graph.getVariables()) {
+            if (!variable.hasObservedData()) {
+                initialize(variable, random);
+            }
+            Factor factor = createFactor(variable);
+            if (factor == null) {
+                if (!variable.hasObservedData() && !graph.getChildren(variable).isEmpty()) {
+                    fixedVariables.add(variable.getName());
+                }
+                continue;
+            }
+            factors.add(factor);
+            factorsByVariable.get(variable).add(factor);
+            for (Variable parent : graph.getParents(variable)) {
+                List<Factor> list = factorsByVariable.get(parent);
+                if (list != null) {
+                    list.add(factor);
+                }
+            }
+            if (!variable.hasObservedData()) {
+                freeVariables.add(variable);
+            }
+        }
+        this.threadCount = TreeLikelihood.getDefaultThreadCount();
+        recompute();
+    }
+
+    /**
+     * Assigns a starting value to an unobserved variable that has none.
+     */
+    private void initialize(Variable variable, RandomContext random) {
+        if (variable.hasAssignedValue()) {
+            return;
+        }
+        Distribution distribution = variable.getDistribution();
+        try {
+            variable.setValue(distribution.generateValue(random).getValue());
+            return;
+        } catch (UnsupportedOperationException e) {
+            // Not a value distribution; it may be a tree prior
+        }
+        String[] taxa = graph.getObservedTaxa(variable);
+        if (taxa != null) {
+            try {
+                variable.setValue(distribution.simulate(random, taxa));
+                return;
+            } catch (UnsupportedOperationException e) {
+                // Not a tree prior either
+            }
+        }
+        if (!graph.getChildren(variable).isEmpty()) {
+            throw new IllegalStateException("Cannot find a starting value for " + variable.getName());
+        }
+    }
+
+    /**
+     * Creates the factor for a variable, or returns null if it cannot be scored.
+     */
+    private Factor createFactor(Variable variable) {
+        Distribution distribution = variable.getDistribution();
+        Factor factor;
+        try {
+            if (distribution instanceof PhyloCTMC) {
+                PhyloCTMC ctmc = (PhyloCTMC) distribution;
+                if (ctmc.getObservedPatterns() == null) {
+                    return null;
+                }
+                factor = new LikelihoodFactor(variable, ctmc.getTreeValue());
+            } else {
+                Object value = Values.unwrap(variable.getValue());
+                if (value instanceof Tree) {
+                    factor = new TreePriorFactor(variable, (Tree) value);
+                } else if (Values.isNumeric(value)) {
+                    factor = new ValueFactor(variable, drawWidth(variable, value));
+                } else {
+                    return null;
+                }
+            }
+            // Score once, so that unsupported densities are found now
+            factor.evaluate(null, null);
+        } catch (UnsupportedOperationException | IllegalStateException e) {
+            return null;
+        }
+        return factor;
+    }
+
+    /**
+     * Gets the number of entries in one draw from a variable's distribution.
+     * An unobserved value is one draw; observed data may hold several.
+     */
+    private static int drawWidth(Variable variable, Object value) {
+        if (!variable.hasObservedData()) {
+            return value instanceof Object[] ? ((Object[]) value).length : 1;
+        }
+        try {
+            Object draw = variable.getDistribution().generateValue(new RandomContext(0L)).getValue();
+            return draw instanceof Object[] ? ((Object[]) draw).length : 1;
+        } catch (UnsupportedOperationException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Rescores every factor from scratch.
+     */
+    public void recompute() {
+        for (Factor factor : factors) {
+            if (factor instanceof LikelihoodFactor) {
+                ((LikelihoodFactor) factor).getLikelihood().setThreadCount(threadCount);
+            }
+            factor.evaluate(null, null);
+        }
+        sumFactors();
+    }
+
+    private void sumFactors() {
+        double prior = 0.0;
+        double likelihood = 0.0;
+        for (Factor factor : factors) {
+            if (factor.isLikelihood()) {
+                likelihood += factor.getLogDensity();
+            } else {
+                prior += factor.getLogDensity();
+            }
+        }
+        logPrior = prior;
+        logLikelihood = likelihood;
+    }
+
+    /**
+     * Gets the factors that read a variable.
+     */
+    List<Factor> getFactors(Variable variable) {
+        List<Factor> list = factorsByVariable.get(variable);
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    /**
+     * Gets the factors that read any of several variables, each once.
+     */
+    List<Factor> getFactors(List<Variable> variables) {
+        if (variables.size() == 1) {
+            return getFactors(variables.get(0));
+        }
+        List<Factor> union = new ArrayList<>();
+        Set<Factor> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Variable variable : variables) {
+            for (Factor factor : getFactors(variable)) {
+                if (seen.add(factor)) {
+                    union.add(factor);
+                }
+            }
+        }
+        return union;
+    }
+
+    /**
+     * Records the current values of some factors and of the totals before a proposal.
+     */
+    void store(List<Factor> touched) {
+        storedLogPrior = logPrior;
+        storedLogLikelihood = logLikelihood;
+        for (Factor factor : touched) {
+            factor.store();
+        }
+    }
+
+    /**
+     * Rescores some factors after a variable has changed and updates the totals.
+     * The totals are re-added from every factor's cached value, which is cheap
+     * next to any rescoring and keeps rounding error from building up.
+     */
+    void update(List<Factor> touched, Variable changed, NodeChanges changes) {
+        for (Factor factor : touched) {
+            factor.evaluate(changed, changes);
+        }
+        sumFactors();
+    }
+
+    /**
+     * Returns some factors and the totals to their stored values after a rejection.
+     */
+    void restore(List<Factor> touched, Variable changed, NodeChanges changes) {
+        for (Factor factor : touched) {
+            factor.restore(changed, changes);
+        }
+        logPrior = storedLogPrior;
+        logLikelihood = storedLogLikelihood;
+    }
+
+    /**
+     * Gets the log prior density of the current state.
+     *
+     * @return The log prior
+     */
+    public double getLogPrior() {
+        return logPrior;
+    }
+
+    /**
+     * Gets the log-likelihood of the observed data in the current state.
+     *
+     * @return The log-likelihood
+     */
+    public double getLogLikelihood() {
+        return logLikelihood;
+    }
+
+    /**
+     * Gets the unnormalized log posterior density of the current state.
+     *
+     * @return The log prior plus the log-likelihood
+     */
+    public double getLogPosterior() {
+        return logPrior + logLikelihood;
+    }
+
+    /**
+     * Gets the power the posterior is raised to by a heated chain.
+     *
+     * @return The heat, 1 unless the posterior is heated
+     */
+    public double getHeat() {
+        return heat;
+    }
+
+    /**
+     * Sets the power the posterior is raised to. A heated chain (heat below 1)
+     * sees a flatter posterior and moves between modes more easily; its
+     * samples are not samples from the posterior.
+     *
+     * @param heat The heat, in (0, 1]
+     */
+    public void setHeat(double heat) {
+        if (!(heat > 0.0 && heat <= 1.0)) {
+            throw new IllegalArgumentException("Heat must be in (0, 1]");
+        }
+        this.heat = heat;
+    }
+
+    /**
+     * Gets the unobserved variables that are scored and can be sampled.
+     *
+     * @return The variables, parents before children
+     */
+    public List<Variable> getFreeVariables() {
+        return Collections.unmodifiableList(freeVariables);
+    }
+
+    /**
+     * Gets the unobserved variables that cannot be scored and are held at
+     * their initial value.
+     *
+     * @return The variable names
+     */
+    public List<String> getFixedVariables() {
+        return Collections.unmodifiableList(fixedVariables);
+    }
+
+    /**
+     * Gets the model graph the posterior was built from.
+     *
+     * @return The graph
+     */
+    public ModelGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Gets the PhyloSpec type of a variable's values, from the signature of
+     * its distribution or, failing that, from its current value.
+     *
+     * @param variable A stochastic variable
+     * @return The type, or null if it cannot be determined
+     */
+    public static PhyloSpecType getType(Variable variable) {
+        String name = variable.getDistribution().getDistributionType();
+        for (Map.Entry<String, DistributionSignature> entry : DistributionRegistry.getAllDistributions().entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                return entry.getValue().getReturnType();
+            }
+        }
+        Object value = Values.unwrap(variable.getValue());
+        if (value instanceof Tree) {
+            return PhylogeneticType.TREE;
+        }
+        return PrimitiveType.fromValue(value);
+    }
+
+    /**
+     * Gets the number of threads each tree likelihood uses.
+     *
+     * @return The thread count
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads each tree likelihood uses.
+     * Results do not depend on the thread count.
+     *
+     * @param threadCount The thread count
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        this.threadCount = threadCount;
+        for (Factor factor : factors) {
+            if (factor instanceof LikelihoodFactor) {
+                ((LikelihoodFactor) factor).getLikelihood().setThreadCount(threadCount);
+            }
+        }
+    }
+}
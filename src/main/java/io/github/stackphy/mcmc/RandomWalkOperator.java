@@ -0,0 +1,100 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.Variable;
+
+/**
+ * Adds a uniform step from [-w/2, w/2] to a number, or to one entry of a
+ * vector. Steps that leave the bounds are reflected back inside them, which
+ * keeps the move symmetric.
+ */
+public class RandomWalkOperator extends Operator {
+    private final double windowSize;
+    private final double lower;
+    private final double upper;
+    private Object previous;
+    private long previousVersion;
+
+    /**
+     * Creates an unbounded random walk.
+     *
+     * @param variable The variable, holding a number or vector
+     * @param windowSize The window size w
+     * @param weight The relative probability of choosing this operator
+     */
+    public RandomWalkOperator(Variable variable, double windowSize, double weight) {
+        this(variable, windowSize, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, weight);
+    }
+
+    /**
+     * Creates a random walk reflected at the bounds.
+     *
+     * @param variable The variable, holding a number or vector
+     * @param windowSize The window size w
+     * @param lower The lower bound
+     * @param upper The upper bound
+     * @param weight The relative probability of choosing this operator
+     */
+    public RandomWalkOperator(Variable variable, double windowSize, double lower, double upper, double weight) {
+        super(variable, weight);
+        if (!(windowSize > 0.0)) {
+            throw new IllegalArgumentException("Window size must be positive");
+        }
+        if (!(lower < upper)) {
+            throw new IllegalArgumentException("Lower bound must be below the upper bound");
+        }
+        this.windowSize = windowSize;
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    @Override
+    public double propose(RandomContext random, NodeChanges changes) {
+        Variable variable = getVariable();
+        previous = variable.getValue();
+        previousVersion = variable.getVersion();
+        double step = (random.nextDouble() - 0.5) * windowSize;
+        if (previous instanceof Object[]) {
+            double[] values = Values.toDoubles(previous);
+            int i = random.nextInt(values.length);
+            values[i] = reflect(values[i] + step);
+            variable.setValue(Values.box(values));
+        } else {
+            variable.setValue(reflect(Values.toDoubles(previous)[0] + step));
+        }
+        return 0.0;
+    }
+
+    @Override
+    public void reject() {
+        getVariable().restoreValue(previous, previousVersion);
+    }
+
+    /**
+     * Reflects a value into [lower, upper].
+     */
+    private double reflect(double x) {
+        double width = upper - lower;
+        if (Double.isInfinite(width)) {
+            if (x < lower) {
+                return 2.0 * lower - x;
+            }
+            return x > upper ? 2.0 * upper - x : x;
+        }
+        // Fold onto a period of twice the width, then mirror the upper half
+        double folded = (x - lower) % (2.0 * width);
+        if (folded < 0.0) {
+            folded += 2.0 * width;
+        }
+        return lower + (folded > width ? 2.0 * width - folded : folded);
+    }
+
+    /**
+     * Gets the window size.
+     *
+     * @return The window size
+     */
+    public double getWindowSize() {
+        return windowSize;
+    }
+}
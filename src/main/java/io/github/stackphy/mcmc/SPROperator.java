@@ -0,0 +1,114 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.tree.Tree;
+
+/**
+ * Subtree prune and regraft on a time tree (the Wilson-Balding move): prunes
+ * a random subtree with its parent and regrafts it on any branch that ends
+ * above the subtree's root, chosen uniformly. The parent gets a height drawn
+ * uniformly along the part of the new branch above the subtree or, when the
+ * subtree is regrafted above the root, an exponential distance above the old
+ * root with mean equal to the old root's height over the subtree. The number
+ * of branches to choose from is the same before and after the move, so only
+ * the height densities enter the Hastings ratio. Only the moved node, its old
+ * parent and its new parent get new children.
+ */
+public class SPROperator extends Operator {
+    private int node = Tree.NONE;
+    private int previousSibling;
+    private double previousHeight;
+    private int[] candidates;
+    private long previousVersion;
+
+    /**
+     * Creates a new subtree prune and regraft operator.
+     *
+     * @param variable The variable, holding a tree
+     * @param weight The relative probability of choosing this operator
+     */
+    public SPROperator(Variable variable, double weight) {
+        super(variable, weight);
+    }
+
+    @Override
+    public double propose(RandomContext random, NodeChanges changes) {
+        Tree tree = (Tree) getVariable().getValue();
+        previousVersion = getVariable().getVersion();
+        node = Tree.NONE;
+        int nodeCount = tree.getNodeCount();
+        if (candidates == null || candidates.length != nodeCount) {
+            candidates = new int[nodeCount];
+        }
+        int moving = drawNonRoot(tree, random);
+        int parent = tree.getParent(moving);
+        int sibling = tree.getSibling(moving);
+        int grandparent = tree.getParent(parent);
+        double movingHeight = tree.getHeight(moving);
+        double oldHeight = tree.getHeight(parent);
+
+        // Branches that end above the subtree, other than the two it already joins
+        int count = 0;
+        for (int j = 0; j < nodeCount; j++) {
+            if (j != moving && j != parent && j != sibling
+                    && (j == tree.getRoot() || tree.getHeight(tree.getParent(j)) > movingHeight)) {
+                candidates[count++] = j;
+            }
+        }
+        if (count == 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        int target = candidates[random.nextInt(count)];
+        int targetParent = tree.getParent(target);
+        double targetHeight = tree.getHeight(target);
+
+        double newHeight;
+        double logForward;
+        if (targetParent == Tree.NONE) {
+            double mean = targetHeight - movingHeight;
+            newHeight = targetHeight + random.nextExponential() * mean;
+            logForward = -Math.log(mean) - (newHeight - targetHeight) / mean;
+        } else {
+            double lower = Math.max(movingHeight, targetHeight);
+            double range = tree.getHeight(targetParent) - lower;
+            newHeight = lower + random.nextDouble() * range;
+            logForward = -Math.log(range);
+        }
+        double logReverse;
+        if (grandparent == Tree.NONE) {
+            // The sibling becomes the root, so the way back is a regraft above it
+            double siblingHeight = tree.getHeight(sibling);
+            double mean = siblingHeight - movingHeight;
+            logReverse = -Math.log(mean) - (oldHeight - siblingHeight) / mean;
+        } else {
+            double lower = Math.max(movingHeight, tree.getHeight(sibling));
+            logReverse = -Math.log(tree.getHeight(grandparent) - lower);
+        }
+
+        tree.moveSubtree(moving, target, newHeight);
+        node = moving;
+        previousSibling = sibling;
+        previousHeight = oldHeight;
+        changes.addHeight(parent);
+        changes.addTopology(parent);
+        if (grandparent != Tree.NONE) {
+            changes.addTopology(grandparent);
+        }
+        if (targetParent != Tree.NONE) {
+            changes.addTopology(targetParent);
+        }
+        getVariable().setValue(tree);
+        return logReverse - logForward;
+    }
+
+    @Override
+    public void reject() {
+        if (node == Tree.NONE) {
+            return;
+        }
+        Tree tree = (Tree) getVariable().getValue();
+        tree.moveSubtree(node, previousSibling, previousHeight);
+        getVariable().restoreValue(tree, previousVersion);
+    }
+}
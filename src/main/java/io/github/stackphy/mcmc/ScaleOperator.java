@@ -0,0 +1,61 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.Variable;
+
+/**
+ * Multiplies a positive value, or one entry of a positive vector, by a factor
+ * drawn uniformly from [f, 1/f]. The Hastings ratio of the move is 1/s for a
+ * multiplier s.
+ */
+public class ScaleOperator extends Operator {
+    private final double scaleFactor;
+    private Object previous;
+    private long previousVersion;
+
+    /**
+     * Creates a new scale operator.
+     *
+     * @param variable The variable, holding a positive number or vector
+     * @param scaleFactor The scale factor f, between 0 and 1 (smaller means bolder moves)
+     * @param weight The relative probability of choosing this operator
+     */
+    public ScaleOperator(Variable variable, double scaleFactor, double weight) {
+        super(variable, weight);
+        if (!(scaleFactor > 0.0 && scaleFactor < 1.0)) {
+            throw new IllegalArgumentException("Scale factor must be between 0 and 1");
+        }
+        this.scaleFactor = scaleFactor;
+    }
+
+    @Override
+    public double propose(RandomContext random, NodeChanges changes) {
+        Variable variable = getVariable();
+        previous = variable.getValue();
+        previousVersion = variable.getVersion();
+        double scale = drawScale(random, scaleFactor);
+        if (previous instanceof Object[]) {
+            double[] values = Values.toDoubles(previous);
+            int i = random.nextInt(values.length);
+            values[i] *= scale;
+            variable.setValue(Values.box(values));
+        } else {
+            variable.setValue(Values.toDoubles(previous)[0] * scale);
+        }
+        return -Math.log(scale);
+    }
+
+    @Override
+    public void reject() {
+        getVariable().restoreValue(previous, previousVersion);
+    }
+
+    /**
+     * Gets the scale factor.
+     *
+     * @return The scale factor
+     */
+    public double getScaleFactor() {
+        return scaleFactor;
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.tree.Tree;
+
+/**
+ * Slides the parent of a random subtree up or down the tree by a uniform
+ * amount from [-size/2, size/2], carrying the subtree with it. Sliding past
+ * an ancestor moves the subtree onto the ancestor's branch; sliding down past
+ * a node of the sibling's subtree moves it onto one of the branches at the
+ * new height, chosen uniformly, which the Hastings ratio accounts for. Only
+ * the moved node, its old parent and its new parent get new children.
+ */
+public class SubtreeSlideOperator extends Operator {
+    private final double size;
+    private int node = Tree.NONE;
+    private int previousSibling;
+    private double previousHeight;
+    private int[] stack;
+    private int[] branches;
+    private long previousVersion;
+
+    /**
+     * Creates a new subtree slide operator.
+     *
+     * @param variable The variable, holding a tree
+     * @param size The width of the window the height moves in
+     * @param weight The relative probability of choosing this operator
+     */
+    public SubtreeSlideOperator(Variable variable, double size, double weight) {
+        super(variable, weight);
+        if (!(size > 0.0)) {
+            throw new IllegalArgumentException("Slide size must be positive");
+        }
+        this.size = size;
+    }
+
+    @Override
+    public double propose(RandomContext random, NodeChanges changes) {
+        Tree tree = (Tree) getVariable().getValue();
+        previousVersion = getVariable().getVersion();
+        node = Tree.NONE;
+        if (stack == null || stack.length != tree.getNodeCount()) {
+            stack = new int[tree.getNodeCount()];
+            branches = new int[tree.getNodeCount()];
+        }
+        int moving = drawNonRoot(tree, random);
+        int parent = tree.getParent(moving);
+        int sibling = tree.getSibling(moving);
+        int grandparent = tree.getParent(parent);
+        double oldHeight = tree.getHeight(parent);
+        double newHeight = oldHeight + (random.nextDouble() - 0.5) * size;
+
+        int target;
+        double logRatio;
+        if (newHeight > oldHeight) {
+            // Walk up to the first branch above the new height
+            int below = parent;
+            int above = grandparent;
+            while (above != Tree.NONE && tree.getHeight(above) < newHeight) {
+                below = above;
+                above = tree.getParent(above);
+            }
+            target = below == parent ? sibling : below;
+            tree.moveSubtree(moving, target, newHeight);
+            // The reverse slide picks among the branches below that cross the old height
+            logRatio = -Math.log(collectBranches(tree, target, oldHeight));
+        } else {
+            if (newHeight <= tree.getHeight(moving)) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            int count = collectBranches(tree, sibling, newHeight);
+            if (count == 0) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            target = branches[random.nextInt(count)];
+            tree.moveSubtree(moving, target, newHeight);
+            logRatio = Math.log(count);
+        }
+
+        node = moving;
+        previousSibling = sibling;
+        previousHeight = oldHeight;
+        changes.addHeight(parent);
+        if (target != sibling) {
+            changes.addTopology(parent);
+            if (grandparent != Tree.NONE) {
+                changes.addTopology(grandparent);
+            }
+            int newGrandparent = tree.getParent(parent);
+            if (newGrandparent != Tree.NONE) {
+                changes.addTopology(newGrandparent);
+            }
+        }
+        getVariable().setValue(tree);
+        return logRatio;
+    }
+
+    /**
+     * Collects the branches in the subtree of a node, including the branch
+     * above it, that cross a height. The branch above the node must end above
+     * that height.
+     *
+     * @return The number of branches, whose lower nodes are in {@code branches}
+     */
+    private int collectBranches(Tree tree, int top, double height) {
+        int count = 0;
+        int depth = 0;
+        stack[depth++] = top;
+        while (depth > 0) {
+            int n = stack[--depth];
+            if (tree.getHeight(n) < height) {
+                branches[count++] = n;
+            } else if (!tree.isTip(n)) {
+                stack[depth++] = tree.getLeftChild(n);
+                stack[depth++] = tree.getRightChild(n);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void reject() {
+        if (node == Tree.NONE) {
+            return;
+        }
+        Tree tree = (Tree) getVariable().getValue();
+        tree.moveSubtree(node, previousSibling, previousHeight);
+        getVariable().restoreValue(tree, previousVersion);
+    }
+}
@@ -0,0 +1,48 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.TreeDensity;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.tree.Tree;
+
+/**
+ * The log density of a tree under its tree prior, kept up to date through a
+ * {@link TreeDensity}. Height moves update only the nodes they report; a
+ * change in a prior parameter is picked up by the density itself. Tree
+ * priors depend on node heights alone, so a topology move costs only the
+ * heights it changes.
+ */
+final class TreePriorFactor extends Factor {
+    private final TreeDensity density;
+
+    TreePriorFactor(Variable variable, Tree tree) {
+        super(variable);
+        this.density = variable.getDistribution().createTreeDensity(tree);
+    }
+
+    @Override
+    double compute(Variable changed, NodeChanges changes) {
+        if (changed == getVariable() || changed == null) {
+            applyChanges(changes);
+        }
+        return density.getLogDensity();
+    }
+
+    @Override
+    void restore(Variable changed, NodeChanges changes) {
+        // The operator has put the old heights back, so replay the same nodes
+        if (changed == getVariable() || changed == null) {
+            applyChanges(changes);
+        }
+        super.restore(changed, changes);
+    }
+
+    private void applyChanges(NodeChanges changes) {
+        if (changes == null || changes.isEmpty()) {
+            density.recompute();
+            return;
+        }
+        for (int i = 0; i < changes.getHeightCount(); i++) {
+            density.update(changes.getHeight(i));
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.Distribution;
+import io.github.stackphy.model.Parameter;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.runtime.ModelGraph;
+import io.github.stackphy.types.CollectionType;
+import io.github.stackphy.types.PhyloSpecType;
+import io.github.stackphy.types.PrimitiveType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A block of continuous variables mapped to unconstrained coordinates, with
+ * the heated log posterior and its analytic gradient in those coordinates.
+ * <p>
+ * The transform is chosen from the PhyloSpec type: reals are left as they
+ * are, positive reals are log-transformed, probabilities logit-transformed
+ * and a k-simplex is mapped to k − 1 additive log-ratios against its last
+ * entry. The log Jacobian of each transform is added to the target, so the
+ * density in the new coordinates is that of the original variables.
+ * <p>
+ * Gradients come from the distributions: a variable's own prior contributes
+ * d log p / dx, and each factor whose distribution takes the variable
+ * directly as a parameter contributes d log p / dθ. Only variables whose
+ * every factor is of this kind can be in a block; see
+ * {@link #findDifferentiable(Posterior)}.
+ */
+final class UnconstrainedBlock {
+    private static final int IDENTITY = 0;
+    private static final int LOG = 1;
+    private static final int LOGIT = 2;
+    private static final int LOG_RATIO = 3;
+
+    private final Posterior posterior;
+    private final List<Variable> variables;
+    private final List<Factor> factors;
+    private final Map<Variable, Integer> indices = new IdentityHashMap<>();
+    private final int[] transforms;
+    private final boolean[] scalar;
+    private final int[] valueOffsets; // Into the constrained values
+    private final int[] coordinateOffsets; // Into the unconstrained coordinates
+    private final int dimension;
+    private final double[] values;
+    private final double[] valueGradient;
+
+    /**
+     * @param posterior The posterior
+     * @param variables Variables from {@link #findDifferentiable(Posterior)}
+     */
+    UnconstrainedBlock(Posterior posterior, List<Variable> variables) {
+        this.posterior = posterior;
+        this.variables = List.copyOf(variables);
+        this.factors = posterior.getFactors(this.variables);
+        this.transforms = new int[variables.size()];
+        this.scalar = new boolean[variables.size()];
+        this.valueOffsets = new int[variables.size() + 1];
+        this.coordinateOffsets = new int[variables.size() + 1];
+        for (int v = 0; v < variables.size(); v++) {
+            Variable variable = variables.get(v);
+            Integer transform = findTransform(Posterior.getType(variable));
+            if (transform == null) {
+                throw new IllegalArgumentException(variable.getName() + " is not continuous");
+            }
+            Object value = Values.unwrap(variable.getValue());
+            int width = Values.toDoubles(value).length;
+            indices.put(variable, v);
+            transforms[v] = transform;
+            scalar[v] = value instanceof Number;
+            valueOffsets[v + 1] = valueOffsets[v] + width;
+            coordinateOffsets[v + 1] = coordinateOffsets[v] + (transform == LOG_RATIO ? width - 1 : width);
+        }
+        this.dimension = coordinateOffsets[variables.size()];
+        this.values = new double[valueOffsets[variables.size()]];
+        this.valueGradient = new double[values.length];
+    }
+
+    /**
+     * Finds the free variables of a posterior that can be moved by gradient:
+     * those with a continuous type whose prior has a value gradient and whose
+     * every other factor takes the variable directly as a parameter of a
+     * distribution with a parameter gradient. Variables read by a tree or
+     * tree likelihood, or through a deterministic expression, are left out.
+     *
+     * @param posterior The posterior
+     * @return The variables, parents before children
+     */
+    static List<Variable> findDifferentiable(Posterior posterior) {
+        List<Variable> differentiable = new ArrayList<>();
+        for (Variable variable : posterior.getFreeVariables()) {
+            if (findTransform(Posterior.getType(variable)) != null
+                    && Values.isNumeric(variable.getValue())
+                    && hasGradients(posterior, variable)) {
+                differentiable.add(variable);
+            }
+        }
+        return differentiable;
+    }
+
+    private static Integer findTransform(PhyloSpecType type) {
+        if (type == CollectionType.SIMPLEX) {
+            return LOG_RATIO;
+        }
+        if (type instanceof CollectionType) {
+            CollectionType collection = (CollectionType) type;
+            if (!"Vector".equals(collection.getCollectionKind())) {
+                return null;
+            }
+            type = collection.getElementTypes()[0];
+        }
+        if (type == PrimitiveType.REAL) {
+            return IDENTITY;
+        } else if (type == PrimitiveType.POSITIVE_REAL || type == PrimitiveType.NON_NEG_REAL) {
+            return LOG;
+        } else if (type == PrimitiveType.PROBABILITY) {
+            return LOGIT;
+        }
+        return null;
+    }
+
+    private static boolean hasGradients(Posterior posterior, Variable variable) {
+        for (Factor factor : posterior.getFactors(variable)) {
+            if (!(factor instanceof ValueFactor)) {
+                return false;
+            }
+            Distribution distribution = ((ValueFactor) factor).getDistribution();
+            double[] xs = Values.toDoubles(factor.getVariable().getValue());
+            try {
+                if (factor.getVariable() == variable) {
+                    distribution.logDensityGradient(xs, new double[xs.length]);
+                    continue;
+                }
+                boolean direct = false;
+                for (Parameter parameter : distribution.getParameters()) {
+                    if (parameter == variable) {
+                        direct = true;
+                    } else if (ModelGraph.findStochastic(parameter).contains(variable)) {
+                        return false;
+                    }
+                }
+                if (!direct) {
+                    return false;
+                }
+                distribution.logDensityParameterGradient(xs, new double[parameterWidth(distribution)]);
+            } catch (UnsupportedOperationException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parameterWidth(Distribution distribution) {
+        int width = 0;
+        for (Parameter parameter : distribution.getParameters()) {
+            width += parameter.isArray() ? parameter.getArrayValue().length : 1;
+        }
+        return width;
+    }
+
+    /**
+     * Gets the number of unconstrained coordinates.
+     */
+    int getDimension() {
+        return dimension;
+    }
+
+    List<Variable> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Gets the factors that read any variable of the block.
+     */
+    List<Factor> getFactors() {
+        return factors;
+    }
+
+    /**
+     * Reads the current values into unconstrained coordinates.
+     *
+     * @param z Receives the coordinates
+     */
+    void read(double[] z) {
+        for (int v = 0; v < variables.size(); v++) {
+            double[] xs = Values.toDoubles(variables.get(v).getValue());
+            int c = coordinateOffsets[v];
+            switch (transforms[v]) {
+                case LOG_RATIO:
+                    double last = Math.log(xs[xs.length - 1]);
+                    for (int i = 0; i < xs.length - 1; i++) {
+                        z[c + i] = Math.log(xs[i]) - last;
+                    }
+                    break;
+                case LOG:
+                    for (int i = 0; i < xs.length; i++) {
+                        z[c + i] = Math.log(xs[i]);
+                    }
+                    break;
+                case LOGIT:
+                    for (int i = 0; i < xs.length; i++) {
+                        z[c + i] = Math.log(xs[i]) - Math.log1p(-xs[i]);
+                    }
+                    break;
+                default:
+                    System.arraycopy(xs, 0, z, c, xs.length);
+            }
+        }
+    }
+
+    /**
+     * Sets the variables to the values at some unconstrained coordinates,
+     * without rescoring.
+     *
+     * @param z The coordinates
+     * @return The log Jacobian of the transform at z
+     */
+    double assign(double[] z) {
+        double logJacobian = 0.0;
+        for (int v = 0; v < variables.size(); v++) {
+            int c = coordinateOffsets[v];
+            int o = valueOffsets[v];
+            int width = valueOffsets[v + 1] - o;
+            switch (transforms[v]) {
+                case LOG_RATIO:
+                    // Softmax of (z, 0), shifted by the largest entry to avoid overflow
+                    double max = 0.0;
+                    for (int i = 0; i < width - 1; i++) {
+                        max = Math.max(max, z[c + i]);
+                    }
+                    double sum = Math.exp(-max);
+                    for (int i = 0; i < width - 1; i++) {
+                        sum += Math.exp(z[c + i] - max);
+                    }
+                    double logSum = max + Math.log(sum);
+                    for (int i = 0; i < width; i++) {
+                        double logX = (i < width - 1 ? z[c + i] : 0.0) - logSum;
+                        values[o + i] = Math.exp(logX);
+                        logJacobian += logX;
+                    }
+                    break;
+                case LOG:
+                    for (int i = 0; i < width; i++) {
+                        values[o + i] = Math.exp(z[c + i]);
+                        logJacobian += z[c + i];
+                    }
+                    break;
+                case LOGIT:
+                    for (int i = 0; i < width; i++) {
+                        // log x = -log(1 + e^-z) and log(1 - x) = -log(1 + e^z)
+                        double logX = -softplus(-z[c + i]);
+                        double log1mX = -softplus(z[c + i]);
+                        values[o + i] = Math.exp(logX);
+                        logJacobian += logX + log1mX;
+                    }
+                    break;
+                default:
+                    System.arraycopy(z, c, values, o, width);
+            }
+            Variable variable = variables.get(v);
+            if (scalar[v]) {
+                variable.setValue(values[o]);
+            } else {
+                double[] entries = new double[width];
+                System.arraycopy(values, o, entries, 0, width);
+                variable.setValue(Values.box(entries));
+            }
+        }
+        return logJacobian;
+    }
+
+    /**
+     * Moves the block to some unconstrained coordinates, rescores the factors
+     * that read it and computes the target there.
+     *
+     * @param z The coordinates
+     * @param gradient Receives the gradient of the target with respect to z
+     * @return heat · log posterior + log Jacobian at z
+     */
+    double evaluate(double[] z, double[] gradient) {
+        double logJacobian = assign(z);
+        posterior.update(factors, null, null);
+        double heat = posterior.getHeat();
+        double target = heat * posterior.getLogPosterior() + logJacobian;
+
+        Arrays.fill(valueGradient, 0.0);
+        for (Factor factor : factors) {
+            Distribution distribution = ((ValueFactor) factor).getDistribution();
+            double[] xs = Values.toDoubles(factor.getVariable().getValue());
+            Integer own = indices.get(factor.getVariable());
+            if (own != null) {
+                double[] out = new double[xs.length];
+                distribution.logDensityGradient(xs, out);
+                int o = valueOffsets[own];
+                for (int i = 0; i < out.length; i++) {
+                    valueGradient[o + i] += out[i];
+                }
+            }
+            Parameter[] parameters = distribution.getParameters();
+            boolean reads = false;
+            for (Parameter parameter : parameters) {
+                reads |= indices.containsKey(parameter);
+            }
+            if (!reads) {
+                continue;
+            }
+            double[] out = new double[parameterWidth(distribution)];
+            distribution.logDensityParameterGradient(xs, out);
+            int entry = 0;
+            for (Parameter parameter : parameters) {
+                int width = parameter.isArray() ? parameter.getArrayValue().length : 1;
+                Integer index = parameter instanceof Variable ? indices.get(parameter) : null;
+                if (index != null) {
+                    int o = valueOffsets[index];
+                    for (int i = 0; i < width; i++) {
+                        valueGradient[o + i] += out[entry + i];
+                    }
+                }
+                entry += width;
+            }
+        }
+
+        // Chain rule through the transforms, plus the gradient of the log Jacobian
+        for (int v = 0; v < variables.size(); v++) {
+            int c = coordinateOffsets[v];
+            int o = valueOffsets[v];
+            int width = valueOffsets[v + 1] - o;
+            switch (transforms[v]) {
+                case LOG_RATIO:
+                    double mean = 0.0;
+                    for (int i = 0; i < width; i++) {
+                        mean += valueGradient[o + i] * values[o + i];
+                    }
+                    for (int i = 0; i < width - 1; i++) {
+                        double x = values[o + i];
+                        gradient[c + i] = heat * x * (valueGradient[o + i] - mean) + 1.0 - width * x;
+                    }
+                    break;
+                case LOG:
+                    for (int i = 0; i < width; i++) {
+                        gradient[c + i] = heat * valueGradient[o + i] * values[o + i] + 1.0;
+                    }
+                    break;
+                case LOGIT:
+                    for (int i = 0; i < width; i++) {
+                        double x = values[o + i];
+                        gradient[c + i] = heat * valueGradient[o + i] * x * (1.0 - x) + 1.0 - 2.0 * x;
+                    }
+                    break;
+                default:
+                    for (int i = 0; i < width; i++) {
+                        gradient[c + i] = heat * valueGradient[o + i];
+                    }
+            }
+        }
+        return target;
+    }
+
+    private static double softplus(double x) {
+        return x > 0.0 ? x + Math.log1p(Math.exp(-x)) : Math.log1p(Math.exp(x));
+    }
+}
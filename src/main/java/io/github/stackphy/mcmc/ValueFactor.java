@@ -0,0 +1,47 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.Distribution;
+import io.github.stackphy.model.Variable;
+
+/**
+ * The log density of a numeric value: a number, a vector drawn in one piece
+ * (a Dirichlet simplex) or observed independent draws of either.
+ */
+final class ValueFactor extends Factor {
+    private final Distribution distribution;
+    private final int drawWidth; // Entries per draw
+    private double[] out;
+
+    /**
+     * @param variable The variable
+     * @param drawWidth The number of entries in one draw from the distribution
+     */
+    ValueFactor(Variable variable, int drawWidth) {
+        super(variable);
+        this.distribution = variable.getDistribution();
+        this.drawWidth = drawWidth;
+    }
+
+    Distribution getDistribution() {
+        return distribution;
+    }
+
+    @Override
+    double compute(Variable changed, NodeChanges changes) {
+        Object value = Values.unwrap(getVariable().getValue());
+        if (value instanceof Number && drawWidth == 1) {
+            return distribution.logDensity(((Number) value).doubleValue());
+        }
+        double[] xs = Values.toDoubles(value);
+        int draws = xs.length / drawWidth;
+        if (out == null || out.length != draws) {
+            out = new double[draws];
+        }
+        distribution.logDensity(xs, out);
+        double sum = 0.0;
+        for (double logDensity : out) {
+            sum += logDensity;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.stackphy.mcmc;
+
+import io.github.stackphy.model.Primitive;
+
+/**
+ * Conversions between variable values (boxed numbers and arrays of them)
+ * and primitive arrays.
+ */
+final class Values {
+    private Values() {
+    }
+
+    /**
+     * Returns whether a value is a number or a non-empty array of numbers,
+     * unwrapping a primitive first.
+     */
+    static boolean isNumeric(Object value) {
+        value = unwrap(value);
+        if (value instanceof Number) {
+            return true;
+        }
+        if (!(value instanceof Object[]) || ((Object[]) value).length == 0) {
+            return false;
+        }
+        for (Object element : (Object[]) value) {
+            if (!(element instanceof Number)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies a numeric value into a new array, one entry for a scalar.
+     */
+    static double[] toDoubles(Object value) {
+        value = unwrap(value);
+        if (value instanceof Number) {
+            return new double[] { ((Number) value).doubleValue() };
+        }
+        Object[] elements = (Object[]) value;
+        double[] values = new double[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            values[i] = ((Number) elements[i]).doubleValue();
+        }
+        return values;
+    }
+
+    /**
+     * Boxes values into an array suitable for {@link io.github.stackphy.model.Variable#setValue(Object)}.
+     */
+    static Object[] box(double[] values) {
+        Object[] boxed = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            boxed[i] = values[i];
+        }
+        return boxed;
+    }
+
+    static Object unwrap(Object value) {
+        return value instanceof Primitive ? ((Primitive) value).getValue() : value;
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.stackphy.model;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Per-thread values for stochastic variables.
+ * While a thread has bindings installed, a bound variable reports its bound
+ * value instead of its observed or assigned value. This lets several threads
+ * evaluate the same model graph with different values at once, for example
+ * one simulated replicate per thread, without copying the graph.
+ * <p>
+ * Bindings change values only: version stamps are those of the variables
+ * themselves, so version-keyed caches (such as substitution model
+ * eigensystems) should not be evaluated under bindings.
+ */
+public final class Bindings {
+    private static final ThreadLocal<Bindings> CURRENT = new ThreadLocal<>();
+
+    private final Map<Variable, Object> values = new IdentityHashMap<>();
+
+    /**
+     * Binds a value to a variable.
+     *
+     * @param variable The variable
+     * @param value The value, or null to unbind
+     */
+    public void bind(Variable variable, Object value) {
+        if (value == null) {
+            values.remove(variable);
+        } else {
+            values.put(variable, value);
+        }
+    }
+
+    /**
+     * Gets the value bound to a variable.
+     *
+     * @param variable The variable
+     * @return The bound value, or null if the variable is not bound
+     */
+    public Object get(Variable variable) {
+        return values.get(variable);
+    }
+
+    /**
+     * Removes every binding.
+     */
+    public void clear() {
+        values.clear();
+    }
+
+    /**
+     * Gets the bindings installed on the calling thread.
+     *
+     * @return The bindings, or null if none are installed
+     */
+    public static Bindings current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Installs bindings on the calling thread.
+     *
+     * @param bindings The bindings, or null to remove them
+     */
+    public static void setCurrent(Bindings bindings) {
+        if (bindings == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(bindings);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package io.github.stackphy.model;
 
+import io.github.stackphy.tree.Tree;
+
 /**
  * Base interface for all probability distributions.
  */
@@ -21,13 +23,125 @@ public interface Distribution extends StackItem {
     /**
      * Generates a sample value from this distribution.
      * This is used for simulation or initialization.
+     * Draws from the calling thread's {@link RandomContext#current() context}.
      * 
      * @return A Primitive containing a value generated from this distribution
      */
     default Primitive generateValue() {
+        return generateValue(RandomContext.current());
+    }
+    
+    /**
+     * Generates a sample value from this distribution using the given random context.
+     * 
+     * @param random The random context
+     * @return A Primitive containing a value generated from this distribution
+     */
+    default Primitive generateValue(RandomContext random) {
     	throw new UnsupportedOperationException();
     }
     
+    /**
+     * Draws many values into a primitive array without boxing.
+     * The default draws one value at a time through {@link #generateValue(RandomContext)};
+     * univariate distributions override it with a tight loop.
+     * 
+     * @param random The random context
+     * @param out Output array
+     * @param n The number of values to draw into out[0..n)
+     */
+    default void sample(RandomContext random, double[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = generateValue(random).getDoubleValue();
+        }
+    }
+    
+    /**
+     * Computes the log probability density of a value.
+     * 
+     * @param x The value
+     * @return The log density, or negative infinity outside the support
+     * @throws UnsupportedOperationException if the distribution cannot score single values
+     */
+    default double logDensity(double x) {
+        throw new UnsupportedOperationException(getDistributionType() + " does not support logDensity");
+    }
+    
+    /**
+     * Computes the log probability density of many values at once.
+     * Parameter values are read once per call, and nothing is allocated.
+     * 
+     * @param xs The values
+     * @param out Output array receiving one log density per value
+     * @throws UnsupportedOperationException if the distribution cannot score values
+     */
+    default void logDensity(double[] xs, double[] out) {
+        for (int i = 0; i < xs.length; i++) {
+            out[i] = logDensity(xs[i]);
+        }
+    }
+    
+    /**
+     * Computes the gradient of the log density with respect to each value.
+     * Like {@link #logDensity(double[], double[])}, parameter values are read
+     * once and nothing is allocated. Outside the support the gradient is NaN.
+     * 
+     * @param xs The values
+     * @param out Output array receiving d log p(x_i) / dx_i, one per value
+     * @throws UnsupportedOperationException if the distribution has no gradient
+     */
+    default void logDensityGradient(double[] xs, double[] out) {
+        throw new UnsupportedOperationException(getDistributionType() + " does not support gradients");
+    }
+    
+    /**
+     * Computes the gradient of the summed log density of a batch of values
+     * with respect to the distribution's parameters. Entries follow the order
+     * of {@link #getParameters()}, with array-valued parameters taking one
+     * entry per element.
+     * 
+     * @param xs The values
+     * @param out Output array receiving d Σ log p(x_i) / dθ_j, one per scalar parameter
+     * @throws UnsupportedOperationException if the distribution has no gradient
+     */
+    default void logDensityParameterGradient(double[] xs, double[] out) {
+        throw new UnsupportedOperationException(getDistributionType() + " does not support gradients");
+    }
+    
+    /**
+     * Computes the log probability density of a tree under a tree prior.
+     * 
+     * @param tree The tree
+     * @return The log density
+     * @throws UnsupportedOperationException if the distribution is not a tree prior
+     */
+    default double logDensity(Tree tree) {
+        throw new UnsupportedOperationException(getDistributionType() + " does not support tree densities");
+    }
+    
+    /**
+     * Creates an incrementally updated log density of a tree under a tree prior.
+     * 
+     * @param tree The tree; height changes must be reported through {@link TreeDensity#update(int)}
+     * @return The tree density
+     * @throws UnsupportedOperationException if the distribution is not a tree prior
+     */
+    default TreeDensity createTreeDensity(Tree tree) {
+        throw new UnsupportedOperationException(getDistributionType() + " does not support tree densities");
+    }
+    
+    /**
+     * Simulates a tree with the given tips from a tree prior.
+     * 
+     * @param random The random context
+     * @param taxa The tip names
+     * @return The tree
+     * @throws UnsupportedOperationException if the distribution is not a tree prior
+     */
+    default Tree simulate(RandomContext random, String[] taxa) {
+        throw new UnsupportedOperationException(getDistributionType() + " cannot simulate trees");
+    }
+    
     @Override
     default StackItemType getType() {
         return StackItemType.DISTRIBUTION;
@@ -28,6 +28,18 @@ public interface Parameter extends StackItem {
      */
     Object getValue();
     
+    /**
+     * Gets a version stamp for this parameter's value.
+     * The stamp changes whenever the value changes, and only returns to an
+     * earlier stamp when the earlier value is restored, so consumers can cache
+     * values derived from it. Immutable parameters always return 0.
+     * 
+     * @return The version stamp
+     */
+    default long getVersion() {
+        return 0L;
+    }
+    
     /**
      * Gets the value as a double, if possible.
      * 
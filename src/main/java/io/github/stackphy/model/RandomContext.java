@@ -0,0 +1,145 @@
+package io.github.stackphy.model;
+
+import java.util.SplittableRandom;
+
+/**
+ * A source of random numbers for sampling, built on SplittableRandom.
+ * A context is not thread-safe; instead each thread, chain or task gets its
+ * own context split from a parent, so streams are independent and nothing is
+ * shared between threads. Splitting is deterministic, so work that splits its
+ * child contexts in a fixed order (for example one per block or replicate,
+ * before handing them to threads) reproduces exactly from one seed whatever
+ * the number of threads.
+ * <p>
+ * Code that samples without an explicit context uses {@link #current()}, a
+ * per-thread context split from the process-wide seed.
+ */
+public final class RandomContext {
+    private static final Object ROOT_LOCK = new Object();
+    private static final ThreadLocal<RandomContext> CURRENT = new ThreadLocal<>();
+    private static RandomContext root = new RandomContext(new SplittableRandom(), 0L);
+    private static volatile long rootGeneration = 0L;
+
+    private final SplittableRandom random;
+    private final long generation; // Root generation this context was split from
+
+    /**
+     * Creates a new context from a seed.
+     *
+     * @param seed The seed
+     */
+    public RandomContext(long seed) {
+        this(new SplittableRandom(seed), rootGeneration);
+    }
+
+    private RandomContext(SplittableRandom random, long generation) {
+        this.random = random;
+        this.generation = generation;
+    }
+
+    /**
+     * Creates an independent child context. The parent's stream advances, so
+     * successive splits give different children.
+     *
+     * @return The child context
+     */
+    public RandomContext split() {
+        return new RandomContext(random.split(), generation);
+    }
+
+    /**
+     * Returns a uniform value in [0, 1).
+     *
+     * @return The value
+     */
+    public double nextDouble() {
+        return random.nextDouble();
+    }
+
+    /**
+     * Returns a uniform value in (0, 1], safe to take the logarithm of.
+     *
+     * @return The value
+     */
+    public double nextOpenDouble() {
+        return 1.0 - random.nextDouble();
+    }
+
+    /**
+     * Returns a uniform integer in [0, bound).
+     *
+     * @param bound The exclusive upper bound (positive)
+     * @return The value
+     */
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    /**
+     * Returns a uniform long.
+     *
+     * @return The value
+     */
+    public long nextLong() {
+        return random.nextLong();
+    }
+
+    /**
+     * Returns a standard normal value (ziggurat method).
+     *
+     * @return The value
+     */
+    public double nextGaussian() {
+        return Ziggurat.nextGaussian(this);
+    }
+
+    /**
+     * Returns a standard exponential value.
+     *
+     * @return The value
+     */
+    public double nextExponential() {
+        return -Math.log(nextOpenDouble());
+    }
+
+    /**
+     * Gets the context of the calling thread. Each thread's context is split
+     * from the process-wide root the first time it is needed, and again after
+     * {@link #setSeed(long)}.
+     *
+     * @return The context of the calling thread
+     */
+    public static RandomContext current() {
+        RandomContext context = CURRENT.get();
+        if (context == null || context.generation != rootGeneration) {
+            synchronized (ROOT_LOCK) {
+                context = root.split();
+            }
+            CURRENT.set(context);
+        }
+        return context;
+    }
+
+    /**
+     * Replaces the context of the calling thread, so that sampling code
+     * without an explicit context draws from a task's own stream.
+     *
+     * @param context The context to use
+     */
+    public static void setCurrent(RandomContext context) {
+        CURRENT.set(new RandomContext(context.random, rootGeneration));
+    }
+
+    /**
+     * Reseeds the process-wide root. Every thread's context is split afresh
+     * from the new root on its next use.
+     *
+     * @param seed The seed
+     */
+    public static void setSeed(long seed) {
+        synchronized (ROOT_LOCK) {
+            rootGeneration++;
+            root = new RandomContext(new SplittableRandom(seed), rootGeneration);
+        }
+    }
+}
@@ -8,6 +8,7 @@ public enum StackItemType {
     DISTRIBUTION,   // Probability distribution
     VARIABLE,       // Named variable
     SEQUENCE,       // Biological sequence
+    TREE,           // Phylogenetic tree
     MODEL,          // Substitution model or other model
     CONSTRAINT,     // Model constraint
     PARAMETER,      // Parameter (can be a variable, distribution, or primitive)
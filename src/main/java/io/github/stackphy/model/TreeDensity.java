@@ -0,0 +1,30 @@
+package io.github.stackphy.model;
+
+/**
+ * The log density of one tree under a tree prior, kept up to date as the
+ * tree's node heights change.
+ * Implementations cache per-node terms so that moving one node costs far
+ * less than rescoring the tree. Parameters of the prior are re-read on every
+ * call, and a change in them is picked up automatically.
+ */
+public interface TreeDensity {
+    /**
+     * Gets the log density of the tree in its current state.
+     *
+     * @return The log density
+     */
+    double getLogDensity();
+    
+    /**
+     * Reports that the height of one node has changed in the tree.
+     *
+     * @param node The node whose height changed
+     * @return The change in log density
+     */
+    double update(int node);
+    
+    /**
+     * Rescores the whole tree, for example after many nodes have changed.
+     */
+    void recompute();
+}
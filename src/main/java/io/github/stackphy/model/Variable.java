@@ -3,15 +3,22 @@
  */
 package io.github.stackphy.model;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Represents a named variable in the model.
  * A variable can be either stochastic (random) or deterministic.
  */
 public class Variable implements Parameter {
+    // Version stamps are drawn from one sequence, so no two values ever share a stamp
+    private static final AtomicLong STAMPS = new AtomicLong();
+
     private final String name;
     private final StackItem value;
     private final boolean stochastic;
     private StackItem observedData; // For stochastic variables
+    private Object currentValue; // Assigned value for stochastic variables
+    private long version;
     
     /**
      * Creates a new variable.
@@ -46,7 +53,9 @@ public class Variable implements Parameter {
     /**
      * Gets the current value of this variable.
      * For deterministic variables, this returns the underlying value.
-     * For stochastic variables, this generates or returns a value from the distribution.
+     * For stochastic variables, this returns the value bound on the calling
+     * thread (see {@link Bindings}), the observed data or the assigned value,
+     * or otherwise generates a value from the distribution.
      * 
      * @return The current value
      */
@@ -54,9 +63,15 @@ public class Variable implements Parameter {
     public Object getValue() {
         if (stochastic) {
             // For stochastic variables, get value from distribution
-            if (observedData != null) {
+            Object bound = boundValue();
+            if (bound != null) {
+                return bound;
+            } else if (observedData != null) {
                 // If observed, return observed data
                 return observedData;
+            } else if (currentValue != null) {
+                // If a value has been assigned, return it
+                return currentValue;
             } else {
                 // Otherwise, generate from distribution
                 Distribution dist = (Distribution) value;
@@ -73,6 +88,56 @@ public class Variable implements Parameter {
         }
     }
         
+    /**
+     * Assigns the current value of a stochastic variable.
+     * The value is returned by {@link #getValue()} until it is reassigned,
+     * and the variable gets a new version stamp.
+     * 
+     * @param value The new value, or null to go back to generating values
+     * @throws IllegalStateException if this is not a stochastic variable
+     */
+    public void setValue(Object value) {
+        if (!stochastic) {
+            throw new IllegalStateException("Cannot assign a value to a deterministic variable");
+        }
+        this.currentValue = value;
+        version = STAMPS.incrementAndGet();
+    }
+    
+    /**
+     * Puts back an earlier value of a stochastic variable together with the
+     * version stamp it had, so that caches keyed on the version still hold
+     * for it. Used to undo a rejected proposal.
+     * 
+     * @param value The earlier value
+     * @param version The version stamp the variable had with that value
+     * @throws IllegalStateException if this is not a stochastic variable
+     */
+    public void restoreValue(Object value, long version) {
+        if (!stochastic) {
+            throw new IllegalStateException("Cannot assign a value to a deterministic variable");
+        }
+        this.currentValue = value;
+        this.version = version;
+    }
+    
+    /**
+     * Returns whether a value has been assigned with {@link #setValue(Object)}.
+     * 
+     * @return true if the variable holds an assigned value
+     */
+    public boolean hasAssignedValue() {
+        return currentValue != null;
+    }
+    
+    @Override
+    public long getVersion() {
+        if (!stochastic && value instanceof Parameter) {
+            return ((Parameter) value).getVersion();
+        }
+        return version;
+    }
+    
     /**
      * Gets the underlying stack item for this variable.
      * For stochastic variables, this is the distribution.
@@ -119,6 +184,7 @@ public class Variable implements Parameter {
             throw new IllegalStateException("Cannot set observed data for deterministic variable");
         }
         this.observedData = data;
+        version = STAMPS.incrementAndGet();
     }
     
     /**
@@ -151,7 +217,10 @@ public class Variable implements Parameter {
     
     @Override
     public double getDoubleValue() {
-        if (stochastic) {
+        Object assigned = assignedValue();
+        if (stochastic && assigned instanceof Number) {
+            return ((Number) assigned).doubleValue();
+        } else if (stochastic) {
             Distribution dist = (Distribution) value;
             return dist.generateValue().getDoubleValue();
         } else if (value instanceof Parameter) {
@@ -166,7 +235,10 @@ public class Variable implements Parameter {
     
     @Override
     public boolean isArray() {
-        if (stochastic) {
+        Object assigned = assignedValue();
+        if (stochastic && assigned != null) {
+            return assigned instanceof Object[];
+        } else if (stochastic) {
             // For stochastic variables, delegate to the distribution's generateValue
             Distribution dist = (Distribution) value;
             return dist.generateValue().isArray();
@@ -178,7 +250,10 @@ public class Variable implements Parameter {
     
     @Override
     public Object[] getArrayValue() {
-        if (stochastic) {
+        Object assigned = assignedValue();
+        if (stochastic && assigned instanceof Object[]) {
+            return (Object[]) assigned;
+        } else if (stochastic) {
             // For stochastic variables, delegate to the distribution's generateValue
             Distribution dist = (Distribution) value;
             return dist.generateValue().getArrayValue();
@@ -191,4 +266,24 @@ public class Variable implements Parameter {
         }
         throw new UnsupportedOperationException("Variable value cannot be converted to array");
     }
+    
+    /**
+     * Gets the value bound to this variable on the calling thread.
+     * 
+     * @return The bound value, or null if there is none
+     */
+    private Object boundValue() {
+        Bindings bindings = Bindings.current();
+        return bindings == null ? null : bindings.get(this);
+    }
+    
+    /**
+     * Gets the bound value if there is one, and otherwise the assigned value.
+     * 
+     * @return The value, or null if neither is set
+     */
+    private Object assignedValue() {
+        Object bound = boundValue();
+        return bound != null ? bound : currentValue;
+    }
 }
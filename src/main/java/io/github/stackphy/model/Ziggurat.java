@@ -0,0 +1,87 @@
+package io.github.stackphy.model;
+
+/**
+ * Standard normal variates by the ziggurat method (Marsaglia and Tsang, 2000).
+ * The density is covered by 128 layers of equal area; about 99% of draws
+ * need one random integer, one comparison and one multiplication.
+ * The layer index is taken from the top 7 bits of the 64-bit draw and the
+ * sample from the low 32, so the two do not share bits (the correlation
+ * Doornik (2005) found in the original generator).
+ */
+final class Ziggurat {
+    private static final int LAYERS = 128;
+    private static final double R = 3.442619855899; // Start of the tail
+    private static final double AREA = 9.91256303526217e-3; // Area of each layer
+    private static final double SCALE = 2147483648.0; // 2^31
+    private static final int LAYER_SHIFT = 64 - 7; // Top 7 bits give one of 128 layers
+
+    private static final int[] K = new int[LAYERS];
+    private static final double[] W = new double[LAYERS];
+    private static final double[] F = new double[LAYERS];
+
+    static {
+        double dn = R;
+        double tn = dn;
+        double q = AREA / Math.exp(-0.5 * dn * dn);
+        K[0] = (int) ((dn / q) * SCALE);
+        K[1] = 0;
+        W[0] = q / SCALE;
+        W[LAYERS - 1] = dn / SCALE;
+        F[0] = 1.0;
+        F[LAYERS - 1] = Math.exp(-0.5 * dn * dn);
+        for (int i = LAYERS - 2; i >= 1; i--) {
+            dn = Math.sqrt(-2.0 * Math.log(AREA / dn + Math.exp(-0.5 * dn * dn)));
+            K[i + 1] = (int) ((dn / tn) * SCALE);
+            tn = dn;
+            F[i] = Math.exp(-0.5 * dn * dn);
+            W[i] = dn / SCALE;
+        }
+    }
+
+    private Ziggurat() {
+        // Utility class
+    }
+
+    /**
+     * Draws a standard normal value.
+     *
+     * @param random The random context
+     * @return The value
+     */
+    static double nextGaussian(RandomContext random) {
+        long bits = random.nextLong();
+        int hz = (int) bits;
+        int iz = (int) (bits >>> LAYER_SHIFT);
+        if (Math.abs(hz) < K[iz]) {
+            return hz * W[iz];
+        }
+        return fix(random, hz, iz);
+    }
+
+    /**
+     * Handles the rare draws that fall outside the rectangle core of a layer.
+     */
+    private static double fix(RandomContext random, int hz, int iz) {
+        while (true) {
+            double x = hz * W[iz];
+            if (iz == 0) {
+                // Sample from the tail beyond R
+                double y;
+                do {
+                    x = -Math.log(random.nextOpenDouble()) / R;
+                    y = -Math.log(random.nextOpenDouble());
+                } while (y + y < x * x);
+                return hz > 0 ? R + x : -R - x;
+            }
+            if (F[iz] + random.nextDouble() * (F[iz - 1] - F[iz]) < Math.exp(-0.5 * x * x)) {
+                return x;
+            }
+            long bits = random.nextLong();
+            hz = (int) bits;
+            iz = (int) (bits >>> LAYER_SHIFT);
+            if (Math.abs(hz) < K[iz]) {
+                return hz * W[iz];
+            }
+        }
+    }
+}
@@ -36,9 +36,7 @@ public class SubstitutionModelOperationsProvider implements OperationProvider {
     private void jc69Model(Stack stack, Environment env) {
         // PhyloSpec: JC69() -> QMatrix
         // No parameters for JC69
-        
-        // JC69 model (to be implemented)
-        throw new UnsupportedOperationException("JC69 model not yet implemented");
+        stack.push(new JC69());
     }
     
     /**
@@ -48,8 +46,7 @@ public class SubstitutionModelOperationsProvider implements OperationProvider {
         // PhyloSpec: K80(kappa: PositiveReal) -> QMatrix
         Parameter kappa = stack.pop(Parameter.class);
         
-        // K80 model (to be implemented)
-        throw new UnsupportedOperationException("K80 model not yet implemented");
+        stack.push(new K80(kappa));
     }
     
     /**
@@ -59,8 +56,7 @@ public class SubstitutionModelOperationsProvider implements OperationProvider {
         // PhyloSpec: F81(baseFrequencies: Simplex) -> QMatrix
         Parameter baseFreqs = stack.pop(Parameter.class);
         
-        // F81 model (to be implemented)
-        throw new UnsupportedOperationException("F81 model not yet implemented");
+        stack.push(new F81(baseFreqs));
     }
     
     /**
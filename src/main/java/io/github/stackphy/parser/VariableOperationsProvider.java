@@ -1,5 +1,7 @@
 package io.github.stackphy.parser;
 
+import io.github.stackphy.distribution.PhyloCTMC;
+import io.github.stackphy.likelihood.SitePatterns;
 import io.github.stackphy.model.Primitive;
 import io.github.stackphy.model.StackItem;
 import io.github.stackphy.model.StackItemType;
@@ -124,6 +126,12 @@ public class VariableOperationsProvider implements OperationProvider {
             throw new IllegalArgumentException("Cannot observe deterministic variable");
         }
         
+        // Compress alignments once here so every consumer shares the same pattern table
+        if (variable.getDistribution() instanceof PhyloCTMC) {
+            PhyloCTMC ctmc = (PhyloCTMC) variable.getDistribution();
+            ctmc.setObservedPatterns(SitePatterns.compress(PhyloCTMC.toAlignment(data)));
+        }
+        
         variable.setObservedData(data);
     }
 }
\ No newline at end of file
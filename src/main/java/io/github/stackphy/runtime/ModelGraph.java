@@ -0,0 +1,203 @@
+package io.github.stackphy.runtime;
+
+import io.github.stackphy.distribution.PhyloCTMC;
+import io.github.stackphy.likelihood.SitePatterns;
+import io.github.stackphy.model.Distribution;
+import io.github.stackphy.model.Model;
+import io.github.stackphy.model.Parameter;
+import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.StackItem;
+import io.github.stackphy.model.Variable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The dependencies between the stochastic variables of an {@link Environment}.
+ * <p>
+ * A stochastic variable depends on the stochastic variables its distribution
+ * reads, looking through deterministic variables, models and arrays. The
+ * variables are put in dependency order once, parents first, with ties broken
+ * by name so the order is the same on every run.
+ */
+public final class ModelGraph {
+    private final List<Variable> variables; // Parents first
+    private final Map<Variable, List<Variable>> parents;
+    private final Map<Variable, List<Variable>> children;
+
+    /**
+     * Builds the graph of the stochastic variables of an executed environment.
+     *
+     * @param environment The environment
+     * @throws IllegalStateException if the stochastic variables depend on each other in a cycle
+     */
+    public ModelGraph(Environment environment) {
+        // Sort by name first so that ties in the dependency order are broken the same way every time
+        Map<String, Variable> byName = new TreeMap<>(environment.getStochasticVariables());
+        List<Variable> unsorted = new ArrayList<>(byName.values());
+        this.parents = new IdentityHashMap<>();
+        this.children = new IdentityHashMap<>();
+        for (Variable variable : unsorted) {
+            parents.put(variable, Collections.unmodifiableList(findStochastic(variable.getUnderlyingValue())));
+            children.put(variable, new ArrayList<>());
+        }
+        for (Variable variable : unsorted) {
+            for (Variable parent : parents.get(variable)) {
+                List<Variable> list = children.get(parent);
+                if (list != null) {
+                    list.add(variable);
+                }
+            }
+        }
+        this.variables = Collections.unmodifiableList(sortByDependency(unsorted));
+    }
+
+    /**
+     * Gets the stochastic variables in dependency order.
+     *
+     * @return The variables, parents before children
+     */
+    public List<Variable> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Gets the stochastic variables that a variable's distribution reads.
+     *
+     * @param variable A stochastic variable of the graph
+     * @return The parents, in the order they are found
+     */
+    public List<Variable> getParents(Variable variable) {
+        return parents.get(variable);
+    }
+
+    /**
+     * Gets the stochastic variables whose distributions read a variable.
+     *
+     * @param variable A stochastic variable of the graph
+     * @return The children, in name order
+     */
+    public List<Variable> getChildren(Variable variable) {
+        return Collections.unmodifiableList(children.get(variable));
+    }
+
+    /**
+     * Finds the taxa of an alignment observed on a tree variable, which a
+     * tree prior needs to simulate a tree.
+     *
+     * @param treeVariable A stochastic variable of the graph
+     * @return The taxa of the first observed PhyloCTMC on the tree, or null if there is none
+     */
+    public String[] getObservedTaxa(Variable treeVariable) {
+        for (Variable child : getChildren(treeVariable)) {
+            if (child.getDistribution() instanceof PhyloCTMC) {
+                PhyloCTMC ctmc = (PhyloCTMC) child.getDistribution();
+                SitePatterns patterns = ctmc.getObservedPatterns();
+                if (patterns != null && ctmc.getTree() == treeVariable) {
+                    String[] taxa = new String[patterns.getTaxonCount()];
+                    for (int i = 0; i < taxa.length; i++) {
+                        taxa[i] = patterns.getTaxon(i);
+                    }
+                    return taxa;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the stochastic variables an item reads, looking through
+     * deterministic variables, models, distributions and arrays.
+     * A stochastic variable is returned as its own only dependency, and a
+     * distribution gives the stochastic variables its parameters read.
+     *
+     * @param item The item
+     * @return The stochastic variables, each once, in the order they are found
+     */
+    public static List<Variable> findStochastic(StackItem item) {
+        List<Variable> found = new ArrayList<>();
+        collectStochastic(item, found, Collections.newSetFromMap(new IdentityHashMap<>()));
+        return found;
+    }
+
+    private static void collectStochastic(Object item, List<Variable> found, Set<Object> visited) {
+        if (item == null || !visited.add(item)) {
+            return;
+        }
+        if (item instanceof Variable) {
+            Variable variable = (Variable) item;
+            if (variable.isStochastic()) {
+                found.add(variable);
+                return;
+            }
+            collectStochastic(variable.getUnderlyingValue(), found, visited);
+        } else if (item instanceof Distribution) {
+            for (Parameter parameter : ((Distribution) item).getParameters()) {
+                collectStochastic(parameter, found, visited);
+            }
+        } else if (item instanceof Model) {
+            for (Parameter parameter : ((Model) item).getParameters()) {
+                collectStochastic(parameter, found, visited);
+            }
+        } else if (item instanceof Primitive && ((Primitive) item).isArray()) {
+            for (Object element : ((Primitive) item).getArrayValue()) {
+                if (element instanceof StackItem) {
+                    collectStochastic(element, found, visited);
+                }
+            }
+        }
+    }
+
+    /**
+     * Orders variables so that parents come first (Kahn's algorithm, taking
+     * ready variables in name order).
+     */
+    private List<Variable> sortByDependency(List<Variable> unsorted) {
+        Map<Variable, Integer> remaining = new IdentityHashMap<>();
+        for (Variable variable : unsorted) {
+            int count = 0;
+            for (Variable parent : parents.get(variable)) {
+                if (children.containsKey(parent)) {
+                    count++;
+                }
+            }
+            remaining.put(variable, count);
+        }
+
+        Map<String, Variable> ready = new TreeMap<>();
+        for (Variable variable : unsorted) {
+            if (remaining.get(variable) == 0) {
+                ready.put(variable.getName(), variable);
+            }
+        }
+        List<Variable> sorted = new ArrayList<>();
+        while (!ready.isEmpty()) {
+            Variable next = ready.remove(ready.keySet().iterator().next());
+            sorted.add(next);
+            for (Variable child : children.get(next)) {
+                int count = remaining.get(child) - 1;
+                remaining.put(child, count);
+                if (count == 0) {
+                    ready.put(child.getName(), child);
+                }
+            }
+        }
+        if (sorted.size() != unsorted.size()) {
+            Map<String, Variable> cyclic = new LinkedHashMap<>();
+            for (Variable variable : unsorted) {
+                if (remaining.get(variable) > 0) {
+                    cyclic.put(variable.getName(), variable);
+                }
+            }
+            throw new IllegalStateException("Stochastic variables depend on each other in a cycle: "
+                    + cyclic.keySet());
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.stackphy.simulation;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives a simulated alignment one block of sites at a time, so an
+ * alignment never has to be held in memory as a whole.
+ */
+public interface AlignmentWriter extends Closeable {
+    /**
+     * Starts a new alignment.
+     *
+     * @param taxa The taxon names, in the order rows are passed to {@link #writeBlock}
+     * @param siteCount The total number of sites
+     * @throws IOException if the output cannot be written
+     */
+    void begin(String[] taxa, int siteCount) throws IOException;
+
+    /**
+     * Writes the next block of sites. Blocks arrive in site order.
+     *
+     * @param start The first site of the block
+     * @param rows Rows of ASCII characters, one per taxon first; any further rows are ignored
+     * @param length The number of sites in the block
+     * @throws IOException if the output cannot be written
+     */
+    void writeBlock(int start, byte[][] rows, int length) throws IOException;
+}
@@ -0,0 +1,95 @@
+package io.github.stackphy.simulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes an alignment as FASTA with fixed-width sequence lines.
+ * FASTA stores each taxon's sequence whole, but every record has a known
+ * length once the site count is known, so each block is written straight to
+ * its offset in every record of a seekable file.
+ */
+public class FastaWriter implements AlignmentWriter {
+    /** Default number of sites per line. */
+    public static final int DEFAULT_LINE_WIDTH = 60;
+
+    private final FileChannel channel;
+    private final int lineWidth;
+    private long[] sequenceOffsets; // File offset of the first site of each record
+    private int siteCount;
+    private byte[] buffer = new byte[0];
+
+    /**
+     * Creates a writer with the default line width, replacing any existing file.
+     *
+     * @param path The output file
+     * @throws IOException if the file cannot be opened
+     */
+    public FastaWriter(Path path) throws IOException {
+        this(path, DEFAULT_LINE_WIDTH);
+    }
+
+    /**
+     * Creates a writer, replacing any existing file.
+     *
+     * @param path The output file
+     * @param lineWidth The number of sites per line
+     * @throws IOException if the file cannot be opened
+     */
+    public FastaWriter(Path path, int lineWidth) throws IOException {
+        if (lineWidth < 1) {
+            throw new IllegalArgumentException("Line width must be positive");
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.lineWidth = lineWidth;
+    }
+
+    @Override
+    public void begin(String[] taxa, int siteCount) throws IOException {
+        this.siteCount = siteCount;
+        this.sequenceOffsets = new long[taxa.length];
+        long sequenceBytes = siteCount + (siteCount + lineWidth - 1) / lineWidth;
+        long offset = 0;
+        for (int t = 0; t < taxa.length; t++) {
+            byte[] header = (">" + taxa[t] + "\n").getBytes(StandardCharsets.UTF_8);
+            writeFully(ByteBuffer.wrap(header), offset);
+            sequenceOffsets[t] = offset + header.length;
+            offset = sequenceOffsets[t] + sequenceBytes;
+        }
+    }
+
+    @Override
+    public void writeBlock(int start, byte[][] rows, int length) throws IOException {
+        int capacity = length + length / lineWidth + 2;
+        if (buffer.length < capacity) {
+            buffer = new byte[capacity];
+        }
+        for (int t = 0; t < sequenceOffsets.length; t++) {
+            int n = 0;
+            for (int i = 0; i < length; i++) {
+                int site = start + i;
+                buffer[n++] = rows[t][i];
+                if ((site + 1) % lineWidth == 0 || site + 1 == siteCount) {
+                    buffer[n++] = '\n';
+                }
+            }
+            writeFully(ByteBuffer.wrap(buffer, 0, n), sequenceOffsets[t] + start + start / lineWidth);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void writeFully(ByteBuffer bytes, long position) throws IOException {
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+    }
+}
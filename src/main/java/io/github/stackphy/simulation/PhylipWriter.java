@@ -0,0 +1,86 @@
+package io.github.stackphy.simulation;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes an alignment as interleaved (relaxed) PHYLIP.
+ * Interleaved PHYLIP lists every taxon's next chunk of sites in turn, so
+ * blocks stream straight to the output in site order. Names are padded to
+ * at least ten characters and never truncated.
+ */
+public class PhylipWriter implements AlignmentWriter {
+    /** Default number of sites per line. */
+    public static final int DEFAULT_LINE_WIDTH = 60;
+
+    private final OutputStream out;
+    private final int lineWidth;
+    private byte[][] names; // Padded names, written before the first chunk only
+    private boolean first;
+
+    /**
+     * Creates a writer with the default line width.
+     *
+     * @param out The output stream; closed when the writer is closed
+     */
+    public PhylipWriter(OutputStream out) {
+        this(out, DEFAULT_LINE_WIDTH);
+    }
+
+    /**
+     * Creates a writer.
+     *
+     * @param out The output stream; closed when the writer is closed
+     * @param lineWidth The number of sites per line
+     */
+    public PhylipWriter(OutputStream out, int lineWidth) {
+        if (lineWidth < 1) {
+            throw new IllegalArgumentException("Line width must be positive");
+        }
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        this.lineWidth = lineWidth;
+    }
+
+    @Override
+    public void begin(String[] taxa, int siteCount) throws IOException {
+        int width = 10;
+        for (String taxon : taxa) {
+            width = Math.max(width, taxon.length() + 1);
+        }
+        names = new byte[taxa.length][];
+        for (int t = 0; t < taxa.length; t++) {
+            StringBuilder name = new StringBuilder(taxa[t]);
+            while (name.length() < width) {
+                name.append(' ');
+            }
+            names[t] = name.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        first = true;
+        out.write((taxa.length + " " + siteCount + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void writeBlock(int start, byte[][] rows, int length) throws IOException {
+        for (int offset = 0; offset < length; offset += lineWidth) {
+            int chunk = Math.min(lineWidth, length - offset);
+            if (!first) {
+                out.write('\n');
+            }
+            for (int t = 0; t < names.length; t++) {
+                if (first) {
+                    out.write(names[t]);
+                }
+                out.write(rows[t], offset, chunk);
+                out.write('\n');
+            }
+            first = false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
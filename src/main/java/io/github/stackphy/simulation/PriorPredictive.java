@@ -0,0 +1,339 @@
+package io.github.stackphy.simulation;
+
+import io.github.stackphy.likelihood.TreeLikelihood;
+import io.github.stackphy.model.Bindings;
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.runtime.Environment;
+import io.github.stackphy.runtime.ModelGraph;
+import io.github.stackphy.tree.Tree;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Draws joint samples from the prior of the model in an {@link Environment}
+ * by ancestral sampling.
+ * <p>
+ * Stochastic variables are put in dependency order once (see
+ * {@link ModelGraph}). Each replicate then draws every variable in that
+ * order with its parents' values bound on the thread (see {@link Bindings}),
+ * so deterministic variables and models see the replicate's values and
+ * every draw is coherent with the ones before it. Observed variables are
+ * drawn too, as a prior predictive check needs.
+ * <p>
+ * A tree prior simulates a tree on the taxa of an alignment observed on it,
+ * as the MCMC does for its starting tree, and gives a name.rootHeight
+ * column. Alignments themselves are not simulated: PhyloCTMC variables, tree
+ * priors without observed taxa and any other distribution that cannot
+ * generate values are skipped together with everything that depends on
+ * them. Replicates are drawn in fixed-size chunks, each with
+ * a random context split in chunk order, so results do not depend on the
+ * number of threads.
+ */
+public class PriorPredictive {
+    private static final int CHUNK_SIZE = 256;
+    private static final long PROBE_SEED = 0L;
+    private static final int BATCH_CHUNKS_PER_THREAD = 4; // Chunks drawn per thread between trace writes
+
+    private final List<Variable> order; // Sampled variables, parents first
+    private final List<String[]> taxa; // Taxa to simulate each tree on, null for other variables
+    private final int[] firstColumn; // First output column of each sampled variable
+    private final int[] widths; // Number of output columns of each sampled variable, 0 if not numeric
+    private final List<String> columnNames;
+    private final List<String> skipped;
+    private int threadCount;
+
+    /**
+     * Prepares sampling from the stochastic variables of an executed environment.
+     *
+     * @param environment The environment
+     * @throws IllegalStateException if the stochastic variables depend on each other in a cycle
+     */
+    public PriorPredictive(Environment environment) {
+        ModelGraph graph = new ModelGraph(environment);
+
+        // Probe one replicate to find what can be drawn and how wide each value is
+        this.order = new ArrayList<>();
+        this.taxa = new ArrayList<>();
+        this.skipped = new ArrayList<>();
+        List<Object> probes = new ArrayList<>();
+        Set<Variable> skippedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        Bindings bindings = new Bindings();
+        Bindings previous = Bindings.current();
+        Bindings.setCurrent(bindings);
+        try {
+            RandomContext probe = new RandomContext(PROBE_SEED);
+            for (Variable variable : graph.getVariables()) {
+                boolean blocked = false;
+                for (Variable parent : graph.getParents(variable)) {
+                    blocked |= skippedSet.contains(parent);
+                }
+                Object value = null;
+                String[] tips = null;
+                if (!blocked) {
+                    try {
+                        value = variable.getDistribution().generateValue(probe).getValue();
+                    } catch (UnsupportedOperationException e) {
+                        // Not a value distribution; it may be a tree prior on observed taxa
+                        tips = graph.getObservedTaxa(variable);
+                        blocked = tips == null;
+                    }
+                }
+                if (tips != null) {
+                    try {
+                        value = variable.getDistribution().simulate(probe, tips);
+                    } catch (UnsupportedOperationException e) {
+                        blocked = true;
+                    }
+                }
+                if (blocked) {
+                    skippedSet.add(variable);
+                    skipped.add(variable.getName());
+                } else {
+                    bindings.bind(variable, value);
+                    order.add(variable);
+                    taxa.add(tips);
+                    probes.add(value);
+                }
+            }
+        } finally {
+            Bindings.setCurrent(previous);
+        }
+
+        this.firstColumn = new int[order.size()];
+        this.widths = new int[order.size()];
+        List<String> names = new ArrayList<>();
+        for (int v = 0; v < order.size(); v++) {
+            String name = order.get(v).getName();
+            Object value = probes.get(v);
+            firstColumn[v] = names.size();
+            if (value instanceof Number) {
+                widths[v] = 1;
+                names.add(name);
+            } else if (value instanceof Tree) {
+                widths[v] = 1;
+                names.add(name + ".rootHeight");
+            } else if (isNumericArray(value)) {
+                int width = ((Object[]) value).length;
+                widths[v] = width;
+                for (int i = 1; i <= width; i++) {
+                    names.add(name + "." + i);
+                }
+            }
+        }
+        this.columnNames = Collections.unmodifiableList(names);
+        this.threadCount = TreeLikelihood.getDefaultThreadCount();
+    }
+
+    /**
+     * Draws joint samples.
+     *
+     * @param random The random context
+     * @param replicates The number of samples
+     * @return One row per sample and one column per numeric value
+     */
+    public SampleTable sample(RandomContext random, int replicates) {
+        if (replicates < 0) {
+            throw new IllegalArgumentException("Replicate count cannot be negative");
+        }
+        SampleTable table = new SampleTable(new ArrayList<>(columnNames), replicates);
+        RandomContext[] streams = splitStreams(random, replicates);
+        ForkJoinPool pool = threadCount > 1 && streams.length > 1 ? new ForkJoinPool(threadCount) : null;
+        try {
+            sampleChunks(pool, streams, 0, streams.length, replicates, table);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Draws joint samples and streams them to a trace, with the replicate
+     * number as the state. Chunks are drawn a batch at a time on all threads
+     * and written in order, so the rows are those of
+     * {@link #sample(RandomContext, int)} with the same random context. The
+     * trace must have the columns of {@link #getColumnNames()}; it is not closed.
+     *
+     * @param random The random context
+     * @param replicates The number of samples
+     * @param trace The trace to write to
+     * @throws IOException if the trace cannot be written
+     */
+    public void sample(RandomContext random, int replicates, TraceWriter trace) throws IOException {
+        if (replicates < 0) {
+            throw new IllegalArgumentException("Replicate count cannot be negative");
+        }
+        if (!trace.getColumnNames().equals(columnNames)) {
+            throw new IllegalArgumentException("Trace columns do not match the sampled variables");
+        }
+        RandomContext[] streams = splitStreams(random, replicates);
+        int batchChunks = BATCH_CHUNKS_PER_THREAD * threadCount;
+        SampleTable batch = new SampleTable(new ArrayList<>(columnNames),
+                Math.min(replicates, batchChunks * CHUNK_SIZE));
+        double[] row = new double[columnNames.size()];
+        ForkJoinPool pool = threadCount > 1 && streams.length > 1 ? new ForkJoinPool(threadCount) : null;
+        try {
+            for (int first = 0; first < streams.length; first += batchChunks) {
+                int last = Math.min(streams.length, first + batchChunks);
+                sampleChunks(pool, streams, first, last, replicates, batch);
+                int rows = Math.min(replicates, last * CHUNK_SIZE) - first * CHUNK_SIZE;
+                for (int r = 0; r < rows; r++) {
+                    for (int c = 0; c < row.length; c++) {
+                        row[c] = batch.getColumn(c)[r];
+                    }
+                    trace.write((long) first * CHUNK_SIZE + r, row);
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Splits one random context per chunk, in chunk order.
+     */
+    private static RandomContext[] splitStreams(RandomContext random, int replicates) {
+        RandomContext[] streams = new RandomContext[(replicates + CHUNK_SIZE - 1) / CHUNK_SIZE];
+        for (int c = 0; c < streams.length; c++) {
+            streams[c] = random.split();
+        }
+        return streams;
+    }
+
+    /**
+     * Draws chunks [first, last) into a table whose row 0 is the first row of chunk {@code first}.
+     */
+    private void sampleChunks(ForkJoinPool pool, RandomContext[] streams, int first, int last,
+            int replicates, SampleTable table) {
+        int offset = first * CHUNK_SIZE;
+        if (pool == null || last - first <= 1) {
+            for (int c = first; c < last; c++) {
+                sampleChunk(streams[c], table, c * CHUNK_SIZE - offset,
+                        Math.min(replicates, (c + 1) * CHUNK_SIZE) - offset);
+            }
+            return;
+        }
+        try {
+            pool.submit(() -> IntStream.range(first, last).parallel().forEach(c ->
+                    sampleChunk(streams[c], table, c * CHUNK_SIZE - offset,
+                            Math.min(replicates, (c + 1) * CHUNK_SIZE) - offset)))
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Prior predictive sampling was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Prior predictive sampling failed", e.getCause());
+        }
+    }
+
+    /**
+     * Draws the replicates in [from, to) on the calling thread.
+     */
+    private void sampleChunk(RandomContext random, SampleTable table, int from, int to) {
+        Bindings bindings = new Bindings();
+        Bindings previous = Bindings.current();
+        Bindings.setCurrent(bindings);
+        try {
+            for (int row = from; row < to; row++) {
+                for (int v = 0; v < order.size(); v++) {
+                    Variable variable = order.get(v);
+                    String[] tips = taxa.get(v);
+                    Object value = tips == null
+                            ? variable.getDistribution().generateValue(random).getValue()
+                            : variable.getDistribution().simulate(random, tips);
+                    bindings.bind(variable, value);
+                    if (value instanceof Tree) {
+                        Tree tree = (Tree) value;
+                        table.set(firstColumn[v], row, tree.getHeight(tree.getRoot()));
+                    } else if (widths[v] == 1) {
+                        table.set(firstColumn[v], row, ((Number) value).doubleValue());
+                    } else if (widths[v] > 1) {
+                        Object[] values = (Object[]) value;
+                        for (int i = 0; i < widths[v]; i++) {
+                            table.set(firstColumn[v] + i, row, ((Number) values[i]).doubleValue());
+                        }
+                    }
+                }
+            }
+        } finally {
+            Bindings.setCurrent(previous);
+        }
+    }
+
+    /**
+     * Gets the sampled variables in the order they are drawn.
+     *
+     * @return The variable names, parents before children
+     */
+    public List<String> getSampledVariables() {
+        List<String> names = new ArrayList<>();
+        for (Variable variable : order) {
+            names.add(variable.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Gets the stochastic variables that cannot be drawn.
+     *
+     * @return The variable names
+     */
+    public List<String> getSkippedVariables() {
+        return Collections.unmodifiableList(skipped);
+    }
+
+    /**
+     * Gets the names of the output columns.
+     *
+     * @return The column names
+     */
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * Gets the number of threads used for sampling.
+     *
+     * @return The thread count
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads used for sampling.
+     * The samples do not depend on the thread count.
+     *
+     * @param threadCount The thread count (1 samples on the calling thread)
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        this.threadCount = threadCount;
+    }
+
+    private static boolean isNumericArray(Object value) {
+        if (!(value instanceof Object[]) || ((Object[]) value).length == 0) {
+            return false;
+        }
+        for (Object element : (Object[]) value) {
+            if (!(element instanceof Number)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.stackphy.simulation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Samples stored by column: one primitive array per scalar value, with
+ * vector-valued variables spread over one column per element (name.1, name.2, ...).
+ */
+public class SampleTable {
+    private final List<String> columnNames;
+    private final double[][] columns;
+    private final int rowCount;
+
+    /**
+     * Creates an empty table.
+     *
+     * @param columnNames The column names
+     * @param rowCount The number of rows
+     */
+    public SampleTable(List<String> columnNames, int rowCount) {
+        this.columnNames = Collections.unmodifiableList(columnNames);
+        this.columns = new double[columnNames.size()][rowCount];
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Gets the column names.
+     *
+     * @return The names
+     */
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * Gets the number of columns.
+     *
+     * @return The column count
+     */
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Gets the number of rows (samples).
+     *
+     * @return The row count
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Gets a column. The array is shared, not copied.
+     *
+     * @param column The column index
+     * @return The column values
+     */
+    public double[] getColumn(int column) {
+        return columns[column];
+    }
+
+    /**
+     * Gets a column by name.
+     *
+     * @param name The column name
+     * @return The column values
+     * @throws IllegalArgumentException if there is no such column
+     */
+    public double[] getColumn(String name) {
+        int column = columnNames.indexOf(name);
+        if (column < 0) {
+            throw new IllegalArgumentException("No column '" + name + "'");
+        }
+        return columns[column];
+    }
+
+    /**
+     * Sets one value.
+     *
+     * @param column The column index
+     * @param row The row index
+     * @param value The value
+     */
+    public void set(int column, int row, double value) {
+        columns[column][row] = value;
+    }
+
+    @Override
+    public String toString() {
+        return "SampleTable(" + rowCount + " rows, columns " + Arrays.toString(columnNames.toArray()) + ")";
+    }
+}
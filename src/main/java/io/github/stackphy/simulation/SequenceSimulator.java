@@ -0,0 +1,267 @@
+package io.github.stackphy.simulation;
+
+import io.github.stackphy.distribution.PhyloCTMC;
+import io.github.stackphy.likelihood.TreeLikelihood;
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.substitution.SubstitutionModel;
+import io.github.stackphy.tree.Tree;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Simulates nucleotide alignments from a PhyloCTMC on a fixed tree, in the
+ * style of Seq-Gen.
+ * <p>
+ * Sites are drawn in blocks. Each block picks a rate category per site,
+ * draws root states from the equilibrium frequencies and evolves them down
+ * the tree in pre-order, sampling each child state from the cumulative rows
+ * of its branch's transition matrix. Blocks get their own random context,
+ * split in block order, and are simulated a batch at a time on several
+ * threads, then handed to an {@link AlignmentWriter} in site order. Memory
+ * therefore depends on the block size and thread count but not on the
+ * alignment length, and the output depends only on the seed and block size.
+ */
+public class SequenceSimulator {
+    private static final byte[] NUCLEOTIDES = { 'A', 'C', 'G', 'T' };
+    private static final int DEFAULT_BLOCK_SIZE = 3840; // A multiple of common line widths
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    private final Tree tree;
+    private final int stateCount;
+    private final int categoryCount;
+    private final int[] preOrder; // Root first, parents before children
+    private final double[] rootCumulative;
+    private final double[][] branchCumulative; // [node][category·from·to], cumulative over to
+    private final String[] taxa;
+    private int threadCount;
+    private int blockSize;
+
+    /**
+     * Creates a simulator. Transition matrices are computed once, from the
+     * model, site rates and clock rate as they are now.
+     *
+     * @param ctmc The model
+     * @param tree The tree
+     * @throws IllegalArgumentException if the model is not a nucleotide model
+     */
+    public SequenceSimulator(PhyloCTMC ctmc, Tree tree) {
+        SubstitutionModel model = ctmc.getSubstitutionModelValue();
+        if (model.getStateCount() != NUCLEOTIDES.length) {
+            throw new IllegalArgumentException("Only nucleotide models can be simulated");
+        }
+        this.tree = tree;
+        this.stateCount = model.getStateCount();
+        double[] rates = ctmc.getSiteRateValues();
+        double clockRate = ctmc.getClockRateValue();
+        this.categoryCount = rates.length;
+
+        int nodeCount = tree.getNodeCount();
+        int[] postOrder = tree.getPostOrder();
+        this.preOrder = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            preOrder[i] = postOrder[nodeCount - 1 - i];
+        }
+
+        this.rootCumulative = cumulative(model.getFrequencies(), 0, stateCount);
+        int matrixSize = stateCount * stateCount;
+        this.branchCumulative = new double[nodeCount][];
+        double[] matrix = new double[matrixSize];
+        for (int node = 0; node < nodeCount; node++) {
+            if (node == tree.getRoot()) {
+                continue;
+            }
+            double[] table = new double[categoryCount * matrixSize];
+            double branchLength = tree.getBranchLength(node) * clockRate;
+            for (int c = 0; c < categoryCount; c++) {
+                model.getTransitionProbabilities(branchLength * rates[c], matrix);
+                for (int from = 0; from < stateCount; from++) {
+                    double[] row = cumulative(matrix, from * stateCount, stateCount);
+                    System.arraycopy(row, 0, table, c * matrixSize + from * stateCount, stateCount);
+                }
+            }
+            branchCumulative[node] = table;
+        }
+
+        this.taxa = new String[tree.getTipCount()];
+        for (int tip = 0; tip < taxa.length; tip++) {
+            taxa[tip] = tree.getTaxon(tip);
+        }
+        this.threadCount = TreeLikelihood.getDefaultThreadCount();
+        this.blockSize = DEFAULT_BLOCK_SIZE;
+    }
+
+    /**
+     * Simulates an alignment and streams it to a writer. The writer is not closed.
+     *
+     * @param random The random context
+     * @param siteCount The number of sites
+     * @param writer The output
+     * @throws IOException if the output cannot be written
+     */
+    public void simulate(RandomContext random, int siteCount, AlignmentWriter writer) throws IOException {
+        if (siteCount < 1) {
+            throw new IllegalArgumentException("Site count must be positive");
+        }
+        writer.begin(taxa, siteCount);
+
+        int blockCount = (siteCount + blockSize - 1) / blockSize;
+        int batchSize = threadCount == 1 ? 1 : threadCount * BLOCKS_PER_THREAD;
+        byte[][][] batch = new byte[Math.min(batchSize, blockCount)][][];
+        RandomContext[] streams = new RandomContext[batch.length];
+        ForkJoinPool pool = threadCount == 1 ? null : new ForkJoinPool(threadCount);
+        try {
+            for (int first = 0; first < blockCount; first += batchSize) {
+                int count = Math.min(batchSize, blockCount - first);
+                for (int b = 0; b < count; b++) {
+                    streams[b] = random.split();
+                }
+
+                int firstBlock = first;
+                if (pool == null) {
+                    batch[0] = simulateBlock(streams[0], siteCount, firstBlock, batch[0]);
+                } else {
+                    pool.submit(() -> IntStream.range(0, count).parallel().forEach(b ->
+                            batch[b] = simulateBlock(streams[b], siteCount, firstBlock + b, batch[b]))).get();
+                }
+
+                for (int b = 0; b < count; b++) {
+                    int start = (first + b) * blockSize;
+                    writer.writeBlock(start, batch[b], Math.min(blockSize, siteCount - start));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Sequence simulation was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Sequence simulation failed", e.getCause());
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Simulates one block of sites.
+     *
+     * @param random The block's random context
+     * @param siteCount The total number of sites
+     * @param block The block index
+     * @param reuse Buffers from an earlier block, or null
+     * @return One row per node, then the site categories; the tip rows hold ASCII nucleotides
+     */
+    private byte[][] simulateBlock(RandomContext random, int siteCount, int block, byte[][] reuse) {
+        int start = block * blockSize;
+        int length = Math.min(blockSize, siteCount - start);
+        int nodeCount = tree.getNodeCount();
+        byte[][] states = reuse;
+        if (states == null) {
+            // One row per node plus a last row for the site categories
+            states = new byte[nodeCount + 1][blockSize];
+        }
+        byte[] categories = states[nodeCount];
+        int matrixSize = stateCount * stateCount;
+
+        int root = preOrder[0];
+        byte[] rootStates = states[root];
+        for (int i = 0; i < length; i++) {
+            categories[i] = (byte) (categoryCount == 1 ? 0 : random.nextInt(categoryCount));
+            rootStates[i] = (byte) draw(random, rootCumulative, 0);
+        }
+
+        for (int k = 1; k < nodeCount; k++) {
+            int node = preOrder[k];
+            byte[] parentStates = states[tree.getParent(node)];
+            byte[] nodeStates = states[node];
+            double[] table = branchCumulative[node];
+            for (int i = 0; i < length; i++) {
+                nodeStates[i] = (byte) draw(random, table, categories[i] * matrixSize + parentStates[i] * stateCount);
+            }
+        }
+
+        // Tips are nodes 0..n-1, so their rows double as the output once converted
+        for (int tip = 0; tip < tree.getTipCount(); tip++) {
+            byte[] tipStates = states[tip];
+            for (int i = 0; i < length; i++) {
+                tipStates[i] = NUCLEOTIDES[tipStates[i]];
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Draws a state from a cumulative distribution stored at an offset.
+     */
+    private int draw(RandomContext random, double[] cumulative, int offset) {
+        double u = random.nextDouble();
+        int last = stateCount - 1;
+        int state = 0;
+        while (state < last && u >= cumulative[offset + state]) {
+            state++;
+        }
+        return state;
+    }
+
+    /**
+     * Returns the normalized running sum of n values starting at an offset.
+     */
+    private static double[] cumulative(double[] values, int offset, int n) {
+        double[] sums = new double[n];
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            sum += values[offset + i];
+            sums[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            sums[i] /= sum;
+        }
+        return sums;
+    }
+
+    /**
+     * Gets the number of threads used for simulation.
+     *
+     * @return The thread count
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads used for simulation.
+     * The output does not depend on the thread count.
+     *
+     * @param threadCount The thread count (1 simulates on the calling thread)
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Gets the number of sites per block.
+     *
+     * @return The block size
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Sets the number of sites per block. Each block draws from its own
+     * random context, so the output depends on the block size.
+     *
+     * @param blockSize The block size
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.blockSize = blockSize;
+    }
+}
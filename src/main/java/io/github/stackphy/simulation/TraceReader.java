@@ -0,0 +1,214 @@
+package io.github.stackphy.simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads a trace written by {@link TraceWriter}, one block of rows at a time.
+ * A block cut short at the end of the file, as left by a run that was
+ * stopped while writing, is ignored, so a trace can be read while it is
+ * still being written.
+ */
+public class TraceReader implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final DataInputStream in;
+    private final List<String> columnNames;
+    private long[] states = new long[0];
+    private double[][] columns;
+    private int rows;
+
+    /**
+     * Opens a trace and reads its header.
+     *
+     * @param path The trace file
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    public TraceReader(Path path) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_BYTES));
+        try {
+            byte[] magic = new byte[TraceWriter.MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, TraceWriter.MAGIC)) {
+                throw new IOException(path + " is not a trace file");
+            }
+            int version = in.readInt();
+            if (version != TraceWriter.FORMAT_VERSION) {
+                throw new IOException("Unsupported trace format version " + version);
+            }
+            int columnCount = in.readInt();
+            List<String> names = new ArrayList<>();
+            for (int c = 0; c < columnCount; c++) {
+                byte[] name = new byte[in.readInt()];
+                in.readFully(name);
+                names.add(new String(name, StandardCharsets.UTF_8));
+            }
+            this.columnNames = Collections.unmodifiableList(names);
+            this.columns = new double[columnCount][0];
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next block of rows.
+     *
+     * @return false at the end of the trace
+     * @throws IOException if the file cannot be read
+     */
+    public boolean readBlock() throws IOException {
+        rows = 0;
+        int count;
+        try {
+            count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Corrupt trace block");
+            }
+            if (states.length < count) {
+                states = new long[count];
+                for (int c = 0; c < columns.length; c++) {
+                    columns[c] = new double[count];
+                }
+            }
+            for (int r = 0; r < count; r++) {
+                states[r] = in.readLong();
+            }
+            for (double[] column : columns) {
+                for (int r = 0; r < count; r++) {
+                    column[r] = in.readDouble();
+                }
+            }
+        } catch (EOFException e) {
+            return false;
+        }
+        rows = count;
+        return true;
+    }
+
+    /**
+     * Gets the number of rows in the current block.
+     *
+     * @return The row count
+     */
+    public int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Gets the state number of a row of the current block.
+     *
+     * @param row The row index in the block
+     * @return The state number
+     */
+    public long getState(int row) {
+        return states[row];
+    }
+
+    /**
+     * Gets a value of the current block.
+     *
+     * @param column The column index
+     * @param row The row index in the block
+     * @return The value
+     */
+    public double getValue(int column, int row) {
+        return columns[column][row];
+    }
+
+    /**
+     * Gets the column names.
+     *
+     * @return The names
+     */
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * Reads the rest of the trace into a table. State numbers are not kept.
+     *
+     * @return The rows not yet read
+     * @throws IOException if the file cannot be read
+     */
+    public SampleTable readTable() throws IOException {
+        List<double[][]> blocks = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        int total = 0;
+        while (readBlock()) {
+            double[][] copy = new double[columns.length][];
+            for (int c = 0; c < columns.length; c++) {
+                copy[c] = Arrays.copyOf(columns[c], rows);
+            }
+            blocks.add(copy);
+            sizes.add(rows);
+            total = Math.addExact(total, rows);
+        }
+        SampleTable table = new SampleTable(columnNames, total);
+        int offset = 0;
+        for (int b = 0; b < blocks.size(); b++) {
+            for (int c = 0; c < columns.length; c++) {
+                System.arraycopy(blocks.get(b)[c], 0, table.getColumn(c), offset, sizes.get(b));
+            }
+            offset += sizes.get(b);
+        }
+        return table;
+    }
+
+    /**
+     * Writes the rest of the trace as tab-delimited text: a header line
+     * starting with "state", then one line per row, as read by Tracer and
+     * similar tools.
+     *
+     * @param out The destination; it is not closed
+     * @throws IOException if the trace cannot be read or the text written
+     */
+    public void writeText(Writer out) throws IOException {
+        StringBuilder line = new StringBuilder("state");
+        for (String name : columnNames) {
+            line.append('\t').append(name);
+        }
+        out.write(line.append('\n').toString());
+        while (readBlock()) {
+            for (int r = 0; r < rows; r++) {
+                line.setLength(0);
+                line.append(states[r]);
+                for (double[] column : columns) {
+                    line.append('\t').append(column[r]);
+                }
+                out.write(line.append('\n').toString());
+            }
+        }
+    }
+
+    /**
+     * Converts a binary trace to tab-delimited text.
+     *
+     * @param trace The binary trace
+     * @param text The text file to write, replacing any existing file
+     * @throws IOException if the trace cannot be read or the text written
+     */
+    public static void convertToText(Path trace, Path text) throws IOException {
+        try (TraceReader reader = new TraceReader(trace);
+                BufferedWriter out = Files.newBufferedWriter(text, StandardCharsets.UTF_8)) {
+            reader.writeText(out);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
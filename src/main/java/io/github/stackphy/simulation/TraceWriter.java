@@ -0,0 +1,423 @@
+package io.github.stackphy.simulation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes sampler output (one row of doubles per sample, tagged with its
+ * state number) to a binary columnar trace file on a background thread.
+ * <p>
+ * Rows are copied into blocks laid out by column. A full block is handed to
+ * the writer thread through a bounded queue, and its buffer comes back
+ * through a pool once written, so after warm-up no memory is allocated per
+ * row. The sampler waits only if the writer falls a whole queue of blocks
+ * behind. A partial block is also handed over once the flush interval has
+ * passed since the last hand-over: by the sampler when it writes a row, or,
+ * if the sampler is busy elsewhere, by the writer thread, which wakes up
+ * when the queue has been idle for the interval and takes the partial block
+ * itself. So rows reach the file within about one flush interval even if
+ * the sampler pauses. The block being filled is guarded by a lock that the
+ * writer thread only tries, never waits for, so the two threads cannot
+ * deadlock.
+ * <p>
+ * The file starts with the magic bytes {@code STKTRACE}, a format version,
+ * the column count and the column names (each a length and UTF-8 bytes).
+ * Blocks follow until the end of the file: a row count r, r state numbers
+ * as longs, then r doubles for each column in turn. Everything is
+ * big-endian. {@link TraceReader} reads the format and converts it to
+ * tab-delimited text.
+ */
+public class TraceWriter implements Closeable {
+    static final byte[] MAGIC = "STKTRACE".getBytes(StandardCharsets.US_ASCII);
+    static final int FORMAT_VERSION = 1;
+
+    /** Default number of rows per block. */
+    public static final int DEFAULT_BLOCK_ROWS = 256;
+    /** Default number of blocks that may wait for the writer thread. */
+    public static final int DEFAULT_QUEUE_BLOCKS = 16;
+    /** Default longest time a row waits before it is handed to the writer thread. */
+    public static final long DEFAULT_FLUSH_MILLIS = 1000;
+
+    private static final Block END = new Block(0, 0);
+    private static final long MIN_POLL_NANOS = 1_000_000L; // Writer thread wakes at most once per ms
+
+    private final FileChannel channel;
+    private final List<String> columnNames;
+    private final int columnCount;
+    private final int blockRows;
+    private final long flushNanos;
+    private final BlockingQueue<Block> queue;
+    private final BlockingQueue<Block> free;
+    private final int maxBlocks; // The block being filled, the queue and the block being written
+    private final Thread thread;
+    private final ReentrantLock lock = new ReentrantLock(); // Guards the block being filled
+    private volatile IOException failure;
+    private Block current;
+    private int allocated;
+    private volatile long lastHandOff;
+    private long rowCount;
+    private boolean closed;
+
+    /**
+     * Creates a writer with the default block size, queue length and flush
+     * interval, replacing any existing file.
+     *
+     * @param path The output file
+     * @param columnNames The column names
+     * @throws IOException if the file cannot be opened or the header written
+     */
+    public TraceWriter(Path path, List<String> columnNames) throws IOException {
+        this(path, columnNames, DEFAULT_BLOCK_ROWS, DEFAULT_QUEUE_BLOCKS, DEFAULT_FLUSH_MILLIS);
+    }
+
+    /**
+     * Creates a writer, replacing any existing file.
+     *
+     * @param path The output file
+     * @param columnNames The column names
+     * @param blockRows The number of rows per block
+     * @param queueBlocks The number of blocks that may wait for the writer thread
+     * @param flushMillis The longest time a row waits before it is handed to the writer thread
+     * @throws IOException if the file cannot be opened or the header written
+     */
+    public TraceWriter(Path path, List<String> columnNames, int blockRows, int queueBlocks, long flushMillis)
+            throws IOException {
+        if (blockRows < 1 || queueBlocks < 1) {
+            throw new IllegalArgumentException("Block size and queue length must be positive");
+        }
+        if (flushMillis < 0) {
+            throw new IllegalArgumentException("Flush interval cannot be negative");
+        }
+        this.columnNames = Collections.unmodifiableList(new ArrayList<>(columnNames));
+        this.columnCount = columnNames.size();
+        this.blockRows = blockRows;
+        this.flushNanos = flushMillis * 1_000_000L;
+        this.maxBlocks = queueBlocks + 2;
+        this.queue = new ArrayBlockingQueue<>(queueBlocks + 1); // Room for the end marker
+        this.free = new ArrayBlockingQueue<>(maxBlocks);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            writeHeader();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.current = takeBuffer();
+        this.lastHandOff = System.nanoTime();
+        this.thread = new Thread(this::drain, "trace-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void writeHeader() throws IOException {
+        List<byte[]> names = new ArrayList<>();
+        int size = MAGIC.length + 2 * Integer.BYTES;
+        for (String name : columnNames) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            names.add(bytes);
+            size += Integer.BYTES + bytes.length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(size);
+        header.put(MAGIC).putInt(FORMAT_VERSION).putInt(columnCount);
+        for (byte[] name : names) {
+            header.putInt(name.length).put(name);
+        }
+        header.flip();
+        writeFully(header);
+    }
+
+    /**
+     * Adds one row. The values are copied, so the array can be reused.
+     *
+     * @param state The state number of the row, such as the iteration
+     * @param values One value per column
+     * @throws IOException if the writer thread has failed or was interrupted while waiting
+     */
+    public void write(long state, double[] values) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Trace writer is closed");
+        }
+        if (values.length != columnCount) {
+            throw new IllegalArgumentException("Expected " + columnCount + " values, got " + values.length);
+        }
+        checkFailure();
+        lock.lock();
+        try {
+            Block block = current;
+            int row = block.rows++;
+            block.states[row] = state;
+            double[] data = block.data;
+            for (int c = 0, i = row; c < columnCount; c++, i += blockRows) {
+                data[i] = values[c];
+            }
+            rowCount++;
+            if (block.rows == blockRows || System.nanoTime() - lastHandOff >= flushNanos) {
+                handOff(null);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands over all rows written so far and waits until they are in the file.
+     *
+     * @throws IOException if the writer thread has failed or was interrupted while waiting
+     */
+    public void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        lock.lock();
+        try {
+            handOff(done);
+        } finally {
+            lock.unlock();
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing the trace");
+        }
+        checkFailure();
+    }
+
+    /**
+     * Writes the remaining rows, stops the writer thread and closes the file.
+     *
+     * @throws IOException if any block could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            lock.lock();
+            try {
+                handOff(null);
+                put(END);
+            } finally {
+                lock.unlock();
+            }
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the trace");
+        } finally {
+            closed = true;
+            channel.close();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Gives the current block to the writer thread and starts a new one.
+     * Called with the lock held.
+     */
+    private void handOff(CountDownLatch done) throws IOException {
+        Block block = current;
+        block.done = done;
+        if (block.rows == 0 && done == null) {
+            lastHandOff = System.nanoTime();
+            return;
+        }
+        put(block);
+        current = takeBuffer();
+        lastHandOff = System.nanoTime();
+    }
+
+    private void put(Block block) throws IOException {
+        try {
+            queue.put(block);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the trace writer");
+        }
+    }
+
+    /**
+     * Takes a written block for reuse, allocating new ones until every slot
+     * is covered before waiting for the writer thread to return one.
+     * Called with the lock held, or from the constructor.
+     */
+    private Block takeBuffer() throws IOException {
+        Block block = pollBuffer();
+        if (block == null) {
+            try {
+                block = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the trace writer");
+            }
+        }
+        block.rows = 0;
+        block.done = null;
+        return block;
+    }
+
+    /**
+     * Takes a written block, or allocates one if not every slot is covered yet.
+     *
+     * @return The block, not yet reset, or null if the writer thread holds all of them
+     */
+    private Block pollBuffer() {
+        Block block = free.poll();
+        if (block == null && allocated < maxBlocks) {
+            allocated++;
+            return new Block(blockRows, columnCount);
+        }
+        return block;
+    }
+
+    /**
+     * Runs on the writer thread: writes blocks in order until the end marker,
+     * taking a partial block itself whenever the queue has been idle for the
+     * flush interval. After a failure, blocks are still taken and returned so
+     * the sampler never waits forever, and the error is reported on its next call.
+     */
+    private void drain() {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(Integer.BYTES + blockRows * Long.BYTES * (columnCount + 1));
+        while (true) {
+            Block block;
+            try {
+                long wait = Math.max(MIN_POLL_NANOS, lastHandOff + flushNanos - System.nanoTime());
+                block = queue.poll(wait, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                failure = new InterruptedIOException("Trace writer thread was interrupted");
+                return;
+            }
+            if (block == null) {
+                block = takeOverdue();
+                if (block == null) {
+                    continue;
+                }
+            }
+            if (block == END) {
+                return;
+            }
+            if (failure == null && block.rows > 0) {
+                try {
+                    writeBlock(block, bytes);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (block.done != null) {
+                block.done.countDown();
+            }
+            free.offer(block);
+        }
+    }
+
+    /**
+     * Takes the partial block from the sampler if it is overdue, the queue
+     * is empty and the sampler is not using it, swapping in a free block.
+     *
+     * @return The overdue block, or null if there is none to take now
+     */
+    private Block takeOverdue() {
+        if (!lock.tryLock()) {
+            return null; // The sampler is writing and will hand the block over itself
+        }
+        try {
+            Block block = current;
+            if (block.rows == 0 || !queue.isEmpty()
+                    || System.nanoTime() - lastHandOff < flushNanos) {
+                return null;
+            }
+            Block next = pollBuffer();
+            if (next == null) {
+                return null;
+            }
+            next.rows = 0;
+            next.done = null;
+            current = next;
+            lastHandOff = System.nanoTime();
+            return block;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeBlock(Block block, ByteBuffer bytes) throws IOException {
+        int rows = block.rows;
+        bytes.clear();
+        bytes.putInt(rows);
+        LongBuffer states = bytes.asLongBuffer();
+        states.put(block.states, 0, rows);
+        bytes.position(bytes.position() + rows * Long.BYTES);
+        DoubleBuffer columns = bytes.asDoubleBuffer();
+        for (int c = 0; c < columnCount; c++) {
+            columns.put(block.data, c * blockRows, rows);
+        }
+        bytes.position(bytes.position() + rows * columnCount * Double.BYTES);
+        bytes.flip();
+        writeFully(bytes);
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw new IOException("Trace could not be written", e);
+        }
+    }
+
+    /**
+     * Gets the column names.
+     *
+     * @return The names
+     */
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * Gets the number of rows written so far.
+     *
+     * @return The row count
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Rows stored by column: column c of row r is at data[c·capacity + r].
+     */
+    private static final class Block {
+        final long[] states;
+        final double[] data;
+        int rows;
+        CountDownLatch done; // Counted down once the block is in the file
+
+        Block(int capacity, int columnCount) {
+            this.states = new long[capacity];
+            this.data = new double[capacity * columnCount];
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package io.github.stackphy.substitution;
+
+/**
+ * Eigen-decomposition of a time-reversible rate matrix, Q = U·diag(λ)·U⁻¹.
+ * Instances are immutable, so a decomposition can be shared between threads
+ * and reused for any number of branch lengths.
+ */
+public final class EigenSystem {
+    private static final int MAX_SWEEPS = 100;
+
+    private final int stateCount;
+    private final double[] eigenvalues;
+    private final double[] eigenvectors; // U, row-major
+    private final double[] inverseEigenvectors; // U⁻¹, row-major
+
+    private EigenSystem(int stateCount, double[] eigenvalues, double[] eigenvectors, double[] inverseEigenvectors) {
+        this.stateCount = stateCount;
+        this.eigenvalues = eigenvalues;
+        this.eigenvectors = eigenvectors;
+        this.inverseEigenvectors = inverseEigenvectors;
+    }
+
+    /**
+     * Decomposes a reversible rate matrix.
+     * Reversibility makes D^½·Q·D^-½ symmetric (D = diag(π)), so it can be
+     * diagonalized with Jacobi rotations and the eigenvectors of Q recovered
+     * without a general matrix inverse.
+     *
+     * @param q The rate matrix, row-major
+     * @param frequencies The equilibrium frequencies of Q
+     * @return The eigensystem
+     */
+    public static EigenSystem decomposeReversible(double[] q, double[] frequencies) {
+        int n = frequencies.length;
+        double[] sqrtPi = new double[n];
+        for (int i = 0; i < n; i++) {
+            // Floor zero frequencies so the similarity transform stays finite
+            sqrtPi[i] = Math.sqrt(Math.max(frequencies[i], 1e-20));
+        }
+
+        double[] a = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                a[i * n + j] = sqrtPi[i] * q[i * n + j] / sqrtPi[j];
+            }
+        }
+        // Remove rounding asymmetry before the Jacobi sweeps
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double mean = 0.5 * (a[i * n + j] + a[j * n + i]);
+                a[i * n + j] = mean;
+                a[j * n + i] = mean;
+            }
+        }
+
+        double[] v = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            v[i * n + i] = 1.0;
+        }
+        jacobi(a, v, n);
+
+        double[] eigenvalues = new double[n];
+        double[] eigenvectors = new double[n * n];
+        double[] inverse = new double[n * n];
+        for (int k = 0; k < n; k++) {
+            eigenvalues[k] = a[k * n + k];
+        }
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < n; k++) {
+                eigenvectors[i * n + k] = v[i * n + k] / sqrtPi[i];
+                inverse[k * n + i] = v[i * n + k] * sqrtPi[i];
+            }
+        }
+
+        return new EigenSystem(n, eigenvalues, eigenvectors, inverse);
+    }
+
+    /**
+     * Diagonalizes a symmetric matrix in place with cyclic Jacobi rotations.
+     *
+     * @param a The symmetric matrix; its diagonal holds the eigenvalues on return
+     * @param v Accumulated rotations; its columns hold the eigenvectors on return
+     * @param n The matrix dimension
+     */
+    private static void jacobi(double[] a, double[] v, int n) {
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            double offDiagonal = 0.0;
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    offDiagonal += a[i * n + j] * a[i * n + j];
+                }
+            }
+            if (offDiagonal < 1e-30) {
+                return;
+            }
+
+            for (int p = 0; p < n; p++) {
+                for (int r = p + 1; r < n; r++) {
+                    double apr = a[p * n + r];
+                    if (apr == 0.0) {
+                        continue;
+                    }
+                    double theta = (a[r * n + r] - a[p * n + p]) / (2.0 * apr);
+                    double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1.0));
+                    if (theta == 0.0) {
+                        t = 1.0;
+                    }
+                    double c = 1.0 / Math.sqrt(t * t + 1.0);
+                    double s = t * c;
+
+                    for (int k = 0; k < n; k++) {
+                        double akp = a[k * n + p];
+                        double akr = a[k * n + r];
+                        a[k * n + p] = c * akp - s * akr;
+                        a[k * n + r] = s * akp + c * akr;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double apk = a[p * n + k];
+                        double ark = a[r * n + k];
+                        a[p * n + k] = c * apk - s * ark;
+                        a[r * n + k] = s * apk + c * ark;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double vkp = v[k * n + p];
+                        double vkr = v[k * n + r];
+                        v[k * n + p] = c * vkp - s * vkr;
+                        v[k * n + r] = s * vkp + c * vkr;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes P(t) = U·diag(exp(λt))·U⁻¹.
+     * Small negative values from rounding are clamped to zero.
+     *
+     * @param distance The distance t
+     * @param matrix Output array of length stateCount², row-major
+     */
+    public void getTransitionProbabilities(double distance, double[] matrix) {
+        int n = stateCount;
+        double[] expLambda = new double[n];
+        for (int k = 0; k < n; k++) {
+            expLambda[k] = Math.exp(eigenvalues[k] * distance);
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double sum = 0.0;
+                for (int k = 0; k < n; k++) {
+                    sum += eigenvectors[i * n + k] * expLambda[k] * inverseEigenvectors[k * n + j];
+                }
+                matrix[i * n + j] = sum > 0.0 ? sum : 0.0;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of states.
+     *
+     * @return The state count
+     */
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * Gets an eigenvalue.
+     *
+     * @param k The eigenvalue index
+     * @return The eigenvalue
+     */
+    public double getEigenvalue(int k) {
+        return eigenvalues[k];
+    }
+}
@@ -0,0 +1,32 @@
+package io.github.stackphy.substitution;
+
+import io.github.stackphy.model.Parameter;
+import io.github.stackphy.model.Primitive;
+
+/**
+ * Implementation of the Felsenstein 1981 (F81) substitution model.
+ * This is HKY with kappa = 1.
+ */
+public class F81 extends HKY {
+    
+    /**
+     * Creates a new F81 substitution model.
+     * 
+     * @param baseFrequencies The base frequencies parameter
+     *        Expected to be an array of 4 values summing to 1.0
+     *        (frequencies for A, C, G, T)
+     */
+    public F81(Parameter baseFrequencies) {
+        super(new Primitive(1.0), baseFrequencies);
+    }
+    
+    @Override
+    public String getModelType() {
+        return "F81";
+    }
+    
+    @Override
+    public Parameter[] getParameters() {
+        return new Parameter[] { getBaseFrequencies() };
+    }
+}
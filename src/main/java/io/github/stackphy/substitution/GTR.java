@@ -1,12 +1,11 @@
 package io.github.stackphy.substitution;
 
-import io.github.stackphy.model.Model;
 import io.github.stackphy.model.Parameter;
 
 /**
  * Implementation of the General Time Reversible (GTR) substitution model.
  */
-public class GTR implements Model {
+public class GTR extends ReversibleNucleotideModel {
     private final Parameter rateParameters;
     private final Parameter baseFrequencies;
     
@@ -141,4 +140,14 @@ public class GTR implements Model {
         
         return values;
     }
+    
+    @Override
+    public double[] getFrequencies() {
+        return getBaseFrequencyValues();
+    }
+    
+    @Override
+    protected double[] getExchangeabilities() {
+        return getRateParameterValues();
+    }
 }
@@ -1,14 +1,20 @@
 package io.github.stackphy.substitution;
 
-import io.github.stackphy.model.Model;
 import io.github.stackphy.model.Parameter;
 
 /**
  * Implementation of the Hasegawa-Kishino-Yano (HKY) substitution model.
+ * Transition probabilities use the closed-form HKY solution rather than an
+ * eigen-decomposition: each P(t) costs three exponentials and writes straight
+ * into the output array. JC69, K80 and F81 are special cases and share it.
  */
-public class HKY implements Model {
+public class HKY extends ReversibleNucleotideModel {
+    // Floor for purine/pyrimidine frequency sums, as in EigenSystem
+    private static final double MIN_GROUP_FREQUENCY = 1e-20;
+    
     private final Parameter kappa;
     private final Parameter baseFrequencies;
+    private volatile Coefficients coefficients;
     
     /**
      * Creates a new HKY substitution model.
@@ -100,4 +106,98 @@ public class HKY implements Model {
         
         return values;
     }
+    
+    @Override
+    public double[] getFrequencies() {
+        return getBaseFrequencyValues();
+    }
+    
+    @Override
+    protected double[] getExchangeabilities() {
+        double kappa = getKappaValue();
+        return new double[] { 1.0, kappa, 1.0, 1.0, kappa, 1.0 };
+    }
+    
+    /**
+     * Computes P(t) in closed form. With β normalizing the mean rate to one,
+     * Π the frequency sum of the purines or pyrimidines containing j and
+     * A = 1 + Π(κ - 1):
+     * <ul>
+     *   <li>P_ii = π_i + π_i(1/Π - 1)e^(-βt) + ((Π - π_i)/Π)e^(-βtA)</li>
+     *   <li>P_ij (transition) = π_j + π_j(1/Π - 1)e^(-βt) - (π_j/Π)e^(-βtA)</li>
+     *   <li>P_ij (transversion) = π_j(1 - e^(-βt))</li>
+     * </ul>
+     */
+    @Override
+    public void getTransitionProbabilities(double distance, double[] matrix) {
+        Coefficients c = getCoefficients();
+        double decay = Math.exp(-c.beta * distance);
+        double purineDecay = Math.exp(-c.beta * distance * c.purineA);
+        double pyrimidineDecay = Math.exp(-c.beta * distance * c.pyrimidineA);
+        
+        for (int j = 0; j < STATES; j++) {
+            // A and G (0, 2) are purines, C and T (1, 3) pyrimidines
+            boolean purine = (j & 1) == 0;
+            double pi = c.frequencies[j];
+            double group = purine ? c.purines : c.pyrimidines;
+            double groupDecay = purine ? purineDecay : pyrimidineDecay;
+            double shared = pi + pi * (1.0 / group - 1.0) * decay;
+            double transition = shared - (pi / group) * groupDecay;
+            double transversion = pi * (1.0 - decay);
+            
+            for (int i = 0; i < STATES; i++) {
+                double value;
+                if (i == j) {
+                    value = shared + ((group - pi) / group) * groupDecay;
+                } else if ((i & 1) == (j & 1)) {
+                    value = transition;
+                } else {
+                    value = transversion;
+                }
+                matrix[i * STATES + j] = value > 0.0 ? value : 0.0;
+            }
+        }
+    }
+    
+    /**
+     * Gets the closed-form coefficients for the current parameter values,
+     * recomputing them only when a parameter version changes.
+     * 
+     * @return The coefficients
+     */
+    private Coefficients getCoefficients() {
+        long version = getVersion();
+        Coefficients cached = coefficients;
+        if (cached == null || cached.version != version) {
+            cached = new Coefficients(version, getKappaValue(), getFrequencies());
+            coefficients = cached;
+        }
+        return cached;
+    }
+    
+    /**
+     * Parameter-dependent terms of the closed-form solution.
+     */
+    private static final class Coefficients {
+        private final long version;
+        private final double[] frequencies;
+        private final double purines;
+        private final double pyrimidines;
+        private final double purineA;
+        private final double pyrimidineA;
+        private final double beta;
+        
+        private Coefficients(long version, double kappa, double[] frequencies) {
+            this.version = version;
+            this.frequencies = frequencies;
+            this.purines = Math.max(frequencies[0] + frequencies[2], MIN_GROUP_FREQUENCY);
+            this.pyrimidines = Math.max(frequencies[1] + frequencies[3], MIN_GROUP_FREQUENCY);
+            this.purineA = 1.0 + purines * (kappa - 1.0);
+            this.pyrimidineA = 1.0 + pyrimidines * (kappa - 1.0);
+            
+            double transitions = frequencies[0] * frequencies[2] + frequencies[1] * frequencies[3];
+            double transversions = (frequencies[0] + frequencies[2]) * (frequencies[1] + frequencies[3]);
+            this.beta = 1.0 / (2.0 * (kappa * transitions + transversions));
+        }
+    }
 }
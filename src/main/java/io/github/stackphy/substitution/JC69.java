@@ -0,0 +1,28 @@
+package io.github.stackphy.substitution;
+
+import io.github.stackphy.model.Parameter;
+import io.github.stackphy.model.Primitive;
+
+/**
+ * Implementation of the Jukes-Cantor (JC69) substitution model.
+ * This is HKY with kappa = 1 and equal base frequencies.
+ */
+public class JC69 extends HKY {
+    
+    /**
+     * Creates a new JC69 substitution model.
+     */
+    public JC69() {
+        super(new Primitive(1.0), K80.equalFrequencies());
+    }
+    
+    @Override
+    public String getModelType() {
+        return "JC69";
+    }
+    
+    @Override
+    public Parameter[] getParameters() {
+        return new Parameter[0];
+    }
+}
@@ -0,0 +1,39 @@
+package io.github.stackphy.substitution;
+
+import io.github.stackphy.model.Parameter;
+import io.github.stackphy.model.Primitive;
+
+/**
+ * Implementation of the Kimura two-parameter (K80) substitution model.
+ * This is HKY with equal base frequencies.
+ */
+public class K80 extends HKY {
+    
+    /**
+     * Creates a new K80 substitution model.
+     * 
+     * @param kappa The transition/transversion ratio parameter
+     */
+    public K80(Parameter kappa) {
+        super(kappa, equalFrequencies());
+    }
+    
+    /**
+     * Creates a constant parameter holding four equal base frequencies.
+     * 
+     * @return The frequencies parameter
+     */
+    static Parameter equalFrequencies() {
+        return new Primitive(new Object[] { 0.25, 0.25, 0.25, 0.25 });
+    }
+    
+    @Override
+    public String getModelType() {
+        return "K80";
+    }
+    
+    @Override
+    public Parameter[] getParameters() {
+        return new Parameter[] { getKappa() };
+    }
+}
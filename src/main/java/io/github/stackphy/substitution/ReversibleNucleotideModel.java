@@ -0,0 +1,124 @@
+package io.github.stackphy.substitution;
+
+import io.github.stackphy.model.Parameter;
+
+/**
+ * Base class for time-reversible nucleotide substitution models.
+ * The normalized rate matrix Q is built lazily and decomposed once; the
+ * eigensystem is cached until the version stamp of one of the model's
+ * parameters changes, so each P(t) costs one small matrix product.
+ */
+public abstract class ReversibleNucleotideModel implements SubstitutionModel {
+    /** Number of nucleotide states (A, C, G, T). */
+    public static final int STATES = 4;
+    
+    private volatile CachedEigenSystem cache;
+    private volatile Parameter[] parameters; // Fetched once; getParameters() builds a new array
+    
+    /**
+     * Gets the six exchangeability rates in the order AC, AG, AT, CG, CT, GT.
+     * 
+     * @return The exchangeabilities
+     */
+    protected abstract double[] getExchangeabilities();
+    
+    @Override
+    public int getStateCount() {
+        return STATES;
+    }
+    
+    /**
+     * {@inheritDoc}
+     * This is the largest of the parameter versions. Variable stamps are
+     * never reused, and a rejected proposal puts the earlier stamp back, so
+     * the largest stamp identifies the last accepted change.
+     */
+    @Override
+    public long getVersion() {
+        Parameter[] params = parameters;
+        if (params == null) {
+            params = getParameters();
+            parameters = params;
+        }
+        long version = 0L;
+        for (Parameter parameter : params) {
+            version = Math.max(version, parameter.getVersion());
+        }
+        return version;
+    }
+    
+    /**
+     * Gets the eigensystem of the current rate matrix, rebuilding it only if
+     * a parameter has changed since it was last computed.
+     * 
+     * @return The eigensystem
+     */
+    public EigenSystem getEigenSystem() {
+        long version = getVersion();
+        CachedEigenSystem cached = cache;
+        if (cached == null || cached.version != version) {
+            double[] frequencies = getFrequencies();
+            double[] q = new double[STATES * STATES];
+            buildRateMatrix(getExchangeabilities(), frequencies, q);
+            cached = new CachedEigenSystem(version, EigenSystem.decomposeReversible(q, frequencies));
+            cache = cached;
+        }
+        return cached.eigenSystem;
+    }
+    
+    @Override
+    public void getTransitionProbabilities(double distance, double[] matrix) {
+        getEigenSystem().getTransitionProbabilities(distance, matrix);
+    }
+    
+    /**
+     * Builds a time-reversible rate matrix normalized to one expected
+     * substitution per unit time.
+     * 
+     * @param exchangeabilities The six exchangeability rates (AC, AG, AT, CG, CT, GT)
+     * @param frequencies The four equilibrium frequencies
+     * @param q Output array of length 16 for the rate matrix
+     */
+    static void buildRateMatrix(double[] exchangeabilities, double[] frequencies, double[] q) {
+        int k = 0;
+        for (int i = 0; i < STATES; i++) {
+            for (int j = i + 1; j < STATES; j++) {
+                double rate = exchangeabilities[k++];
+                q[i * STATES + j] = rate * frequencies[j];
+                q[j * STATES + i] = rate * frequencies[i];
+            }
+        }
+        
+        // Diagonals make each row sum to zero; scale so the mean rate is one
+        double meanRate = 0.0;
+        for (int i = 0; i < STATES; i++) {
+            double rowSum = 0.0;
+            for (int j = 0; j < STATES; j++) {
+                if (i != j) {
+                    rowSum += q[i * STATES + j];
+                }
+            }
+            q[i * STATES + i] = -rowSum;
+            meanRate += frequencies[i] * rowSum;
+        }
+        
+        for (int i = 0; i < q.length; i++) {
+            q[i] /= meanRate;
+        }
+    }
+    
+    /**
+     * An eigensystem together with the model version it was built for.
+     * Published through a single volatile field so readers never see a
+     * decomposition paired with the wrong version.
+     */
+    private static final class CachedEigenSystem {
+        private final long version;
+        private final EigenSystem eigenSystem;
+        
+        private CachedEigenSystem(long version, EigenSystem eigenSystem) {
+            this.version = version;
+            this.eigenSystem = eigenSystem;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package io.github.stackphy.substitution;
+
+import io.github.stackphy.model.Model;
+
+/**
+ * Interface for substitution models that can produce transition probabilities.
+ * Used by the likelihood engine to evaluate a PhyloCTMC.
+ */
+public interface SubstitutionModel extends Model {
+    /**
+     * Gets the number of character states (4 for nucleotides).
+     * 
+     * @return The state count
+     */
+    int getStateCount();
+    
+    /**
+     * Gets the equilibrium state frequencies.
+     * 
+     * @return The frequencies, one per state
+     */
+    double[] getFrequencies();
+    
+    /**
+     * Gets a version stamp that increases whenever the model's parameters change.
+     * Values derived from the model (eigensystems, transition matrices) can be
+     * cached for as long as the version stays the same.
+     * 
+     * @return The model version
+     */
+    long getVersion();
+    
+    /**
+     * Computes the transition probability matrix P(t) for a branch.
+     * The rate matrix is normalized to one expected substitution per unit time,
+     * so the distance is measured in expected substitutions per site.
+     * 
+     * @param distance The branch length multiplied by any rate scalers
+     * @param matrix Output array of length stateCount², filled row-major with P[from][to]
+     */
+    void getTransitionProbabilities(double distance, double[] matrix);
+}
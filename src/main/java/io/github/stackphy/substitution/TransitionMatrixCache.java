@@ -0,0 +1,201 @@
+package io.github.stackphy.substitution;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of transition probability matrices for one substitution model.
+ * Matrices are keyed by branch length, category rate and the model version
+ * they were computed under. Entries for earlier versions are left in place,
+ * so they are hit again if a rejected proposal restores that version, and
+ * otherwise age out through LRU eviction.
+ * The number of entries is bounded by a memory budget.
+ * This class is not thread-safe.
+ */
+public class TransitionMatrixCache {
+    /** Default memory budget (16 MB). */
+    public static final long DEFAULT_BUDGET_BYTES = 16L * 1024 * 1024;
+
+    // Rough per-entry overhead for the key, map entry and array headers
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final SubstitutionModel model;
+    private final int matrixSize;
+    private final LinkedHashMap<Key, double[]> entries;
+    private long budgetBytes;
+    private int capacity;
+    private final Key probe = new Key(); // Reused for lookups; stored keys are copies
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a new cache with the default memory budget.
+     *
+     * @param model The substitution model
+     */
+    public TransitionMatrixCache(SubstitutionModel model) {
+        this(model, DEFAULT_BUDGET_BYTES);
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param model The substitution model
+     * @param budgetBytes The approximate memory budget in bytes
+     */
+    public TransitionMatrixCache(SubstitutionModel model, long budgetBytes) {
+        this.model = model;
+        this.matrixSize = model.getStateCount() * model.getStateCount();
+        this.entries = new LinkedHashMap<Key, double[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, double[]> eldest) {
+                return size() > capacity;
+            }
+        };
+        setBudget(budgetBytes);
+    }
+
+    /**
+     * Copies P(branchLength·rate) into an output array, computing it on a miss.
+     *
+     * @param branchLength The branch length (already scaled by any clock rate)
+     * @param rate The rate of the site category
+     * @param out The output array
+     * @param offset The position in the output array to write the matrix at
+     */
+    public void getTransitionProbabilities(double branchLength, double rate, double[] out, int offset) {
+        probe.set(model.getVersion(), branchLength, rate);
+        double[] matrix = entries.get(probe);
+        if (matrix == null) {
+            misses++;
+            matrix = new double[matrixSize];
+            model.getTransitionProbabilities(branchLength * rate, matrix);
+            if (capacity > 0) {
+                entries.put(probe.copy(), matrix);
+            }
+        } else {
+            hits++;
+        }
+        System.arraycopy(matrix, 0, out, offset, matrixSize);
+    }
+
+    /**
+     * Sets the memory budget, evicting least-recently-used entries if it shrinks.
+     *
+     * @param budgetBytes The approximate memory budget in bytes
+     */
+    public void setBudget(long budgetBytes) {
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("Cache budget cannot be negative");
+        }
+        this.budgetBytes = budgetBytes;
+        long entryBytes = 8L * matrixSize + ENTRY_OVERHEAD_BYTES;
+        this.capacity = (int) Math.min(Integer.MAX_VALUE, budgetBytes / entryBytes);
+
+        Iterator<Key> it = entries.keySet().iterator();
+        while (entries.size() > capacity && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Gets the memory budget.
+     *
+     * @return The budget in bytes
+     */
+    public long getBudget() {
+        return budgetBytes;
+    }
+
+    /**
+     * Gets the maximum number of matrices the budget allows.
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of cached matrices.
+     *
+     * @return The entry count
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of lookups served from the cache.
+     *
+     * @return The hit count
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that had to compute a matrix.
+     *
+     * @return The miss count
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Resets the hit and miss counters.
+     */
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Removes all cached matrices.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Cache key comparing the model version, and branch length and rate by
+     * their exact bit patterns. Only the lookup probe is ever changed; keys
+     * in the map are copies and stay fixed.
+     */
+    private static final class Key {
+        private long version;
+        private long branchLength;
+        private long rate;
+
+        private void set(long version, double branchLength, double rate) {
+            this.version = version;
+            this.branchLength = Double.doubleToLongBits(branchLength);
+            this.rate = Double.doubleToLongBits(rate);
+        }
+
+        private Key copy() {
+            Key key = new Key();
+            key.version = version;
+            key.branchLength = branchLength;
+            key.rate = rate;
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            return version == that.version && branchLength == that.branchLength && rate == that.rate;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = (version * 31 + branchLength) * 31 + rate;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package io.github.stackphy.tree;
+
+import io.github.stackphy.model.StackItem;
+import io.github.stackphy.model.StackItemType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A rooted binary time tree stored as flat arrays.
+ * Tips are numbered 0..n-1 and internal nodes n..2n-2. Each node has a parent,
+ * two children (internal nodes only) and a height; the branch above a node
+ * spans from its height to the height of its parent.
+ * <p>
+ * Heights can be set freely. The topology changes only through
+ * {@link #exchange(int, int)} and {@link #moveSubtree(int, int, double)},
+ * which keep the arrays consistent and drop the cached post-order traversal.
+ */
+public class Tree implements StackItem {
+    /** Index used for a missing parent or child. */
+    public static final int NONE = -1;
+
+    private final int tipCount;
+    private final int nodeCount;
+    private final String[] taxa;
+    private final int[] parent;
+    private final int[] leftChild;
+    private final int[] rightChild;
+    private final double[] heights;
+    private int root;
+    private int[] postOrder; // Cached traversal, rebuilt when the topology changes
+    private Map<String, Integer> taxonIndex; // Built on first lookup
+
+    /**
+     * Creates a new tree from node arrays.
+     * The arrays are used directly, not copied.
+     *
+     * @param taxa The tip names, one per tip
+     * @param parent The parent of each node, or NONE for the root
+     * @param leftChild The left child of each node, or NONE for tips
+     * @param rightChild The right child of each node, or NONE for tips
+     * @param heights The height of each node
+     * @throws IllegalArgumentException if the arrays do not describe a rooted binary tree
+     */
+    public Tree(String[] taxa, int[] parent, int[] leftChild, int[] rightChild, double[] heights) {
+        if (taxa == null || taxa.length < 2) {
+            throw new IllegalArgumentException("A tree needs at least two taxa");
+        }
+
+        this.tipCount = taxa.length;
+        this.nodeCount = 2 * tipCount - 1;
+
+        if (parent.length != nodeCount || leftChild.length != nodeCount
+                || rightChild.length != nodeCount || heights.length != nodeCount) {
+            throw new IllegalArgumentException("Node arrays must have length " + nodeCount);
+        }
+
+        this.taxa = taxa;
+        this.parent = parent;
+        this.leftChild = leftChild;
+        this.rightChild = rightChild;
+        this.heights = heights;
+        this.root = NONE;
+
+        for (int i = 0; i < nodeCount; i++) {
+            if (parent[i] == NONE) {
+                if (root != NONE) {
+                    throw new IllegalArgumentException("Tree has more than one root");
+                }
+                root = i;
+            }
+            boolean tip = i < tipCount;
+            if (tip != (leftChild[i] == NONE) || tip != (rightChild[i] == NONE)) {
+                throw new IllegalArgumentException("Node " + i + " has the wrong number of children");
+            }
+        }
+
+        if (root == NONE) {
+            throw new IllegalArgumentException("Tree has no root");
+        }
+    }
+
+    /**
+     * Gets the number of tips.
+     *
+     * @return The tip count
+     */
+    public int getTipCount() {
+        return tipCount;
+    }
+
+    /**
+     * Gets the total number of nodes (2n-1 for n tips).
+     *
+     * @return The node count
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Gets the root node index.
+     *
+     * @return The root index
+     */
+    public int getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns whether a node is a tip.
+     *
+     * @param node The node index
+     * @return true if the node is a tip
+     */
+    public boolean isTip(int node) {
+        return node < tipCount;
+    }
+
+    /**
+     * Gets the parent of a node.
+     *
+     * @param node The node index
+     * @return The parent index, or NONE for the root
+     */
+    public int getParent(int node) {
+        return parent[node];
+    }
+
+    /**
+     * Gets the left child of a node.
+     *
+     * @param node The node index
+     * @return The left child index, or NONE for tips
+     */
+    public int getLeftChild(int node) {
+        return leftChild[node];
+    }
+
+    /**
+     * Gets the right child of a node.
+     *
+     * @param node The node index
+     * @return The right child index, or NONE for tips
+     */
+    public int getRightChild(int node) {
+        return rightChild[node];
+    }
+
+    /**
+     * Gets the other child of a node's parent.
+     *
+     * @param node The node index
+     * @return The sibling index, or NONE for the root
+     */
+    public int getSibling(int node) {
+        int p = parent[node];
+        if (p == NONE) {
+            return NONE;
+        }
+        return leftChild[p] == node ? rightChild[p] : leftChild[p];
+    }
+
+    /**
+     * Gets the height of a node.
+     *
+     * @param node The node index
+     * @return The node height
+     */
+    public double getHeight(int node) {
+        return heights[node];
+    }
+
+    /**
+     * Sets the height of a node.
+     *
+     * @param node The node index
+     * @param height The new height
+     */
+    public void setHeight(int node, double height) {
+        heights[node] = height;
+    }
+
+    /**
+     * Swaps two subtrees: each of the two nodes takes the other's place
+     * under its parent. Neither node may be an ancestor of the other, and
+     * both must have a parent. Swapping the same pair again undoes the change.
+     *
+     * @param node1 The first node
+     * @param node2 The second node
+     * @throws IllegalArgumentException if either node is the root
+     */
+    public void exchange(int node1, int node2) {
+        int parent1 = parent[node1];
+        int parent2 = parent[node2];
+        if (parent1 == NONE || parent2 == NONE) {
+            throw new IllegalArgumentException("Cannot exchange the root");
+        }
+        replaceChild(parent1, node1, node2);
+        replaceChild(parent2, node2, node1);
+        parent[node1] = parent2;
+        parent[node2] = parent1;
+        postOrder = null;
+    }
+
+    /**
+     * Prunes the subtree below a node and regrafts it on another branch.
+     * The node's parent is taken out from between the node and its sibling,
+     * which takes the parent's place, and is put back on the branch above the
+     * target at the given height; if the target is the root, the parent
+     * becomes the new root. The node keeps its child slot, and the target
+     * takes the slot the sibling had, so moving the node back onto its old
+     * sibling at the old height restores the tree exactly.
+     *
+     * @param node The node whose subtree moves; must not be the root
+     * @param target The node whose branch receives the subtree; must not be in the subtree
+     * @param height The new height of the node's parent
+     * @throws IllegalArgumentException if the node is the root or the target is the node's parent
+     */
+    public void moveSubtree(int node, int target, double height) {
+        int moving = parent[node];
+        if (moving == NONE) {
+            throw new IllegalArgumentException("Cannot move the subtree of the root");
+        }
+        if (target == moving) {
+            throw new IllegalArgumentException("Cannot regraft a subtree onto its own parent");
+        }
+        boolean left = leftChild[moving] == node;
+        int sibling = left ? rightChild[moving] : leftChild[moving];
+
+        // Prune: the sibling takes the place of the node's parent
+        int grandparent = parent[moving];
+        parent[sibling] = grandparent;
+        if (grandparent == NONE) {
+            root = sibling;
+        } else {
+            replaceChild(grandparent, moving, sibling);
+        }
+
+        // Regraft onto the branch above the target
+        int targetParent = parent[target];
+        parent[moving] = targetParent;
+        if (targetParent == NONE) {
+            root = moving;
+        } else {
+            replaceChild(targetParent, target, moving);
+        }
+        parent[target] = moving;
+        if (left) {
+            rightChild[moving] = target;
+        } else {
+            leftChild[moving] = target;
+        }
+        heights[moving] = height;
+        postOrder = null;
+    }
+
+    private void replaceChild(int node, int oldChild, int newChild) {
+        if (leftChild[node] == oldChild) {
+            leftChild[node] = newChild;
+        } else {
+            rightChild[node] = newChild;
+        }
+    }
+
+    /**
+     * Returns whether a node is the other node or one of its descendants.
+     *
+     * @param node The possible descendant
+     * @param ancestor The possible ancestor
+     * @return true if the node lies in the subtree of the ancestor
+     */
+    public boolean isInSubtree(int node, int ancestor) {
+        for (int n = node; n != NONE; n = parent[n]) {
+            if (n == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the length of the branch above a node.
+     *
+     * @param node The node index
+     * @return The branch length, or 0 for the root
+     */
+    public double getBranchLength(int node) {
+        int p = parent[node];
+        return p == NONE ? 0.0 : heights[p] - heights[node];
+    }
+
+    /**
+     * Gets the taxon name of a tip.
+     *
+     * @param tip The tip index
+     * @return The taxon name
+     */
+    public String getTaxon(int tip) {
+        return taxa[tip];
+    }
+
+    /**
+     * Gets the tip index of a taxon.
+     *
+     * @param taxon The taxon name
+     * @return The tip index, or NONE if the taxon is not in the tree
+     */
+    public int getTaxonIndex(String taxon) {
+        if (taxonIndex == null) {
+            Map<String, Integer> index = new HashMap<>();
+            for (int i = 0; i < tipCount; i++) {
+                index.put(taxa[i], i);
+            }
+            taxonIndex = index;
+        }
+        Integer tip = taxonIndex.get(taxon);
+        return tip == null ? NONE : tip;
+    }
+
+    /**
+     * Gets the nodes in post-order (children before parents, root last).
+     * The returned array is shared and must not be modified.
+     *
+     * @return The post-order traversal
+     */
+    public int[] getPostOrder() {
+        if (postOrder == null) {
+            postOrder = buildPostOrder();
+        }
+        return postOrder;
+    }
+
+    /**
+     * Builds a post-order traversal without recursion, so very deep trees
+     * do not overflow the call stack.
+     *
+     * @return The post-order traversal
+     */
+    private int[] buildPostOrder() {
+        int[] order = new int[nodeCount];
+        int[] pending = new int[nodeCount];
+        int top = 0;
+        int count = 0;
+
+        // Emit nodes in reverse post-order (node, right subtree, left subtree), then flip
+        pending[top++] = root;
+        while (top > 0) {
+            int node = pending[--top];
+            order[count++] = node;
+            if (leftChild[node] != NONE) {
+                pending[top++] = leftChild[node];
+                pending[top++] = rightChild[node];
+            }
+        }
+
+        for (int i = 0, j = nodeCount - 1; i < j; i++, j--) {
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        return order;
+    }
+
+    /**
+     * Creates a deep copy of this tree.
+     *
+     * @return The copy
+     */
+    public Tree copy() {
+        return new Tree(taxa.clone(), parent.clone(), leftChild.clone(), rightChild.clone(), heights.clone());
+    }
+
+    @Override
+    public StackItemType getType() {
+        return StackItemType.TREE;
+    }
+
+    @Override
+    public String toString() {
+        return "Tree(" + tipCount + " tips)";
+    }
+}
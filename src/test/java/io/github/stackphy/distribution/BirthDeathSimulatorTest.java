@@ -0,0 +1,84 @@
+package io.github.stackphy.distribution;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.tree.Tree;
+import org.junit.Test;
+
+public class BirthDeathSimulatorTest {
+    
+    private static String[] taxa(int n) {
+        String[] taxa = new String[n];
+        for (int i = 0; i < n; i++) {
+            taxa[i] = "t" + i;
+        }
+        return taxa;
+    }
+    
+    private static void assertValid(Tree tree, int tipCount) {
+        assertEquals(tipCount, tree.getTipCount());
+        assertEquals(2 * tipCount - 1, tree.getPostOrder().length);
+        for (int node = 0; node < tree.getNodeCount(); node++) {
+            if (node != tree.getRoot()) {
+                assertTrue(tree.getBranchLength(node) > 0.0);
+            }
+        }
+    }
+    
+    @Test
+    public void testYuleRootHeight() {
+        // The root is the deepest of n - 1 Exp(λ) depths, with mean H(n - 1) / λ
+        int n = 10;
+        double birthRate = 2.0;
+        Yule yule = new Yule(new Primitive(birthRate));
+        Tree[] trees = yule.simulate(new RandomContext(7L), taxa(n), 20000, 1);
+        
+        double sum = 0.0;
+        for (Tree tree : trees) {
+            assertValid(tree, n);
+            sum += tree.getHeight(tree.getRoot());
+        }
+        double harmonic = 0.0;
+        for (int k = 1; k < n; k++) {
+            harmonic += 1.0 / k;
+        }
+        assertEquals(harmonic / birthRate, sum / trees.length, 0.01);
+    }
+    
+    @Test
+    public void testBirthDeathValid() {
+        BirthDeath birthDeath = new BirthDeath(new Primitive(1.0), new Primitive(0.5));
+        assertValid(birthDeath.simulate(new RandomContext(3L), taxa(50)), 50);
+        
+        BirthDeath critical = new BirthDeath(new Primitive(1.0), new Primitive(1.0));
+        assertValid(critical.simulate(new RandomContext(3L), taxa(50)), 50);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testSupercriticalDeathRate() {
+        new BirthDeath(new Primitive(1.0), new Primitive(2.0)).simulate(new RandomContext(3L), taxa(5));
+    }
+    
+    @Test
+    public void testReplicatesIndependentOfThreads() {
+        BirthDeath birthDeath = new BirthDeath(new Primitive(1.0), new Primitive(0.3));
+        Tree[] serial = birthDeath.simulate(new RandomContext(11L), taxa(100), 16, 1);
+        Tree[] parallel = birthDeath.simulate(new RandomContext(11L), taxa(100), 16, 4);
+        for (int r = 0; r < serial.length; r++) {
+            for (int node = 0; node < serial[r].getNodeCount(); node++) {
+                assertEquals(serial[r].getParent(node), parallel[r].getParent(node));
+                assertEquals(serial[r].getHeight(node), parallel[r].getHeight(node), 0.0);
+            }
+            assertEquals(serial[r].getTaxon(0), parallel[r].getTaxon(0));
+        }
+    }
+    
+    @Test
+    public void testLargeTree() {
+        int n = 200000;
+        Tree tree = new Yule(new Primitive(1.0)).simulate(new RandomContext(1L), taxa(n));
+        assertValid(tree, n);
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.stackphy.distribution;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.tree.Tree;
+import org.junit.Test;
+
+public class CoalescentTest {
+    
+    private static String[] taxa(int n) {
+        String[] taxa = new String[n];
+        for (int i = 0; i < n; i++) {
+            taxa[i] = "t" + i;
+        }
+        return taxa;
+    }
+    
+    @Test
+    public void testLogDensity() {
+        // ((A:1,B:1):2,C:3) with every tip at height zero
+        Tree tree = new Tree(new String[] { "A", "B", "C" },
+                new int[] { 3, 3, 4, 4, Tree.NONE },
+                new int[] { Tree.NONE, Tree.NONE, Tree.NONE, 0, 3 },
+                new int[] { Tree.NONE, Tree.NONE, Tree.NONE, 1, 2 },
+                new double[] { 0.0, 0.0, 0.0, 1.0, 3.0 });
+        double n = 2.0;
+        // Three pairs for one time unit, then one pair for two
+        double expected = -(3.0 * 1.0 + 1.0 * 2.0) / n - 2.0 * Math.log(n);
+        assertEquals(expected, new Coalescent(new Primitive(n)).logDensity(tree), 1e-12);
+    }
+    
+    @Test
+    public void testIncrementalUpdate() {
+        RandomContext random = new RandomContext(17L);
+        double[] tipHeights = new double[60];
+        for (int i = 0; i < tipHeights.length; i++) {
+            tipHeights[i] = i % 3 == 0 ? random.nextDouble() : 0.0;
+        }
+        Tree tree = new Coalescent(new Primitive(1.5)).simulate(random, taxa(60), tipHeights);
+        CoalescentIntervals intervals = new CoalescentIntervals(tree);
+        
+        for (int step = 0; step < 2000; step++) {
+            // Move one node uniformly between its oldest child and its parent
+            int node = random.nextInt(tree.getNodeCount());
+            double lower = tree.isTip(node) ? 0.0
+                    : Math.max(tree.getHeight(tree.getLeftChild(node)), tree.getHeight(tree.getRightChild(node)));
+            int parent = tree.getParent(node);
+            double upper = parent == Tree.NONE ? lower + 2.0 : tree.getHeight(parent);
+            if (tree.isTip(node)) {
+                upper = Math.min(upper, 1.0);
+            }
+            tree.setHeight(node, lower + random.nextDouble() * (upper - lower));
+            intervals.update(node);
+        }
+        
+        double incremental = intervals.getPairTime();
+        intervals.recompute();
+        assertEquals(intervals.getPairTime(), incremental, 1e-9 * intervals.getPairTime());
+        for (int p = 1; p < tree.getNodeCount(); p++) {
+            assertTrue(tree.getHeight(intervals.getNode(p - 1)) <= tree.getHeight(intervals.getNode(p)));
+        }
+        assertEquals(1, intervals.getLineageCount(tree.getNodeCount() - 1));
+    }
+    
+    @Test
+    public void testSimulatedRootHeight() {
+        // E[TMRCA] = 2N(1 - 1/n)
+        int n = 10;
+        double populationSize = 1.0;
+        Coalescent coalescent = new Coalescent(new Primitive(populationSize));
+        RandomContext random = new RandomContext(5L);
+        String[] names = taxa(n);
+        int replicates = 20000;
+        double sum = 0.0;
+        for (int r = 0; r < replicates; r++) {
+            Tree tree = coalescent.simulate(random, names);
+            sum += tree.getHeight(tree.getRoot());
+        }
+        assertEquals(2.0 * populationSize * (1.0 - 1.0 / n), sum / replicates, 0.04);
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.stackphy.distribution;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.model.Primitive;
+import org.junit.Test;
+
+public class DiscreteGammaTest {
+    
+    @Test
+    public void testCategoryMeansMatchYang1994() {
+        // Published values for four categories (Yang 1994, table 1)
+        assertArrayEquals(new double[] { 0.0334, 0.2519, 0.8203, 2.8944 },
+                DiscreteGamma.getRates(0.5, 4, false), 1e-4);
+        assertArrayEquals(new double[] { 0.1369, 0.4767, 1.0000, 2.3863 },
+                DiscreteGamma.getRates(1.0, 4, false), 1e-4);
+    }
+    
+    @Test
+    public void testRatesHaveMeanOne() {
+        for (double shape : new double[] { 0.05, 0.3, 1.0, 7.5, 200.0 }) {
+            for (boolean median : new boolean[] { false, true }) {
+                double[] rates = DiscreteGamma.getRates(shape, 6, median);
+                double sum = 0.0;
+                for (int i = 0; i < rates.length; i++) {
+                    sum += rates[i];
+                    if (i > 0) {
+                        assertTrue(rates[i] > rates[i - 1]);
+                    }
+                }
+                assertEquals(1.0, sum / rates.length, 1e-9);
+            }
+        }
+    }
+    
+    @Test
+    public void testTinyShapeGivesFiniteRates() {
+        for (double shape : new double[] { 1e-2, 1.9e-3, 1e-4, 1e-8 }) {
+            double[] rates = DiscreteGamma.getRates(shape, 4, false);
+            double sum = 0.0;
+            for (double rate : rates) {
+                assertTrue(rate >= 0.0);
+                sum += rate;
+            }
+            assertEquals(1.0, sum / rates.length, 1e-9);
+        }
+    }
+    
+    @Test
+    public void testQuantileInvertsCdf() {
+        for (double a : new double[] { 0.1, 0.9, 2.0, 50.0 }) {
+            for (double p : new double[] { 1e-6, 0.1, 0.5, 0.99 }) {
+                double x = SpecialFunctions.inverseRegularizedGammaP(a, p);
+                assertEquals(p, SpecialFunctions.regularizedGammaP(a, x), 1e-10 * Math.max(1.0, p / 1e-6));
+            }
+        }
+    }
+    
+    @Test
+    public void testRatesFollowShape() {
+        double[] shape = { 0.5 };
+        Primitive shapeParameter = new Primitive(0.5) {
+            @Override
+            public double getDoubleValue() {
+                return shape[0];
+            }
+        };
+        DiscreteGamma gamma = new DiscreteGamma(shapeParameter, new Primitive(4));
+        assertEquals(0.0334, gamma.getRateCategories()[0].getDoubleValue(), 1e-4);
+        
+        shape[0] = 1.0;
+        assertEquals(0.1369, gamma.getRateValues()[0], 1e-4);
+        assertEquals(0.1369, gamma.getRateCategories()[0].getDoubleValue(), 1e-4);
+    }
+}
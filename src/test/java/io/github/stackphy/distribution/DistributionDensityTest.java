@@ -0,0 +1,76 @@
+package io.github.stackphy.distribution;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.model.Distribution;
+import io.github.stackphy.model.Primitive;
+import org.junit.Test;
+
+public class DistributionDensityTest {
+    
+    private static final double[] XS = { -1.0, 0.0, 0.05, 0.7, 1.0, 2.5, 12.0 };
+    
+    private static void assertBatchMatchesScalar(Distribution distribution) {
+        double[] out = new double[XS.length];
+        distribution.logDensity(XS, out);
+        for (int i = 0; i < XS.length; i++) {
+            assertEquals(distribution.logDensity(XS[i]), out[i], 1e-12);
+        }
+    }
+    
+    @Test
+    public void testNormal() {
+        Normal normal = new Normal(new Primitive(1.0), new Primitive(2.0));
+        double z = (2.5 - 1.0) / 2.0;
+        assertEquals(Math.log(Math.exp(-0.5 * z * z) / (2.0 * Math.sqrt(2.0 * Math.PI))),
+                normal.logDensity(2.5), 1e-12);
+        assertBatchMatchesScalar(normal);
+    }
+    
+    @Test
+    public void testLogNormal() {
+        LogNormal logNormal = new LogNormal(new Primitive(0.5), new Primitive(0.8));
+        double z = (Math.log(2.5) - 0.5) / 0.8;
+        assertEquals(Math.log(Math.exp(-0.5 * z * z) / (2.5 * 0.8 * Math.sqrt(2.0 * Math.PI))),
+                logNormal.logDensity(2.5), 1e-12);
+        assertEquals(Double.NEGATIVE_INFINITY, logNormal.logDensity(0.0), 0.0);
+        assertBatchMatchesScalar(logNormal);
+    }
+    
+    @Test
+    public void testExponential() {
+        Exponential exponential = new Exponential(new Primitive(3.0));
+        assertEquals(Math.log(3.0) - 3.0 * 0.7, exponential.logDensity(0.7), 1e-12);
+        assertEquals(Double.NEGATIVE_INFINITY, exponential.logDensity(-1.0), 0.0);
+        assertBatchMatchesScalar(exponential);
+    }
+    
+    @Test
+    public void testGamma() {
+        Gamma gamma = new Gamma(new Primitive(3.0), new Primitive(2.0));
+        // Gamma(3, 2): 2³·x²·e^(-2x) / Γ(3)
+        assertEquals(Math.log(8.0 * 0.49 * Math.exp(-1.4) / 2.0), gamma.logDensity(0.7), 1e-12);
+        assertEquals(Double.NEGATIVE_INFINITY, gamma.logDensity(0.0), 0.0);
+        assertEquals(Math.log(2.0), new Gamma(new Primitive(1.0), new Primitive(2.0)).logDensity(0.0), 1e-12);
+        assertBatchMatchesScalar(gamma);
+        assertBatchMatchesScalar(new Gamma(new Primitive(0.4), new Primitive(1.5)));
+    }
+    
+    @Test
+    public void testDirichlet() {
+        Dirichlet dirichlet = new Dirichlet(new Primitive(new Object[] { 2.0, 3.0, 1.0 }));
+        double[] xs = { 0.2, 0.5, 0.3, 0.6, 0.6, -0.2, 0.1, 0.1, 0.1 };
+        double[] out = new double[3];
+        dirichlet.logDensity(xs, out);
+        
+        // Γ(6) / (Γ(2)Γ(3)Γ(1)) · x₁ · x₂²
+        assertEquals(Math.log(60.0 * 0.2 * 0.25), out[0], 1e-12);
+        assertEquals(Double.NEGATIVE_INFINITY, out[1], 0.0);
+        assertEquals(Double.NEGATIVE_INFINITY, out[2], 0.0);
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testDirichletRejectsScalar() {
+        new Dirichlet(new Primitive(new Object[] { 1.0, 1.0 })).logDensity(0.5);
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.stackphy.distribution;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.model.Distribution;
+import io.github.stackphy.model.Primitive;
+import org.junit.Test;
+
+import java.util.function.Function;
+
+public class DistributionGradientTest {
+    
+    private static final double H = 1e-6;
+    private static final double[] XS = { 0.3, 1.1, 2.5 };
+    
+    private static double sumLogDensity(Distribution distribution, double[] xs) {
+        double[] out = new double[xs.length];
+        distribution.logDensity(xs, out);
+        double sum = 0.0;
+        for (double value : out) {
+            sum += value;
+        }
+        return sum;
+    }
+    
+    private static void assertValueGradient(Distribution distribution) {
+        double[] gradient = new double[XS.length];
+        distribution.logDensityGradient(XS, gradient);
+        for (int i = 0; i < XS.length; i++) {
+            double numeric = (distribution.logDensity(XS[i] + H) - distribution.logDensity(XS[i] - H)) / (2.0 * H);
+            assertEquals(numeric, gradient[i], 1e-6 * Math.max(1.0, Math.abs(numeric)));
+        }
+    }
+    
+    /**
+     * Checks a parametric family against central differences in each parameter.
+     */
+    private static void assertParameterGradient(Function<double[], Distribution> family, double[] parameters) {
+        double[] gradient = new double[parameters.length];
+        family.apply(parameters).logDensityParameterGradient(XS, gradient);
+        for (int j = 0; j < parameters.length; j++) {
+            double[] up = parameters.clone();
+            double[] down = parameters.clone();
+            up[j] += H;
+            down[j] -= H;
+            double numeric = (sumLogDensity(family.apply(up), XS) - sumLogDensity(family.apply(down), XS)) / (2.0 * H);
+            assertEquals(numeric, gradient[j], 1e-6 * Math.max(1.0, Math.abs(numeric)));
+        }
+    }
+    
+    @Test
+    public void testDigamma() {
+        assertEquals(-0.5772156649015329, SpecialFunctions.digamma(1.0), 1e-13);
+        assertEquals(2.0 - 0.5772156649015329 - 2.0 * Math.log(2.0), SpecialFunctions.digamma(1.5), 1e-13);
+        assertEquals(Math.log(1e6) - 0.5e-6, SpecialFunctions.digamma(1e6), 1e-12);
+        double x = 0.37;
+        assertEquals(SpecialFunctions.digamma(x + 1.0) - 1.0 / x, SpecialFunctions.digamma(x), 1e-12);
+    }
+    
+    @Test
+    public void testNormal() {
+        Function<double[], Distribution> family = p -> new Normal(new Primitive(p[0]), new Primitive(p[1]));
+        assertValueGradient(family.apply(new double[] { 0.5, 1.3 }));
+        assertParameterGradient(family, new double[] { 0.5, 1.3 });
+    }
+    
+    @Test
+    public void testLogNormal() {
+        Function<double[], Distribution> family = p -> new LogNormal(new Primitive(p[0]), new Primitive(p[1]));
+        assertValueGradient(family.apply(new double[] { 0.2, 0.7 }));
+        assertParameterGradient(family, new double[] { 0.2, 0.7 });
+    }
+    
+    @Test
+    public void testExponential() {
+        Function<double[], Distribution> family = p -> new Exponential(new Primitive(p[0]));
+        assertValueGradient(family.apply(new double[] { 1.7 }));
+        assertParameterGradient(family, new double[] { 1.7 });
+    }
+    
+    @Test
+    public void testGamma() {
+        Function<double[], Distribution> family = p -> new Gamma(new Primitive(p[0]), new Primitive(p[1]));
+        assertValueGradient(family.apply(new double[] { 2.3, 0.8 }));
+        assertParameterGradient(family, new double[] { 2.3, 0.8 });
+    }
+    
+    @Test
+    public void testDirichlet() {
+        double[] alphas = { 0.7, 2.0, 3.5 };
+        double[] xs = { 0.2, 0.3, 0.5, 0.6, 0.1, 0.3 };
+        Dirichlet dirichlet = dirichlet(alphas);
+        
+        double[] gradient = new double[xs.length];
+        dirichlet.logDensityGradient(xs, gradient);
+        for (int i = 0; i < xs.length; i++) {
+            assertEquals((alphas[i % 3] - 1.0) / xs[i], gradient[i], 1e-12);
+        }
+        
+        double[] parameterGradient = new double[3];
+        dirichlet.logDensityParameterGradient(xs, parameterGradient);
+        for (int j = 0; j < 3; j++) {
+            double[] up = alphas.clone();
+            double[] down = alphas.clone();
+            up[j] += H;
+            down[j] -= H;
+            double[] out = new double[2];
+            dirichlet(up).logDensity(xs, out);
+            double upSum = out[0] + out[1];
+            dirichlet(down).logDensity(xs, out);
+            double numeric = (upSum - out[0] - out[1]) / (2.0 * H);
+            assertEquals(numeric, parameterGradient[j], 1e-6);
+        }
+    }
+    
+    private static Dirichlet dirichlet(double[] alphas) {
+        Object[] values = new Object[alphas.length];
+        for (int i = 0; i < alphas.length; i++) {
+            values[i] = alphas[i];
+        }
+        return new Dirichlet(new Primitive(values));
+    }
+}
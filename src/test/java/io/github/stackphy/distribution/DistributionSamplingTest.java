@@ -0,0 +1,122 @@
+package io.github.stackphy.distribution;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.model.Distribution;
+import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.RandomContext;
+import org.junit.Test;
+
+public class DistributionSamplingTest {
+    
+    private static final int N = 400000;
+    
+    private static void assertMoments(Distribution distribution, double mean, double variance) {
+        double[] out = new double[N];
+        distribution.sample(new RandomContext(2024L), out, N);
+        double sum = 0.0;
+        for (double x : out) {
+            sum += x;
+        }
+        double sampleMean = sum / N;
+        double squares = 0.0;
+        for (double x : out) {
+            squares += (x - sampleMean) * (x - sampleMean);
+        }
+        double sampleVariance = squares / (N - 1);
+        
+        // Five standard errors of the mean; variance to within 3%
+        assertEquals(mean, sampleMean, 5.0 * Math.sqrt(variance / N));
+        assertEquals(variance, sampleVariance, 0.03 * variance);
+    }
+    
+    @Test
+    public void testNormal() {
+        assertMoments(new Normal(new Primitive(-1.0), new Primitive(2.0)), -1.0, 4.0);
+    }
+    
+    @Test
+    public void testNormalTails() {
+        double[] out = new double[N];
+        new Normal(new Primitive(0.0), new Primitive(1.0)).sample(new RandomContext(5L), out, N);
+        int beyond = 0;
+        for (double x : out) {
+            if (Math.abs(x) > 3.0) {
+                beyond++;
+            }
+        }
+        // P(|Z| > 3) = 0.0027
+        assertEquals(0.0027 * N, beyond, 5.0 * Math.sqrt(0.0027 * N));
+    }
+    
+    @Test
+    public void testLogNormal() {
+        double mu = 0.2;
+        double sigma = 0.5;
+        double mean = Math.exp(mu + 0.5 * sigma * sigma);
+        double variance = (Math.exp(sigma * sigma) - 1.0) * mean * mean;
+        assertMoments(new LogNormal(new Primitive(mu), new Primitive(sigma)), mean, variance);
+    }
+    
+    @Test
+    public void testExponential() {
+        assertMoments(new Exponential(new Primitive(4.0)), 0.25, 0.0625);
+    }
+    
+    @Test
+    public void testGamma() {
+        assertMoments(new Gamma(new Primitive(3.0), new Primitive(2.0)), 1.5, 0.75);
+        assertMoments(new Gamma(new Primitive(0.3), new Primitive(1.0)), 0.3, 0.3);
+    }
+    
+    @Test
+    public void testBulkSamplingIsReproducible() {
+        double[] first = new double[100];
+        double[] second = new double[100];
+        Gamma gamma = new Gamma(new Primitive(2.0), new Primitive(1.0));
+        gamma.sample(new RandomContext(9L), first, 100);
+        gamma.sample(new RandomContext(9L), second, 100);
+        assertArrayEquals(first, second, 0.0);
+    }
+    
+    @Test
+    public void testDirichletMoments() {
+        double[] alphas = { 1.0, 2.0, 5.0 };
+        double total = 8.0;
+        int n = 100000;
+        double[] out = new double[3 * n];
+        new Dirichlet(new Primitive(new Object[] { 1.0, 2.0, 5.0 })).sample(new RandomContext(17L), out, n);
+        
+        for (int i = 0; i < 3; i++) {
+            double mean = alphas[i] / total;
+            double variance = alphas[i] * (total - alphas[i]) / (total * total * (total + 1.0));
+            double sum = 0.0;
+            for (int j = 0; j < n; j++) {
+                sum += out[j * 3 + i];
+            }
+            assertEquals(mean, sum / n, 5.0 * Math.sqrt(variance / n));
+        }
+    }
+    
+    @Test
+    public void testDirichletSmallConcentrationsStayOnSimplex() {
+        Dirichlet dirichlet = new Dirichlet(new Primitive(new Object[] { 0.01, 0.01, 0.01, 0.01 }));
+        int n = 1000;
+        double[] out = new double[4 * n];
+        dirichlet.sample(new RandomContext(23L), out, n);
+        
+        double[] logDensities = new double[n];
+        dirichlet.logDensity(out, logDensities);
+        for (int j = 0; j < n; j++) {
+            double sum = 0.0;
+            for (int i = 0; i < 4; i++) {
+                assertTrue(out[j * 4 + i] >= 0.0);
+                sum += out[j * 4 + i];
+            }
+            assertEquals(1.0, sum, 1e-12);
+            assertFalse(Double.isNaN(logDensities[j]));
+        }
+        
+        assertEquals(4, dirichlet.generateValue(new RandomContext(1L)).getArrayValue().length);
+    }
+}
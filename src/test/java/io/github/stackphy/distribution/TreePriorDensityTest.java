@@ -0,0 +1,93 @@
+package io.github.stackphy.distribution;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.model.Distribution;
+import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.TreeDensity;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.tree.Tree;
+import org.junit.Test;
+
+public class TreePriorDensityTest {
+    
+    private static Tree cherry(double height) {
+        return new Tree(new String[] { "A", "B" },
+                new int[] { 2, 2, Tree.NONE },
+                new int[] { Tree.NONE, Tree.NONE, 0 },
+                new int[] { Tree.NONE, Tree.NONE, 1 },
+                new double[] { 0.0, 0.0, height });
+    }
+    
+    private static String[] taxa(int n) {
+        String[] taxa = new String[n];
+        for (int i = 0; i < n; i++) {
+            taxa[i] = "t" + i;
+        }
+        return taxa;
+    }
+    
+    @Test
+    public void testTwoTips() {
+        // With two tips the density is that of the root height alone
+        double h = 0.8;
+        assertEquals(Math.log(2.0) - 2.0 * h, new Yule(new Primitive(2.0)).logDensity(cherry(h)), 1e-12);
+        
+        double birth = 2.0;
+        double death = 0.5;
+        double r = birth - death;
+        double f = birth * r * r * Math.exp(-r * h) / Math.pow(birth - death * Math.exp(-r * h), 2);
+        assertEquals(Math.log(f),
+                new BirthDeath(new Primitive(birth), new Primitive(death)).logDensity(cherry(h)), 1e-12);
+        
+        assertEquals(Math.log(birth) - 2.0 * Math.log1p(birth * h),
+                new BirthDeath(new Primitive(birth), new Primitive(birth)).logDensity(cherry(h)), 1e-12);
+    }
+    
+    @Test
+    public void testBirthDeathReducesToYule() {
+        Tree tree = new Yule(new Primitive(1.0)).simulate(new RandomContext(2L), taxa(30));
+        assertEquals(new Yule(new Primitive(1.3)).logDensity(tree),
+                new BirthDeath(new Primitive(1.3), new Primitive(0.0)).logDensity(tree), 1e-9);
+    }
+    
+    private static void assertIncremental(Distribution prior, Tree tree, RandomContext random) {
+        TreeDensity density = prior.createTreeDensity(tree);
+        double logDensity = density.getLogDensity();
+        for (int step = 0; step < 1000; step++) {
+            int node = tree.getTipCount() + random.nextInt(tree.getTipCount() - 1);
+            double lower = Math.max(tree.getHeight(tree.getLeftChild(node)), tree.getHeight(tree.getRightChild(node)));
+            int parent = tree.getParent(node);
+            double upper = parent == Tree.NONE ? lower + 1.0 : tree.getHeight(parent);
+            tree.setHeight(node, lower + random.nextDouble() * (upper - lower));
+            logDensity += density.update(node);
+        }
+        assertEquals(prior.logDensity(tree), logDensity, 1e-8);
+        assertEquals(prior.logDensity(tree), density.getLogDensity(), 1e-8);
+    }
+    
+    @Test
+    public void testIncrementalUpdates() {
+        RandomContext random = new RandomContext(9L);
+        Tree tree = new BirthDeath(new Primitive(2.0), new Primitive(1.0)).simulate(random, taxa(80));
+        assertIncremental(new Yule(new Primitive(2.0)), tree, random);
+        assertIncremental(new BirthDeath(new Primitive(2.0), new Primitive(1.0)), tree, random);
+        assertIncremental(new BirthDeath(new Primitive(2.0), new Primitive(2.0)), tree, random);
+        assertIncremental(new Coalescent(new Primitive(0.7)), tree, random);
+    }
+    
+    @Test
+    public void testRateChange() {
+        Tree tree = new Yule(new Primitive(1.0)).simulate(new RandomContext(4L), taxa(20));
+        Variable death = new Variable("mu", new Exponential(new Primitive(1.0)), true);
+        death.setValue(0.2);
+        BirthDeath prior = new BirthDeath(new Primitive(1.0), death);
+        TreeDensity density = prior.createTreeDensity(tree);
+        density.getLogDensity();
+        death.setValue(0.6);
+        assertEquals(prior.logDensity(tree), density.getLogDensity(), 1e-12);
+        death.setValue(1.5);
+        assertEquals(Double.NEGATIVE_INFINITY, density.getLogDensity(), 0.0);
+    }
+}
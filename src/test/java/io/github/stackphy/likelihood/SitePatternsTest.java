@@ -0,0 +1,52 @@
+package io.github.stackphy.likelihood;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.StackPhyParser;
+import io.github.stackphy.distribution.PhyloCTMC;
+import io.github.stackphy.model.Sequence;
+import io.github.stackphy.runtime.Environment;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class SitePatternsTest {
+    
+    @Test
+    public void testIdenticalColumnsAreCollapsed() {
+        SitePatterns patterns = SitePatterns.compress(Arrays.asList(
+                new Sequence("a", "AACAGA"),
+                new Sequence("b", "aTCATT"),
+                new Sequence("c", "AACAGA")));
+        
+        assertEquals(6, patterns.getSiteCount());
+        assertEquals(4, patterns.getPatternCount());
+        assertArrayEquals(new int[] { 2, 2, 1, 1 }, patterns.getWeights());
+        
+        // Site 3 repeats site 0 (A/A/A), site 5 repeats site 1 (A/T/A)
+        assertEquals(patterns.getSitePattern(0), patterns.getSitePattern(3));
+        assertEquals(patterns.getSitePattern(1), patterns.getSitePattern(5));
+        assertEquals('A', patterns.getState(1, patterns.getSitePattern(0)));
+        assertEquals('T', patterns.getState(1, patterns.getSitePattern(1)));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testRaggedAlignmentIsRejected() {
+        SitePatterns.compress(Arrays.asList(new Sequence("a", "ACGT"), new Sequence("b", "ACG")));
+    }
+    
+    @Test
+    public void testObserveCompressesAlignment() throws Exception {
+        String program = "1.0 [ 0.25 0.25 0.25 0.25 ] HKY \"substModel\" =\n" +
+                         "10.0 Yule \"phylogeny\" ~\n" +
+                         "\"phylogeny\" var \"substModel\" var PhyloCTMC \"sequences\" ~\n" +
+                         "[ \"human\" \"ACGTACGT\" sequence \"chimp\" \"ACGTACGA\" sequence ] \"sequences\" observe";
+        Environment env = StackPhyParser.parseAndExecute(program);
+        
+        PhyloCTMC ctmc = (PhyloCTMC) env.getVariable("sequences").getDistribution();
+        SitePatterns patterns = ctmc.getObservedPatterns();
+        assertNotNull(patterns);
+        assertEquals(8, patterns.getSiteCount());
+        assertEquals(5, patterns.getPatternCount());
+    }
+}
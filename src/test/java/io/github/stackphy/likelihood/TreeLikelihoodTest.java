@@ -0,0 +1,303 @@
+package io.github.stackphy.likelihood;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.distribution.PhyloCTMC;
+import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.Sequence;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.substitution.SubstitutionModel;
+import io.github.stackphy.substitution.HKY;
+import io.github.stackphy.tree.Tree;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class TreeLikelihoodTest {
+    
+    private static Primitive frequencies(double a, double c, double g, double t) {
+        return new Primitive(new Object[] { a, c, g, t });
+    }
+    
+    private static PhyloCTMC ctmc(Tree tree, SubstitutionModel model) {
+        return new PhyloCTMC(new Variable("tree", tree, false), new Variable("model", model, false));
+    }
+    
+    private static Tree twoTaxonTree(double rootHeight) {
+        return new Tree(new String[] { "a", "b" },
+                new int[] { 2, 2, Tree.NONE },
+                new int[] { Tree.NONE, Tree.NONE, 0 },
+                new int[] { Tree.NONE, Tree.NONE, 1 },
+                new double[] { 0.0, 0.0, rootHeight });
+    }
+    
+    private static Tree threeTaxonTree() {
+        // ((a,b):0.1,c) with root at 0.3
+        return new Tree(new String[] { "a", "b", "c" },
+                new int[] { 3, 3, 4, 4, Tree.NONE },
+                new int[] { Tree.NONE, Tree.NONE, Tree.NONE, 0, 3 },
+                new int[] { Tree.NONE, Tree.NONE, Tree.NONE, 1, 2 },
+                new double[] { 0.0, 0.0, 0.0, 0.2, 0.3 });
+    }
+    
+    @Test
+    public void testTwoTaxonMatchesJukesCantor() {
+        HKY jc = new HKY(new Primitive(1.0), frequencies(0.25, 0.25, 0.25, 0.25));
+        Tree tree = twoTaxonTree(0.1);
+        PhyloCTMC ctmc = ctmc(tree, jc);
+        
+        List<Sequence> alignment = Arrays.asList(new Sequence("a", "AC"), new Sequence("b", "AA"));
+        double logL = new TreeLikelihood(ctmc, tree, alignment).calculateLogLikelihood();
+        
+        double decay = Math.exp(-4.0 / 3.0 * 0.2);
+        double same = 0.25 * (0.25 + 0.75 * decay);
+        double different = 0.25 * (0.25 - 0.25 * decay);
+        assertEquals(Math.log(same) + Math.log(different), logL, 1e-10);
+    }
+    
+    @Test
+    public void testThreeTaxonMatchesBruteForce() {
+        HKY hky = new HKY(new Primitive(4.0), frequencies(0.1, 0.2, 0.3, 0.4));
+        Tree tree = threeTaxonTree();
+        PhyloCTMC ctmc = ctmc(tree, hky);
+        
+        String a = "ACGTTA";
+        String b = "ACGTCA";
+        String c = "AGGTTC";
+        List<Sequence> alignment = Arrays.asList(
+                new Sequence("c", c), new Sequence("a", a), new Sequence("b", b));
+        double logL = new TreeLikelihood(ctmc, tree, alignment).calculateLogLikelihood();
+        
+        double[] pa = new double[16];
+        double[] pb = new double[16];
+        double[] pc = new double[16];
+        double[] pInternal = new double[16];
+        hky.getTransitionProbabilities(0.2, pa);
+        hky.getTransitionProbabilities(0.2, pb);
+        hky.getTransitionProbabilities(0.3, pc);
+        hky.getTransitionProbabilities(0.1, pInternal);
+        double[] pi = hky.getFrequencies();
+        
+        double expected = 0.0;
+        for (int site = 0; site < a.length(); site++) {
+            int sa = "ACGT".indexOf(a.charAt(site));
+            int sb = "ACGT".indexOf(b.charAt(site));
+            int sc = "ACGT".indexOf(c.charAt(site));
+            double siteL = 0.0;
+            for (int root = 0; root < 4; root++) {
+                for (int internal = 0; internal < 4; internal++) {
+                    siteL += pi[root] * pc[root * 4 + sc] * pInternal[root * 4 + internal]
+                            * pa[internal * 4 + sa] * pb[internal * 4 + sb];
+                }
+            }
+            expected += Math.log(siteL);
+        }
+        assertEquals(expected, logL, 1e-10);
+    }
+    
+    @Test
+    public void testAmbiguityCodesSumOverStates() {
+        HKY hky = new HKY(new Primitive(3.0), frequencies(0.1, 0.2, 0.3, 0.4));
+        Tree tree = threeTaxonTree();
+        PhyloCTMC ctmc = ctmc(tree, hky);
+        
+        double ambiguous = siteLikelihood(ctmc, tree, "R", "C", "T");
+        double expected = siteLikelihood(ctmc, tree, "A", "C", "T") + siteLikelihood(ctmc, tree, "G", "C", "T");
+        assertEquals(expected, ambiguous, 1e-14);
+        
+        // Missing data on one tip leaves the two-taxon likelihood of the others
+        double missing = siteLikelihood(ctmc, tree, "-", "C", "T");
+        double sum = 0.0;
+        for (String base : new String[] { "A", "C", "G", "T" }) {
+            sum += siteLikelihood(ctmc, tree, base, "C", "T");
+        }
+        assertEquals(sum, missing, 1e-14);
+        assertEquals(missing, siteLikelihood(ctmc, tree, "n", "C", "T"), 0.0);
+    }
+    
+    private static double siteLikelihood(PhyloCTMC ctmc, Tree tree, String a, String b, String c) {
+        List<Sequence> alignment = Arrays.asList(new Sequence("a", a), new Sequence("b", b), new Sequence("c", c));
+        return Math.exp(new TreeLikelihood(ctmc, tree, alignment).calculateLogLikelihood());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCharacterIsRejected() {
+        Tree tree = twoTaxonTree(0.1);
+        PhyloCTMC ctmc = ctmc(tree, new HKY(new Primitive(1.0), frequencies(0.25, 0.25, 0.25, 0.25)));
+        new TreeLikelihood(ctmc, tree, Arrays.asList(new Sequence("a", "AZ"), new Sequence("b", "AA")));
+    }
+    
+    @Test
+    public void testTransitionProbabilitiesAreStochastic() {
+        HKY hky = new HKY(new Primitive(2.5), frequencies(0.1, 0.2, 0.3, 0.4));
+        double[] p = new double[16];
+        hky.getTransitionProbabilities(1.7, p);
+        for (int i = 0; i < 4; i++) {
+            double rowSum = 0.0;
+            for (int j = 0; j < 4; j++) {
+                assertTrue(p[i * 4 + j] >= 0.0);
+                rowSum += p[i * 4 + j];
+            }
+            assertEquals(1.0, rowSum, 1e-12);
+        }
+    }
+    
+    @Test
+    public void testThreadedMatchesSequentialExactly() {
+        HKY hky = new HKY(new Primitive(3.0), frequencies(0.1, 0.2, 0.3, 0.4));
+        Tree tree = threeTaxonTree();
+        PhyloCTMC ctmc = ctmc(tree, hky);
+        
+        java.util.Random random = new java.util.Random(42);
+        StringBuilder[] rows = { new StringBuilder(), new StringBuilder(), new StringBuilder() };
+        for (int site = 0; site < 500; site++) {
+            for (StringBuilder row : rows) {
+                row.append("ACGT".charAt(random.nextInt(4)));
+            }
+        }
+        List<Sequence> alignment = Arrays.asList(new Sequence("a", rows[0].toString()),
+                new Sequence("b", rows[1].toString()), new Sequence("c", rows[2].toString()));
+        
+        TreeLikelihood sequential = new TreeLikelihood(ctmc, tree, alignment);
+        TreeLikelihood threaded = new TreeLikelihood(ctmc, tree, alignment);
+        sequential.setBlockSize(5);
+        threaded.setBlockSize(5);
+        threaded.setThreadCount(4);
+        
+        double expected = sequential.calculateLogLikelihood();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Double.doubleToLongBits(expected),
+                    Double.doubleToLongBits(threaded.calculateLogLikelihood()));
+        }
+    }
+    
+    @Test
+    public void testIncrementalUpdateAndRestore() {
+        // Caterpillar (((((a,b),c),d),e),f): internal node 6 + i joins tip i + 1
+        String[] taxa = { "a", "b", "c", "d", "e", "f" };
+        int[] parent = { 6, 6, 7, 8, 9, 10, 7, 8, 9, 10, Tree.NONE };
+        int[] left = { Tree.NONE, Tree.NONE, Tree.NONE, Tree.NONE, Tree.NONE, Tree.NONE, 0, 6, 7, 8, 9 };
+        int[] right = { Tree.NONE, Tree.NONE, Tree.NONE, Tree.NONE, Tree.NONE, Tree.NONE, 1, 2, 3, 4, 5 };
+        double[] heights = { 0, 0, 0, 0, 0, 0, 0.1, 0.2, 0.3, 0.4, 0.5 };
+        Tree tree = new Tree(taxa, parent, left, right, heights);
+        PhyloCTMC ctmc = ctmc(tree, new HKY(new Primitive(2.0), frequencies(0.1, 0.2, 0.3, 0.4)));
+        List<Sequence> alignment = Arrays.asList(new Sequence("a", "ACGTA"), new Sequence("b", "ACGTT"),
+                new Sequence("c", "AGGTA"), new Sequence("d", "ACCTA"), new Sequence("e", "TCGTA"),
+                new Sequence("f", "ACGAA"));
+        
+        TreeLikelihood likelihood = new TreeLikelihood(ctmc, tree, alignment);
+        double original = likelihood.calculateLogLikelihood();
+        assertEquals(5, likelihood.getUpdatedNodeCount());
+        
+        likelihood.store();
+        tree.setHeight(8, 0.35);
+        double changed = likelihood.calculateLogLikelihood();
+        // Only node 8 and its ancestors 9 and 10 are recomputed
+        assertEquals(3, likelihood.getUpdatedNodeCount());
+        assertEquals(new TreeLikelihood(ctmc, tree, alignment).calculateLogLikelihood(), changed, 1e-12);
+        
+        tree.setHeight(8, 0.3);
+        likelihood.restore();
+        assertEquals(original, likelihood.calculateLogLikelihood(), 0.0);
+        assertEquals(0, likelihood.getUpdatedNodeCount());
+        
+        likelihood.markNodeDirty(7);
+        assertEquals(original, likelihood.calculateLogLikelihood(), 1e-12);
+        assertEquals(4, likelihood.getUpdatedNodeCount());
+    }
+
+    @Test
+    public void testTopologyChangeUpdatesMarkedNodesAndRestores() {
+        // ((a,b),(c,d)) with both cherries at 0.1 and the root at 0.3
+        Tree tree = new Tree(new String[] { "a", "b", "c", "d" },
+                new int[] { 4, 4, 5, 5, 6, 6, Tree.NONE },
+                new int[] { Tree.NONE, Tree.NONE, Tree.NONE, Tree.NONE, 0, 2, 4 },
+                new int[] { Tree.NONE, Tree.NONE, Tree.NONE, Tree.NONE, 1, 3, 5 },
+                new double[] { 0, 0, 0, 0, 0.1, 0.1, 0.3 });
+        PhyloCTMC ctmc = ctmc(tree, new HKY(new Primitive(2.0), frequencies(0.1, 0.2, 0.3, 0.4)));
+        List<Sequence> alignment = Arrays.asList(new Sequence("a", "ACGTA"), new Sequence("b", "ACGTT"),
+                new Sequence("c", "TGGTA"), new Sequence("d", "TCCTA"));
+        TreeLikelihood likelihood = new TreeLikelihood(ctmc, tree, alignment);
+        double original = likelihood.calculateLogLikelihood();
+        
+        // Swapping b and c leaves every branch length as it was, so the parents must be marked
+        likelihood.store();
+        tree.exchange(1, 2);
+        likelihood.markNodeDirty(4);
+        likelihood.markNodeDirty(5);
+        double swapped = likelihood.calculateLogLikelihood();
+        assertEquals(3, likelihood.getUpdatedNodeCount());
+        assertEquals(new TreeLikelihood(ctmc, tree, alignment).calculateLogLikelihood(), swapped, 1e-12);
+        assertNotEquals(original, swapped, 1e-6);
+        
+        tree.exchange(1, 2);
+        likelihood.restore();
+        assertEquals(original, likelihood.calculateLogLikelihood(), 0.0);
+        assertEquals(0, likelihood.getUpdatedNodeCount());
+        
+        // Moving d onto the branch above a changes the children of all three internal nodes
+        likelihood.store();
+        tree.moveSubtree(3, 0, 0.05);
+        assertEquals(6, tree.getRoot());
+        assertEquals(4, tree.getParent(5));
+        likelihood.markNodeDirty(5);
+        likelihood.markNodeDirty(4);
+        likelihood.markNodeDirty(6);
+        assertEquals(new TreeLikelihood(ctmc, tree, alignment).calculateLogLikelihood(),
+                likelihood.calculateLogLikelihood(), 1e-12);
+        
+        tree.moveSubtree(3, 2, 0.1);
+        assertEquals(Tree.NONE, tree.getParent(6));
+        assertEquals(5, tree.getParent(3));
+        assertEquals(2, tree.getLeftChild(5));
+        likelihood.restore();
+        assertEquals(original, likelihood.calculateLogLikelihood(), 0.0);
+    }
+    
+    @Test
+    public void testScalingPreventsUnderflow() {
+        // Caterpillar of 1000 tips with branches long enough that P(t) rows equal π
+        int tips = 1000;
+        int nodes = 2 * tips - 1;
+        String[] taxa = new String[tips];
+        int[] parent = new int[nodes];
+        int[] left = new int[nodes];
+        int[] right = new int[nodes];
+        double[] heights = new double[nodes];
+        Arrays.fill(left, Tree.NONE);
+        Arrays.fill(right, Tree.NONE);
+        for (int i = 0; i < tips; i++) {
+            taxa[i] = "t" + i;
+        }
+        for (int k = 0; k < tips - 1; k++) {
+            int node = tips + k;
+            left[node] = k == 0 ? 0 : node - 1;
+            right[node] = k + 1;
+            parent[left[node]] = node;
+            parent[k + 1] = node;
+            heights[node] = 100.0 * (k + 1);
+        }
+        parent[nodes - 1] = Tree.NONE;
+        Tree tree = new Tree(taxa, parent, left, right, heights);
+        PhyloCTMC ctmc = ctmc(tree, new HKY(new Primitive(1.0), frequencies(0.25, 0.25, 0.25, 0.25)));
+        
+        Sequence[] sequences = new Sequence[tips];
+        for (int i = 0; i < tips; i++) {
+            sequences[i] = new Sequence(taxa[i], i % 2 == 0 ? "AC" : "GT");
+        }
+        TreeLikelihood likelihood = new TreeLikelihood(ctmc, tree, Arrays.asList(sequences));
+        assertEquals(2 * tips * Math.log(0.25), likelihood.calculateLogLikelihood(), 1e-9);
+        
+        likelihood.setScalingThreshold(0.0);
+        assertEquals(Double.NEGATIVE_INFINITY, likelihood.calculateLogLikelihood(), 0.0);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingTaxonIsRejected() {
+        HKY jc = new HKY(new Primitive(1.0), frequencies(0.25, 0.25, 0.25, 0.25));
+        Tree tree = twoTaxonTree(0.1);
+        PhyloCTMC ctmc = ctmc(tree, jc);
+        new TreeLikelihood(ctmc, tree, Arrays.asList(new Sequence("a", "A"), new Sequence("z", "A")));
+    }
+}
@@ -0,0 +1,282 @@
+package io.github.stackphy.mcmc;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.StackPhyParser;
+import io.github.stackphy.distribution.BirthDeathSimulator;
+import io.github.stackphy.distribution.PhyloCTMC;
+import io.github.stackphy.likelihood.TreeLikelihood;
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.runtime.Environment;
+import io.github.stackphy.simulation.SampleTable;
+import io.github.stackphy.simulation.TraceReader;
+import io.github.stackphy.simulation.TraceWriter;
+import io.github.stackphy.substitution.TransitionMatrixCache;
+import io.github.stackphy.tree.Tree;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+public class MCMCTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String PHYLO_MODEL =
+            "1.0 0.5 LogNormal \"kappa\" ~\n" +
+            "[ 1.0 1.0 1.0 1.0 ] Dirichlet \"baseFreqs\" ~\n" +
+            "\"kappa\" var \"baseFreqs\" var HKY \"substModel\" =\n" +
+            "10.0 Exponential \"birthRate\" ~\n" +
+            "\"birthRate\" var Yule \"phylogeny\" ~\n" +
+            "\"phylogeny\" var \"substModel\" var PhyloCTMC \"sequences\" ~\n" +
+            "[ \"a\" \"ACGTACGTTACGATCGATCG\" sequence \"b\" \"ACGTACGTTACGATCGTTCG\" sequence\n" +
+            "  \"c\" \"ACGAACGTTACGTTCGATCA\" sequence \"d\" \"TCGAACGATACGTTCGATCA\" sequence ] \"sequences\" observe";
+
+    @Test
+    public void testNormalMeanPosterior() throws Exception {
+        // mu ~ N(0, 1) and x | mu ~ N(mu, 1) with x = 2 give mu | x ~ N(1, 1/2)
+        Environment env = StackPhyParser.parseAndExecute(
+                "0.0 1.0 Normal \"mu\" ~\n" +
+                "\"mu\" var 1.0 Normal \"x\" ~\n" +
+                "2.0 \"x\" observe");
+        MCMC mcmc = new MCMC(env, new RandomContext(1L));
+        assertEquals(1, mcmc.getOperators().size());
+        assertTrue(mcmc.getOperators().get(0) instanceof RandomWalkOperator);
+
+        mcmc.run(new RandomContext(2L), 1000, 1000);
+        SampleTable table = mcmc.run(new RandomContext(3L), 200000, 2);
+        double[] mu = table.getColumn("mu");
+        SampleMoments.assertMoments("mu", mu, 1.0, 0.5, 0.03);
+    }
+
+    @Test
+    public void testPhylogeneticModelKeepsIncrementalScoresExact() throws Exception {
+        Environment env = StackPhyParser.parseAndExecute(PHYLO_MODEL);
+        MCMC mcmc = new MCMC(env, new RandomContext(4L));
+
+        Map<String, Set<Class<?>>> operators = new HashMap<>();
+        for (Operator operator : mcmc.getOperators()) {
+            operators.computeIfAbsent(operator.getVariable().getName(), name -> new HashSet<>())
+                    .add(operator.getClass());
+        }
+        assertEquals(Set.of(ScaleOperator.class), operators.get("kappa"));
+        assertEquals(Set.of(ScaleOperator.class), operators.get("birthRate"));
+        assertEquals(Set.of(DeltaExchangeOperator.class), operators.get("baseFreqs"));
+        assertEquals(Set.of(NodeHeightOperator.class, NNIOperator.class, SPROperator.class,
+                SubtreeSlideOperator.class), operators.get("phylogeny"));
+        assertFalse(operators.containsKey("sequences"));
+
+        SampleTable table = mcmc.run(new RandomContext(5L), 5000, 10);
+        assertEquals(500, table.getRowCount());
+        for (int row = 0; row < table.getRowCount(); row++) {
+            double sum = 0.0;
+            for (int i = 1; i <= 4; i++) {
+                sum += table.getColumn("baseFreqs." + i)[row];
+            }
+            assertEquals(1.0, sum, 1e-9);
+            assertTrue(table.getColumn("phylogeny.rootHeight")[row] > 0.0);
+        }
+        for (Operator operator : mcmc.getOperators()) {
+            assertTrue(operator.toString(), operator.getAcceptanceRate() > 0.0);
+            assertTrue(operator.toString(), operator.getAcceptanceRate() < 1.0);
+        }
+
+        // The running totals must agree with scoring everything from scratch
+        Posterior posterior = mcmc.getPosterior();
+        double prior = posterior.getLogPrior();
+        double likelihood = posterior.getLogLikelihood();
+        posterior.recompute();
+        assertEquals(prior, posterior.getLogPrior(), 1e-9);
+        assertEquals(likelihood, posterior.getLogLikelihood(), 1e-9);
+        Tree tree = (Tree) env.getVariable("phylogeny").getValue();
+        PhyloCTMC ctmc = (PhyloCTMC) env.getVariable("sequences").getDistribution();
+        assertEquals(ctmc.createLikelihood(tree).calculateLogLikelihood(), likelihood, 1e-9);
+    }
+
+    @Test
+    public void testRejectedModelMoveCostsNoRecomputation() throws Exception {
+        Environment env = StackPhyParser.parseAndExecute(PHYLO_MODEL);
+        MCMC mcmc = new MCMC(env, new RandomContext(8L));
+        Posterior posterior = mcmc.getPosterior();
+        Variable kappa = env.getVariable("kappa");
+        Variable baseFreqs = env.getVariable("baseFreqs");
+        TreeLikelihood likelihood = null;
+        for (Factor factor : posterior.getFactors(kappa)) {
+            if (factor instanceof LikelihoodFactor) {
+                likelihood = ((LikelihoodFactor) factor).getLikelihood();
+            }
+        }
+        assertNotNull(likelihood);
+        TransitionMatrixCache cache = likelihood.getMatrixCache();
+        RandomContext random = new RandomContext(9L);
+        NodeChanges changes = new NodeChanges();
+
+        Operator[] operators = {
+            new ScaleOperator(kappa, 0.75, 1.0),
+            new DeltaExchangeOperator(baseFreqs, 0.05, 1.0)
+        };
+        for (Operator operator : operators) {
+            Variable variable = operator.getVariable();
+            List<Factor> touched = posterior.getFactors(variable);
+            long version = variable.getVersion();
+            double before = posterior.getLogLikelihood();
+
+            posterior.store(touched);
+            changes.clear();
+            operator.propose(random, changes);
+            posterior.update(touched, variable, changes);
+            assertTrue(likelihood.getUpdatedNodeCount() > 0);
+            operator.reject();
+            posterior.restore(touched, variable, changes);
+            assertEquals(version, variable.getVersion());
+
+            // The restored buffers match the restored version, so nothing is recomputed
+            long misses = cache.getMisses();
+            assertEquals(before, likelihood.calculateLogLikelihood(), 0.0);
+            assertEquals(0, likelihood.getUpdatedNodeCount());
+            assertEquals(misses, cache.getMisses());
+
+            // The next proposal gets a fresh stamp rather than reusing the rejected one
+            posterior.store(touched);
+            changes.clear();
+            operator.propose(random, changes);
+            posterior.update(touched, variable, changes);
+            assertTrue(likelihood.getUpdatedNodeCount() > 0);
+            Tree tree = (Tree) env.getVariable("phylogeny").getValue();
+            PhyloCTMC ctmc = (PhyloCTMC) env.getVariable("sequences").getDistribution();
+            assertEquals(ctmc.createLikelihood(tree).calculateLogLikelihood(), posterior.getLogLikelihood(), 1e-9);
+            operator.reject();
+            posterior.restore(touched, variable, changes);
+        }
+    }
+
+    @Test
+    public void testChainDoesNotDependOnThreads() throws Exception {
+        double[] serial = runPhylo(1);
+        double[] parallel = runPhylo(4);
+        assertArrayEquals(serial, parallel, 0.0);
+    }
+
+    @Test
+    public void testTraceMatchesTable() throws Exception {
+        SampleTable expected = new MCMC(StackPhyParser.parseAndExecute(PHYLO_MODEL), new RandomContext(6L))
+                .run(new RandomContext(7L), 500, 5);
+
+        MCMC mcmc = new MCMC(StackPhyParser.parseAndExecute(PHYLO_MODEL), new RandomContext(6L));
+        Path path = folder.getRoot().toPath().resolve("phylo.trace");
+        try (TraceWriter trace = new TraceWriter(path, mcmc.getColumnNames())) {
+            mcmc.run(new RandomContext(7L), 500, 5, trace);
+        }
+        try (TraceReader reader = new TraceReader(path)) {
+            assertTrue(reader.readBlock());
+            assertEquals(5L, reader.getState(0));
+        }
+        try (TraceReader reader = new TraceReader(path)) {
+            SampleTable actual = reader.readTable();
+            assertEquals(expected.getColumnNames(), actual.getColumnNames());
+            for (int c = 0; c < expected.getColumnCount(); c++) {
+                assertArrayEquals(expected.getColumn(c), actual.getColumn(c), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testNNISamplesYulePrior() throws Exception {
+        checkYulePrior(tree -> new NNIOperator(tree, 1.0));
+    }
+
+    @Test
+    public void testSPRSamplesYulePrior() throws Exception {
+        checkYulePrior(tree -> new SPROperator(tree, 1.0));
+    }
+
+    @Test
+    public void testSubtreeSlideSamplesYulePrior() throws Exception {
+        checkYulePrior(tree -> new SubtreeSlideOperator(tree, 1.0, 1.0));
+    }
+
+    /**
+     * Samples a 4-taxon Yule prior with unit birth rate using node height
+     * moves and one topology move. Node heights are then independent Exp(1),
+     * so the mean root height is 1 + 1/2 + 1/3, and labelled histories are
+     * uniform, so each of the 3 balanced topologies has probability 2/18 and
+     * each of the 12 caterpillars 1/18.
+     */
+    private static void checkYulePrior(Function<Variable, Operator> topologyMove) throws Exception {
+        Environment env = StackPhyParser.parseAndExecute("1.0 Yule \"phylogeny\" ~");
+        Variable variable = env.getVariable("phylogeny");
+        String[] taxa = { "a", "b", "c", "d" };
+        variable.setValue(new BirthDeathSimulator(1.0, 0.0).simulate(new RandomContext(10L), taxa));
+        MCMC mcmc = new MCMC(env, new RandomContext(11L));
+        mcmc.removeOperators(variable);
+        mcmc.addOperator(new NodeHeightOperator(variable, 0.75, 1.0));
+        mcmc.addOperator(topologyMove.apply(variable));
+
+        RandomContext random = new RandomContext(12L);
+        double totalWeight = mcmc.getTotalWeight();
+        Map<String, Integer> counts = new HashMap<>();
+        double rootHeightSum = 0.0;
+        int samples = 40000;
+        for (int i = 0; i < samples; i++) {
+            for (int j = 0; j < 25; j++) {
+                mcmc.step(random, totalWeight);
+            }
+            Tree tree = (Tree) variable.getValue();
+            counts.merge(topology(tree), 1, Integer::sum);
+            rootHeightSum += tree.getHeight(tree.getRoot());
+        }
+
+        assertEquals(15, counts.size());
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            // Balanced topologies have two clades of two tips and no clade of three
+            boolean balanced = !entry.getKey().matches(".*\\b\\w{3}\\b.*");
+            double expected = balanced ? 2.0 / 18.0 : 1.0 / 18.0;
+            assertEquals(entry.getKey(), expected, (double) entry.getValue() / samples, 0.01);
+        }
+        assertEquals(1.0 + 1.0 / 2.0 + 1.0 / 3.0, rootHeightSum / samples, 0.06);
+    }
+
+    /**
+     * Describes a rooted topology by its sorted non-root clades, each written
+     * as its sorted tip names.
+     */
+    private static String topology(Tree tree) {
+        List<String> clades = new ArrayList<>();
+        for (int node = tree.getTipCount(); node < tree.getNodeCount(); node++) {
+            if (node != tree.getRoot()) {
+                List<String> tips = new ArrayList<>();
+                collectTips(tree, node, tips);
+                Collections.sort(tips);
+                clades.add(String.join("", tips));
+            }
+        }
+        Collections.sort(clades);
+        return String.join(" ", clades);
+    }
+
+    private static void collectTips(Tree tree, int node, List<String> tips) {
+        if (tree.isTip(node)) {
+            tips.add(tree.getTaxon(node));
+        } else {
+            collectTips(tree, tree.getLeftChild(node), tips);
+            collectTips(tree, tree.getRightChild(node), tips);
+        }
+    }
+
+    private static double[] runPhylo(int threads) throws Exception {
+        MCMC mcmc = new MCMC(StackPhyParser.parseAndExecute(PHYLO_MODEL), new RandomContext(6L));
+        mcmc.setThreadCount(threads);
+        return mcmc.run(new RandomContext(7L), 500, 5).getColumn("posterior");
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.stackphy.mcmc;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.StackPhyParser;
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.runtime.Environment;
+import io.github.stackphy.simulation.SampleTable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MetropolisCoupledMCMCTest {
+
+    private static final String NORMAL_MODEL =
+            "0.0 1.0 Normal \"mu\" ~\n" +
+            "\"mu\" var 1.0 Normal \"x\" ~\n" +
+            "2.0 \"x\" observe";
+
+    @Test
+    public void testColdChainSamplesPosterior() throws Exception {
+        MetropolisCoupledMCMC mc3 = new MetropolisCoupledMCMC(environments(NORMAL_MODEL, 4), 0.5, new RandomContext(1L));
+        SampleTable table = mc3.run(new RandomContext(2L), 200000, 2);
+
+        double[] mu = table.getColumn("mu");
+        SampleMoments.assertMoments("mu", mu, 1.0, 0.5, 0.03);
+
+        assertTrue(mc3.getSwapAcceptanceCount() > 0);
+        assertTrue(mc3.getSwapAcceptanceCount() < mc3.getSwapAttemptCount());
+        int cold = 0;
+        for (MCMC chain : mc3.getChains()) {
+            cold += chain.getHeat() == 1.0 ? 1 : 0;
+        }
+        assertEquals(1, cold);
+    }
+
+    @Test
+    public void testOutputDoesNotDependOnThreadTiming() throws Exception {
+        double[] first = new MetropolisCoupledMCMC(environments(NORMAL_MODEL, 3), 0.2, new RandomContext(3L))
+                .run(new RandomContext(4L), 20000, 10).getColumn("mu");
+        double[] second = new MetropolisCoupledMCMC(environments(NORMAL_MODEL, 3), 0.2, new RandomContext(3L))
+                .run(new RandomContext(4L), 20000, 10).getColumn("mu");
+        assertArrayEquals(first, second, 0.0);
+    }
+
+    private static List<Environment> environments(String script, int count) throws Exception {
+        List<Environment> environments = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            environments.add(StackPhyParser.parseAndExecute(script));
+        }
+        return environments;
+    }
+}
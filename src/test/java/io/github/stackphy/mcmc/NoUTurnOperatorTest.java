@@ -0,0 +1,100 @@
+package io.github.stackphy.mcmc;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.StackPhyParser;
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.runtime.Environment;
+import io.github.stackphy.simulation.SampleTable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class NoUTurnOperatorTest {
+
+    @Test
+    public void testGradientMatchesFiniteDifferences() throws Exception {
+        Environment env = StackPhyParser.parseAndExecute(
+                "0.0 0.5 LogNormal \"sigma\" ~\n" +
+                "0.0 \"sigma\" var Normal \"x\" ~\n" +
+                "[ 0.1 -0.4 ] \"x\" observe\n" +
+                "[ 2.0 3.0 4.0 ] Dirichlet \"p\" ~\n" +
+                "\"p\" var Dirichlet \"q\" ~\n" +
+                "[ 0.2 0.3 0.5 ] \"q\" observe\n" +
+                "2.0 1.0 Gamma \"rate\" ~\n" +
+                "\"rate\" var Exponential \"y\" ~\n" +
+                "[ 0.5 1.2 0.3 ] \"y\" observe");
+        Posterior posterior = new Posterior(env, new RandomContext(1L));
+        posterior.setHeat(0.7);
+        List<Variable> variables = NoUTurnOperator.findDifferentiable(posterior);
+        List<String> names = new ArrayList<>();
+        for (Variable variable : variables) {
+            names.add(variable.getName());
+        }
+        assertTrue(names.containsAll(List.of("sigma", "p", "rate")));
+
+        UnconstrainedBlock block = new UnconstrainedBlock(posterior, variables);
+        assertEquals(4, block.getDimension());
+        double[] z = new double[block.getDimension()];
+        block.read(z);
+        double[] gradient = new double[z.length];
+        block.evaluate(z, gradient);
+        double h = 1e-6;
+        for (int i = 0; i < z.length; i++) {
+            double[] shifted = z.clone();
+            double[] ignored = new double[z.length];
+            shifted[i] = z[i] + h;
+            double up = block.evaluate(shifted, ignored);
+            shifted[i] = z[i] - h;
+            double down = block.evaluate(shifted, ignored);
+            assertEquals("coordinate " + i, (up - down) / (2.0 * h), gradient[i], 1e-5);
+        }
+    }
+
+    @Test
+    public void testConstrainedPriors() throws Exception {
+        // Gamma(2, 3) and Dirichlet(2, 3, 5) move through log and log-ratio
+        // transforms, so their moments check the log Jacobians of those transforms
+        Environment env = StackPhyParser.parseAndExecute(
+                "2.0 3.0 Gamma \"rate\" ~\n" +
+                "[ 2.0 3.0 5.0 ] Dirichlet \"p\" ~");
+        MCMC mcmc = new MCMC(env, new RandomContext(1L));
+        NoUTurnOperator nuts = mcmc.useNoUTurnSampler(1.0);
+        assertEquals(List.of(nuts), mcmc.getOperators());
+
+        mcmc.run(new RandomContext(2L), nuts.getAdaptationCount(), 1000);
+        SampleTable table = mcmc.run(new RandomContext(3L), 20000, 1);
+        SampleMoments.assertMoments("rate", table.getColumn("rate"), 2.0 / 3.0, 2.0 / 9.0, 0.02);
+        double[] alpha = { 2.0, 3.0, 5.0 };
+        for (int i = 0; i < alpha.length; i++) {
+            double mean = alpha[i] / 10.0;
+            SampleMoments.assertMoments("p." + (i + 1), table.getColumn("p." + (i + 1)),
+                    mean, mean * (1.0 - mean) / 11.0, 0.005);
+        }
+        assertTrue(nuts.getStepSize() > 0.0);
+    }
+
+    @Test
+    public void testStepSizeRetuningKeepsSelectedPoint() throws Exception {
+        Environment env = StackPhyParser.parseAndExecute(
+                "0.0 0.5 LogNormal \"sigma\" ~\n" +
+                "0.0 \"sigma\" var Normal \"x\" ~\n" +
+                "[ 0.1 -0.4 0.7 ] \"x\" observe");
+        MCMC mcmc = new MCMC(env, new RandomContext(4L));
+        NoUTurnOperator nuts = mcmc.useNoUTurnSampler(1.0);
+        UnconstrainedBlock block = new UnconstrainedBlock(mcmc.getPosterior(), nuts.getVariables());
+
+        // The step size is tuned again at the end of the mass matrix window
+        int end = nuts.getAdaptationCount() / 2;
+        mcmc.run(new RandomContext(5L), end, end);
+        double stepSize = nuts.getStepSize();
+        nuts.propose(new RandomContext(6L), new NodeChanges());
+        assertNotEquals(stepSize, nuts.getStepSize(), 0.0);
+
+        double[] z = new double[block.getDimension()];
+        block.read(z);
+        assertArrayEquals(nuts.getProposal(), z, 1e-12);
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.stackphy.mcmc;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the sample moments of MCMC output.
+ */
+final class SampleMoments {
+
+    private SampleMoments() {
+        // Utility class
+    }
+
+    /**
+     * Asserts that samples have a given mean and variance.
+     *
+     * @param name The column name, used in failure messages
+     * @param samples The samples
+     * @param mean The expected mean
+     * @param variance The expected variance
+     * @param tolerance The absolute tolerance on both
+     */
+    static void assertMoments(String name, double[] samples, double mean, double variance, double tolerance) {
+        double sum = 0.0;
+        double sumSquares = 0.0;
+        for (double x : samples) {
+            sum += x;
+            sumSquares += x * x;
+        }
+        double sampleMean = sum / samples.length;
+        assertEquals(name + " mean", mean, sampleMean, tolerance);
+        assertEquals(name + " variance", variance, sumSquares / samples.length - sampleMean * sampleMean, tolerance);
+    }
+}
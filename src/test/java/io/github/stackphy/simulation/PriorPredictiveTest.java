@@ -0,0 +1,123 @@
+package io.github.stackphy.simulation;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.StackPhyParser;
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.runtime.Environment;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class PriorPredictiveTest {
+    
+    @Test
+    public void testHierarchicalDrawsAreCoherent() throws Exception {
+        Environment env = StackPhyParser.parseAndExecute(
+                "0.0 1.0 Normal \"a\" ~\n" +
+                "\"a\" var 0.1 Normal \"b\" ~");
+        PriorPredictive prior = new PriorPredictive(env);
+        assertEquals(Arrays.asList("a", "b"), prior.getSampledVariables());
+        
+        int n = 100000;
+        SampleTable table = prior.sample(new RandomContext(1L), n);
+        double[] a = table.getColumn("a");
+        double[] b = table.getColumn("b");
+        double sumA = 0.0;
+        double sumB = 0.0;
+        double sumBB = 0.0;
+        double sumAB = 0.0;
+        for (int i = 0; i < n; i++) {
+            sumA += a[i];
+            sumB += b[i];
+            sumBB += b[i] * b[i];
+            sumAB += a[i] * b[i];
+        }
+        // Var(b) = 1 + 0.01 and Cov(a, b) = 1
+        assertEquals(0.0, sumB / n, 0.02);
+        assertEquals(1.01, sumBB / n, 0.03);
+        assertEquals(1.0, sumAB / n - (sumA / n) * (sumB / n), 0.03);
+    }
+    
+    @Test
+    public void testSkipsTreeModelsAndSpreadsVectors() throws Exception {
+        Environment env = StackPhyParser.parseAndExecute(
+                "1.0 0.5 LogNormal \"kappa\" ~\n" +
+                "[ 1.0 1.0 1.0 1.0 ] Dirichlet \"baseFreqs\" ~\n" +
+                "\"kappa\" var \"baseFreqs\" var HKY \"substModel\" =\n" +
+                "10.0 Exponential \"birthRate\" ~\n" +
+                "\"birthRate\" var Yule \"phylogeny\" ~\n" +
+                "\"phylogeny\" var \"substModel\" var PhyloCTMC \"sequences\" ~");
+        PriorPredictive prior = new PriorPredictive(env);
+        assertEquals(Arrays.asList("phylogeny", "sequences"), prior.getSkippedVariables());
+        assertEquals(Arrays.asList("baseFreqs.1", "baseFreqs.2", "baseFreqs.3", "baseFreqs.4", "birthRate", "kappa"),
+                prior.getColumnNames());
+        
+        SampleTable table = prior.sample(new RandomContext(2L), 10);
+        for (int row = 0; row < 10; row++) {
+            double sum = 0.0;
+            for (int i = 0; i < 4; i++) {
+                sum += table.getColumn(i)[row];
+            }
+            assertEquals(1.0, sum, 1e-12);
+        }
+    }
+    
+    @Test
+    public void testDrawsTreesOnObservedTaxa() throws Exception {
+        Environment env = StackPhyParser.parseAndExecute(
+                "1.0 Yule \"phylogeny\" ~\n" +
+                "JC69 \"substModel\" =\n" +
+                "\"phylogeny\" var \"substModel\" var PhyloCTMC \"sequences\" ~\n" +
+                "[ \"a\" \"ACGT\" sequence \"b\" \"ACGA\" sequence\n" +
+                "  \"c\" \"ACTT\" sequence \"d\" \"TCGT\" sequence ] \"sequences\" observe");
+        PriorPredictive prior = new PriorPredictive(env);
+        assertEquals(Arrays.asList("sequences"), prior.getSkippedVariables());
+        assertEquals(Arrays.asList("phylogeny.rootHeight"), prior.getColumnNames());
+        
+        // Node heights of a Yule tree with unit birth rate are independent Exp(1)
+        int n = 100000;
+        double[] rootHeights = prior.sample(new RandomContext(4L), n).getColumn(0);
+        double sum = 0.0;
+        for (double h : rootHeights) {
+            sum += h;
+        }
+        assertEquals(1.0 + 1.0 / 2.0 + 1.0 / 3.0, sum / n, 0.02);
+    }
+    
+    @Test
+    public void testDrawsSiteRates() throws Exception {
+        Environment env = StackPhyParser.parseAndExecute(
+                "1.0 Exponential \"alpha\" ~\n" +
+                "\"alpha\" var 4 DiscreteGamma \"r\" ~");
+        PriorPredictive prior = new PriorPredictive(env);
+        assertTrue(prior.getSkippedVariables().isEmpty());
+        assertEquals(Arrays.asList("alpha", "r"), prior.getColumnNames());
+        
+        // Categories have equal probability and rates have mean 1 for any shape;
+        // the lowest rate can underflow to 0 for a very small shape
+        int n = 100000;
+        double[] rates = prior.sample(new RandomContext(5L), n).getColumn("r");
+        double sum = 0.0;
+        for (double rate : rates) {
+            assertTrue(rate >= 0.0);
+            sum += rate;
+        }
+        assertEquals(1.0, sum / n, 0.02);
+    }
+    
+    @Test
+    public void testIndependentOfThreads() throws Exception {
+        Environment env = StackPhyParser.parseAndExecute(
+                "2.0 Exponential \"rate\" ~\n" +
+                "2.0 \"rate\" var Gamma \"g\" ~");
+        PriorPredictive prior = new PriorPredictive(env);
+        prior.setThreadCount(1);
+        SampleTable serial = prior.sample(new RandomContext(3L), 5000);
+        prior.setThreadCount(4);
+        SampleTable parallel = prior.sample(new RandomContext(3L), 5000);
+        for (int c = 0; c < serial.getColumnCount(); c++) {
+            assertArrayEquals(serial.getColumn(c), parallel.getColumn(c), 0.0);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package io.github.stackphy.simulation;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.distribution.DiscreteGamma;
+import io.github.stackphy.distribution.PhyloCTMC;
+import io.github.stackphy.distribution.Yule;
+import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.substitution.HKY;
+import io.github.stackphy.tree.Tree;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SequenceSimulatorTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private static final double[] FREQUENCIES = { 0.1, 0.2, 0.3, 0.4 };
+    
+    private static Tree tree(int tips, double birthRate) {
+        String[] taxa = new String[tips];
+        for (int i = 0; i < tips; i++) {
+            taxa[i] = "taxon" + i;
+        }
+        return new Yule(new Primitive(birthRate)).simulate(new RandomContext(1L), taxa);
+    }
+    
+    private static SequenceSimulator simulator(Tree tree) {
+        HKY hky = new HKY(new Primitive(3.0), new Primitive(new Object[] {
+                FREQUENCIES[0], FREQUENCIES[1], FREQUENCIES[2], FREQUENCIES[3] }));
+        PhyloCTMC ctmc = new PhyloCTMC(new Variable("tree", tree, false), new Variable("model", hky, false),
+                new Variable("rates", new DiscreteGamma(new Primitive(0.5), new Primitive(4)), false), null);
+        return new SequenceSimulator(ctmc, tree);
+    }
+    
+    private static Map<String, String> readFasta(Path path) throws IOException {
+        Map<String, String> sequences = new LinkedHashMap<>();
+        String name = null;
+        StringBuilder sequence = new StringBuilder();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            assertTrue(line.length() <= FastaWriter.DEFAULT_LINE_WIDTH || line.startsWith(">"));
+            if (line.startsWith(">")) {
+                if (name != null) {
+                    sequences.put(name, sequence.toString());
+                }
+                name = line.substring(1);
+                sequence.setLength(0);
+            } else {
+                sequence.append(line);
+            }
+        }
+        sequences.put(name, sequence.toString());
+        return sequences;
+    }
+    
+    private static Map<String, String> readPhylip(String text) {
+        String[] lines = text.split("\n");
+        String[] header = lines[0].trim().split("\\s+");
+        int taxonCount = Integer.parseInt(header[0]);
+        List<String> names = new ArrayList<>();
+        List<StringBuilder> sequences = new ArrayList<>();
+        int row = 0;
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (names.size() < taxonCount) {
+                String[] fields = line.split("\\s+");
+                names.add(fields[0]);
+                sequences.add(new StringBuilder(fields[1]));
+            } else {
+                sequences.get(row).append(line.trim());
+            }
+            row = (row + 1) % taxonCount;
+        }
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int t = 0; t < taxonCount; t++) {
+            assertEquals(Integer.parseInt(header[1]), sequences.get(t).length());
+            result.put(names.get(t), sequences.get(t).toString());
+        }
+        return result;
+    }
+    
+    @Test
+    public void testOutputIndependentOfThreadsAndFormat() throws IOException {
+        Tree tree = tree(12, 5.0);
+        int sites = 1234;
+        
+        SequenceSimulator serial = simulator(tree);
+        serial.setBlockSize(100);
+        serial.setThreadCount(1);
+        Path serialPath = folder.newFile("serial.fasta").toPath();
+        try (FastaWriter writer = new FastaWriter(serialPath)) {
+            serial.simulate(new RandomContext(42L), sites, writer);
+        }
+        
+        SequenceSimulator parallel = simulator(tree);
+        parallel.setBlockSize(100);
+        parallel.setThreadCount(3);
+        Path parallelPath = folder.newFile("parallel.fasta").toPath();
+        try (FastaWriter writer = new FastaWriter(parallelPath)) {
+            parallel.simulate(new RandomContext(42L), sites, writer);
+        }
+        assertArrayEquals(Files.readAllBytes(serialPath), Files.readAllBytes(parallelPath));
+        
+        ByteArrayOutputStream phylip = new ByteArrayOutputStream();
+        try (PhylipWriter writer = new PhylipWriter(phylip)) {
+            parallel.simulate(new RandomContext(42L), sites, writer);
+        }
+        Map<String, String> fasta = readFasta(serialPath);
+        assertEquals(fasta, readPhylip(new String(phylip.toByteArray(), StandardCharsets.UTF_8)));
+        assertEquals(12, fasta.size());
+        for (String sequence : fasta.values()) {
+            assertEquals(sites, sequence.length());
+        }
+    }
+    
+    @Test
+    public void testCompositionApproachesEquilibrium() throws IOException {
+        // Long branches randomize each site, so tip composition follows the frequencies
+        Tree tree = tree(4, 0.05);
+        SequenceSimulator simulator = simulator(tree);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int sites = 50000;
+        try (PhylipWriter writer = new PhylipWriter(out)) {
+            simulator.simulate(new RandomContext(3L), sites, writer);
+        }
+        
+        int[] counts = new int[4];
+        for (String sequence : readPhylip(new String(out.toByteArray(), StandardCharsets.UTF_8)).values()) {
+            for (int i = 0; i < sequence.length(); i++) {
+                counts["ACGT".indexOf(sequence.charAt(i))]++;
+            }
+        }
+        for (int s = 0; s < 4; s++) {
+            assertEquals(FREQUENCIES[s], counts[s] / (4.0 * sites), 0.01);
+        }
+    }
+    
+    @Test
+    public void testShortBranchesCopyRoot() throws IOException {
+        Tree tree = tree(5, 1e6);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PhylipWriter writer = new PhylipWriter(out)) {
+            simulator(tree).simulate(new RandomContext(8L), 500, writer);
+        }
+        Map<String, String> sequences = readPhylip(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        String first = sequences.values().iterator().next();
+        for (String sequence : sequences.values()) {
+            assertEquals(first, sequence);
+        }
+    }
+}
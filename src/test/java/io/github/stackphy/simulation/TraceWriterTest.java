@@ -0,0 +1,126 @@
+package io.github.stackphy.simulation;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.StackPhyParser;
+import io.github.stackphy.model.RandomContext;
+import io.github.stackphy.runtime.Environment;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+public class TraceWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTripAcrossBlocksAndFlushes() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("run.trace");
+        List<String> names = Arrays.asList("a", "b", "c");
+        // Small blocks and a short queue so the sampler side has to wait for recycled buffers
+        try (TraceWriter trace = new TraceWriter(path, names, 7, 1, 1000)) {
+            double[] row = new double[3];
+            for (int i = 0; i < 100; i++) {
+                row[0] = i;
+                row[1] = -0.5 * i;
+                row[2] = Math.sqrt(i);
+                trace.write(10L * i, row);
+                if (i == 50) {
+                    trace.flush();
+                    try (TraceReader reader = new TraceReader(path)) {
+                        assertEquals(51, reader.readTable().getRowCount());
+                    }
+                }
+            }
+            assertEquals(100, trace.getRowCount());
+        }
+
+        try (TraceReader reader = new TraceReader(path)) {
+            assertEquals(names, reader.getColumnNames());
+            assertTrue(reader.readBlock());
+            assertEquals(7, reader.getRowCount());
+            assertEquals(60L, reader.getState(6));
+            assertEquals(-3.0, reader.getValue(1, 6), 0.0);
+
+            SampleTable rest = reader.readTable();
+            assertEquals(93, rest.getRowCount());
+            for (int r = 0; r < 93; r++) {
+                int i = r + 7;
+                assertEquals(i, rest.getColumn("a")[r], 0.0);
+                assertEquals(-0.5 * i, rest.getColumn("b")[r], 0.0);
+                assertEquals(Math.sqrt(i), rest.getColumn("c")[r], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testIdleWriterFlushesPartialBlock() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("idle.trace");
+        try (TraceWriter trace = new TraceWriter(path, Arrays.asList("x"), 256, 4, 20)) {
+            trace.write(0L, new double[] { 1.0 });
+            trace.write(1L, new double[] { 2.0 });
+            // No further rows and no flush: the writer thread must take the rows itself
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            int rows = 0;
+            while (rows < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+                try (TraceReader reader = new TraceReader(path)) {
+                    rows = reader.readTable().getRowCount();
+                }
+            }
+            assertEquals(2, rows);
+            trace.write(2L, new double[] { 3.0 });
+        }
+        try (TraceReader reader = new TraceReader(path)) {
+            assertArrayEquals(new double[] { 1.0, 2.0, 3.0 }, reader.readTable().getColumn("x"), 0.0);
+        }
+    }
+
+    @Test
+    public void testConvertsToTabDelimitedText() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("run.trace");
+        Path text = folder.getRoot().toPath().resolve("run.log");
+        try (TraceWriter trace = new TraceWriter(path, Arrays.asList("kappa", "pi.1"))) {
+            trace.write(0L, new double[] { 2.0, 0.25 });
+            trace.write(1000L, new double[] { 2.5, 1e-20 });
+        }
+        TraceReader.convertToText(path, text);
+        assertEquals(Arrays.asList("state\tkappa\tpi.1", "0\t2.0\t0.25", "1000\t2.5\t1.0E-20"),
+                Files.readAllLines(text, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPriorPredictiveTraceMatchesTable() throws Exception {
+        Environment env = StackPhyParser.parseAndExecute(
+                "0.0 1.0 Normal \"a\" ~\n" +
+                "[ 1.0 1.0 1.0 ] Dirichlet \"p\" ~");
+        PriorPredictive prior = new PriorPredictive(env);
+        prior.setThreadCount(2);
+        int n = 5000;
+        SampleTable expected = prior.sample(new RandomContext(3L), n);
+
+        Path path = folder.getRoot().toPath().resolve("prior.trace");
+        try (TraceWriter trace = new TraceWriter(path, prior.getColumnNames())) {
+            prior.sample(new RandomContext(3L), n, trace);
+        }
+        try (TraceReader reader = new TraceReader(path)) {
+            assertTrue(reader.readBlock());
+            assertEquals(0L, reader.getState(0));
+            assertEquals(1L, reader.getState(1));
+        }
+        try (TraceReader reader = new TraceReader(path)) {
+            SampleTable actual = reader.readTable();
+            assertEquals(n, actual.getRowCount());
+            for (int c = 0; c < expected.getColumnCount(); c++) {
+                assertArrayEquals(expected.getColumn(c), actual.getColumn(c), 0.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package io.github.stackphy.substitution;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.StackPhyParser;
+import io.github.stackphy.distribution.LogNormal;
+import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.Variable;
+import io.github.stackphy.runtime.Environment;
+import org.junit.Test;
+
+public class SubstitutionModelTest {
+    
+    private static Primitive frequencies(double a, double c, double g, double t) {
+        return new Primitive(new Object[] { a, c, g, t });
+    }
+    
+    @Test
+    public void testJukesCantorLimit() {
+        GTR gtr = new GTR(new Primitive(new Object[] { 1.0, 1.0, 1.0, 1.0, 1.0, 1.0 }),
+                frequencies(0.25, 0.25, 0.25, 0.25));
+        double[] p = new double[16];
+        gtr.getTransitionProbabilities(0.3, p);
+        
+        double decay = Math.exp(-4.0 / 3.0 * 0.3);
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                double expected = i == j ? 0.25 + 0.75 * decay : 0.25 - 0.25 * decay;
+                assertEquals(expected, p[i * 4 + j], 1e-12);
+            }
+        }
+    }
+    
+    @Test
+    public void testRowsConvergeToFrequencies() {
+        GTR gtr = new GTR(new Primitive(new Object[] { 1.0, 2.0, 0.5, 0.8, 3.0, 1.0 }),
+                frequencies(0.1, 0.2, 0.3, 0.4));
+        double[] p = new double[16];
+        gtr.getTransitionProbabilities(0.0, p);
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals(i == j ? 1.0 : 0.0, p[i * 4 + j], 1e-12);
+            }
+        }
+        
+        gtr.getTransitionProbabilities(100.0, p);
+        double[] pi = gtr.getFrequencies();
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals(pi[j], p[i * 4 + j], 1e-10);
+            }
+        }
+    }
+    
+    @Test
+    public void testEigenSystemIsCachedUntilParameterChanges() {
+        Variable kappa = new Variable("kappa", new LogNormal(new Primitive(1.0), new Primitive(0.5)), true);
+        kappa.setValue(2.0);
+        HKY hky = new HKY(kappa, frequencies(0.1, 0.2, 0.3, 0.4));
+        
+        EigenSystem first = hky.getEigenSystem();
+        assertSame(first, hky.getEigenSystem());
+        
+        double[] before = new double[16];
+        hky.getTransitionProbabilities(0.5, before);
+        
+        kappa.setValue(8.0);
+        assertNotSame(first, hky.getEigenSystem());
+        
+        double[] after = new double[16];
+        hky.getTransitionProbabilities(0.5, after);
+        // A higher kappa makes the A->G transition more likely
+        assertTrue(after[2] > before[2]);
+    }
+    
+    @Test
+    public void testClosedFormMatchesEigenSystem() {
+        HKY[] models = {
+            new HKY(new Primitive(4.0), frequencies(0.1, 0.2, 0.3, 0.4)),
+            new HKY(new Primitive(0.3), frequencies(0.4, 0.1, 0.1, 0.4)),
+            new JC69(),
+            new K80(new Primitive(2.5)),
+            new F81(frequencies(0.3, 0.2, 0.1, 0.4))
+        };
+        double[] closedForm = new double[16];
+        double[] eigen = new double[16];
+        for (HKY model : models) {
+            for (double t : new double[] { 0.0, 0.01, 0.5, 3.0 }) {
+                model.getTransitionProbabilities(t, closedForm);
+                model.getEigenSystem().getTransitionProbabilities(t, eigen);
+                assertArrayEquals(model.getModelType(), eigen, closedForm, 1e-12);
+            }
+        }
+    }
+    
+    @Test
+    public void testSpecialCasesFromParser() throws Exception {
+        Environment env = StackPhyParser.parseAndExecute(
+                "JC69 \"jc\" =\n" +
+                "2.0 K80 \"k80\" =\n" +
+                "[ 0.1 0.2 0.3 0.4 ] F81 \"f81\" =");
+        assertEquals("JC69", ((JC69) env.getVariable("jc").getUnderlyingValue()).getModelType());
+        assertEquals(2.0, ((K80) env.getVariable("k80").getUnderlyingValue()).getKappaValue(), 0.0);
+        assertArrayEquals(new double[] { 0.1, 0.2, 0.3, 0.4 },
+                ((F81) env.getVariable("f81").getUnderlyingValue()).getFrequencies(), 0.0);
+    }
+}
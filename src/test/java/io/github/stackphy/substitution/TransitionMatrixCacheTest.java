@@ -0,0 +1,96 @@
+package io.github.stackphy.substitution;
+
+import static org.junit.Assert.*;
+
+import io.github.stackphy.distribution.LogNormal;
+import io.github.stackphy.model.Primitive;
+import io.github.stackphy.model.Variable;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransitionMatrixCacheTest {
+    
+    private Variable kappa;
+    private HKY hky;
+    
+    @Before
+    public void setUp() {
+        kappa = new Variable("kappa", new LogNormal(new Primitive(1.0), new Primitive(0.5)), true);
+        kappa.setValue(2.0);
+        hky = new HKY(kappa, new Primitive(new Object[] { 0.1, 0.2, 0.3, 0.4 }));
+    }
+    
+    @Test
+    public void testHitsReturnSameMatrix() {
+        TransitionMatrixCache cache = new TransitionMatrixCache(hky);
+        double[] out = new double[32];
+        cache.getTransitionProbabilities(0.1, 0.5, out, 0);
+        cache.getTransitionProbabilities(0.1, 0.5, out, 16);
+        
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        
+        double[] expected = new double[16];
+        hky.getTransitionProbabilities(0.05, expected);
+        for (int i = 0; i < 16; i++) {
+            assertEquals(expected[i], out[i], 0.0);
+            assertEquals(expected[i], out[16 + i], 0.0);
+        }
+    }
+    
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        TransitionMatrixCache cache = new TransitionMatrixCache(hky, 1);
+        cache.setBudget(2 * (8 * 16 + 96));
+        assertEquals(2, cache.getCapacity());
+        
+        double[] out = new double[16];
+        cache.getTransitionProbabilities(0.1, 1.0, out, 0);
+        cache.getTransitionProbabilities(0.2, 1.0, out, 0);
+        cache.getTransitionProbabilities(0.1, 1.0, out, 0); // 0.1 is now most recent
+        cache.getTransitionProbabilities(0.3, 1.0, out, 0); // evicts 0.2
+        assertEquals(2, cache.size());
+        
+        cache.resetStatistics();
+        cache.getTransitionProbabilities(0.1, 1.0, out, 0);
+        cache.getTransitionProbabilities(0.2, 1.0, out, 0);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+    
+    @Test
+    public void testModelChangeInvalidatesEntries() {
+        TransitionMatrixCache cache = new TransitionMatrixCache(hky);
+        double[] before = new double[16];
+        cache.getTransitionProbabilities(0.5, 1.0, before, 0);
+        
+        kappa.setValue(10.0);
+        double[] after = new double[16];
+        cache.getTransitionProbabilities(0.5, 1.0, after, 0);
+        
+        assertEquals(2, cache.getMisses());
+        assertTrue(after[2] > before[2]);
+    }
+    
+    @Test
+    public void testRestoredVersionHitsEarlierEntries() {
+        TransitionMatrixCache cache = new TransitionMatrixCache(hky);
+        double[] before = new double[16];
+        cache.getTransitionProbabilities(0.5, 1.0, before, 0);
+        
+        // A rejected proposal puts the earlier value and version back
+        Object previous = kappa.getValue();
+        long version = kappa.getVersion();
+        kappa.setValue(10.0);
+        double[] proposed = new double[16];
+        cache.getTransitionProbabilities(0.5, 1.0, proposed, 0);
+        kappa.restoreValue(previous, version);
+        double[] restored = new double[16];
+        cache.getTransitionProbabilities(0.5, 1.0, restored, 0);
+        
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.size());
+        assertArrayEquals(before, restored, 0.0);
+    }
+}